@@ -0,0 +1,88 @@
+package selfservice.manage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Initialising a {@link ClassPathResourceManage}, which parses all three metadata files.
+ * <p>
+ * The metadata is loaded from a temporary directory through the context class loader, so it can be scaled. There is no
+ * bundled service-providers.json, the single tenant templates stand in for the service providers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassPathResourceManageBenchmark {
+
+    @Param({"1", "10"})
+    public int scale;
+
+    private Path directory;
+    private URLClassLoader metadata;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("manage-benchmark");
+        Path manage = Files.createDirectories(directory.resolve("manage"));
+        byte[] singleTenants = ManageFixtures.load("single-tenants.json", scale);
+        Files.write(manage.resolve("identity-providers.json"), ManageFixtures.load("identity-providers.json", scale));
+        Files.write(manage.resolve("service-providers.json"), singleTenants);
+        Files.write(manage.resolve("single-tenants.json"), singleTenants);
+
+        metadata = new URLClassLoader(new URL[]{directory.toUri().toURL()}, null);
+        //initialisation logs and swallows errors, don't measure a failure
+        checkState(!initialize().getAllServiceProviders().isEmpty(), "The metadata in %s was not loaded", directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        metadata.close();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Benchmark
+    public ClassPathResourceManage initialize() {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(metadata);
+        try {
+            return new ClassPathResourceManage();
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(ClassPathResourceManageBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
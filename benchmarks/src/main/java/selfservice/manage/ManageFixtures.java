@@ -0,0 +1,65 @@
+package selfservice.manage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Manage metadata bundled with selfservice, as is or scaled up with renamed copies of every entity.
+ */
+final class ManageFixtures {
+
+    static final TypeReference<List<Map<String, Object>>> METADATA = new TypeReference<List<Map<String, Object>>>() {
+    };
+
+    private static final long EID_OFFSET = 1_000_000L;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ManageFixtures() {
+    }
+
+    /**
+     * @param fixture e.g. identity-providers.json
+     * @param scale   the number of copies of each entity
+     */
+    static byte[] load(String fixture, int scale) throws IOException {
+        byte[] original;
+        try (InputStream inputStream = new ClassPathResource("manage/" + fixture).getInputStream()) {
+            original = StreamUtils.copyToByteArray(inputStream);
+        }
+        if (scale == 1) {
+            return original;
+        }
+        List<Map<String, Object>> scaled = new ArrayList<>();
+        for (int copy = 0; copy < scale; copy++) {
+            List<Map<String, Object>> entities = objectMapper.readValue(original, METADATA);
+            for (Map<String, Object> entity : entities) {
+                if (copy > 0) {
+                    rename(entity, copy);
+                }
+                scaled.add(entity);
+            }
+        }
+        return objectMapper.writeValueAsBytes(scaled);
+    }
+
+    static List<Map<String, Object>> parse(byte[] json) throws IOException {
+        return objectMapper.readValue(json, METADATA);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void rename(Map<String, Object> entity, int copy) {
+        entity.put("_id", entity.get("_id") + "-" + copy);
+        Map<String, Object> data = (Map<String, Object>) entity.get("data");
+        data.put("entityid", data.get("entityid") + "/copy-" + copy);
+        data.put("eid", ((Number) data.get("eid")).longValue() + copy * EID_OFFSET);
+    }
+}
@@ -0,0 +1,87 @@
+package selfservice.manage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ByteArrayResource;
+import selfservice.domain.Provider;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The steps of turning Manage metadata into providers: the whole {@link Manage#parseProviders} and its
+ * {@link Manage#transformManageMetadata} and provider construction parts on their own. Each operation handles all the
+ * entities of the fixture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManageParsingBenchmark {
+
+    @Param({"identity-providers.json", "single-tenants.json"})
+    public String fixture;
+
+    @Param({"1", "10"})
+    public int scale;
+
+    //only used for its default methods, does not connect to anything
+    private final Manage manage = new UrlResourceManage("benchmark", "benchmark", "http://localhost");
+
+    private byte[] json;
+    private List<Map<String, Object>> metadata;
+    private List<Map<String, Object>> transformed;
+    private Function<Map<String, Object>, Provider> provider;
+
+    @Setup
+    public void setup() throws IOException {
+        json = ManageFixtures.load(fixture, scale);
+        metadata = ManageFixtures.parse(json);
+        transformed = metadata.stream().map(manage::transformManageMetadata).collect(toList());
+        provider = fixture.startsWith("identity-providers") ? manage::identityProvider :
+            sp -> manage.serviceProvider(sp, EntityType.single_tenant_template);
+    }
+
+    @Benchmark
+    public Map<String, Provider> parseProviders() throws IOException {
+        return manage.parseProviders(new ByteArrayResource(json), provider);
+    }
+
+    @Benchmark
+    public void transformManageMetadata(Blackhole blackhole) {
+        metadata.forEach(entity -> blackhole.consume(manage.transformManageMetadata(entity)));
+    }
+
+    @Benchmark
+    public void constructProviders(Blackhole blackhole) {
+        transformed.forEach(entity -> blackhole.consume(provider.apply(entity)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(ManageParsingBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
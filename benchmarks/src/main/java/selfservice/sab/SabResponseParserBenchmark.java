@@ -0,0 +1,64 @@
+package selfservice.sab;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the DOM / XPath and the StAX SAB response parsers on a response with roles and on a "not found" response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SabResponseParserBenchmark {
+
+    @Param({"response.xml", "response-nameidnotfound.xml"})
+    public String fixture;
+
+    private byte[] response;
+
+    private final SabResponseParser domParser = new SabResponseParser();
+    private final StaxSabResponseParser staxParser = new StaxSabResponseParser();
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream inputStream = new ClassPathResource("sab/" + fixture).getInputStream()) {
+            response = StreamUtils.copyToByteArray(inputStream);
+        }
+    }
+
+    @Benchmark
+    public SabRoleHolder dom() throws IOException {
+        return domParser.parse(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public SabRoleHolder stax() throws IOException {
+        return staxParser.parse(new ByteArrayInputStream(response));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SabResponseParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
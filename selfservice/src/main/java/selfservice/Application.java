@@ -1,33 +1,52 @@
 package selfservice;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.actuate.autoconfigure.MetricFilterAutoConfiguration;
 import org.springframework.boot.actuate.autoconfigure.TraceRepositoryAutoConfiguration;
 import org.springframework.boot.actuate.autoconfigure.TraceWebFilterAutoConfiguration;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.freemarker.FreeMarkerAutoConfiguration;
 import org.springframework.boot.autoconfigure.security.SecurityAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.servlet.LocaleResolver;
+import selfservice.health.DownstreamProber;
 import selfservice.manage.ClassPathResourceManage;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.manage.IdentityProviderSummaries;
 import selfservice.manage.Manage;
+import selfservice.manage.MemoizingManage;
 import selfservice.manage.UrlResourceManage;
+import selfservice.metrics.DownstreamMetrics;
+import selfservice.pdp.CachingPdpService;
 import selfservice.pdp.PdpService;
 import selfservice.pdp.PdpServiceImpl;
 import selfservice.pdp.PdpServiceMock;
+import selfservice.sab.CachingSab;
+import selfservice.sab.CircuitBreakingSab;
 import selfservice.sab.HttpClientTransport;
+import selfservice.sab.MemoizingSab;
 import selfservice.sab.Sab;
 import selfservice.sab.SabClient;
 import selfservice.sab.SabClientMock;
 import selfservice.service.Services;
+import selfservice.service.impl.ActionStore;
 import selfservice.service.impl.JiraClient;
 import selfservice.service.impl.JiraClientImpl;
 import selfservice.service.impl.JiraClientMock;
+import selfservice.service.impl.JiraOutbox;
 import selfservice.service.impl.ServicesImpl;
+import selfservice.util.CircuitBreaker;
 import selfservice.util.CookieThenAcceptHeaderLocaleResolver;
+import selfservice.util.JavaScriptErrorSink;
 
+import java.io.File;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 @SpringBootApplication(exclude = {SecurityAutoConfiguration.class, FreeMarkerAutoConfiguration.class,
     TraceWebFilterAutoConfiguration.class, TraceRepositoryAutoConfiguration.class,
@@ -46,16 +65,76 @@ public class Application {
 
     @Bean
     public Sab sab(HttpClientTransport httpClientTransport,
-                   @Value("${dashboard.feature.sab}") boolean sabEnabled) {
-        return sabEnabled ? new SabClient(httpClientTransport) : new SabClientMock();
+                   @Value("${dashboard.feature.sab}") boolean sabEnabled,
+                   @Value("${sab.roles.cacheTtlSeconds}") long rolesCacheTtlSeconds,
+                   @Value("${sab.roles.cacheMaxStaleSeconds}") long rolesCacheMaxStaleSeconds,
+                   @Value("${sab.roles.cacheMaximumSize}") long rolesCacheMaximumSize,
+                   @Value("${sab.persons.cacheTtlSeconds}") long personsCacheTtlSeconds,
+                   CircuitBreaker sabCircuitBreaker,
+                   DownstreamProber downstreamProber,
+                   DownstreamMetrics downstreamMetrics) {
+        if (!sabEnabled) {
+            return new SabClientMock();
+        }
+        Executor sabExecutor = Executors.newFixedThreadPool(4,
+            new ThreadFactoryBuilder().setNameFormat("sab-%d").setDaemon(true).build());
+        SabClient rawSabClient = new SabClient(httpClientTransport, sabExecutor);
+        // probe around the breaker, an open breaker would otherwise look like a SAB outage
+        downstreamProber.register("sab", () -> rawSabClient.getRoles("availability-probe").isPresent());
+        Sab sabClient = new CircuitBreakingSab(downstreamMetrics.instrument(Sab.class, rawSabClient, "sab"),
+            sabCircuitBreaker);
+        return new MemoizingSab(new CachingSab(sabClient, rolesCacheTtlSeconds, rolesCacheMaxStaleSeconds,
+            rolesCacheMaximumSize, sabExecutor, personsCacheTtlSeconds));
+    }
+
+    @Bean
+    public CircuitBreaker sabCircuitBreaker(@Value("${sab.circuitBreaker.windowSize}") int windowSize,
+                                            @Value("${sab.circuitBreaker.minimumCalls}") int minimumCalls,
+                                            @Value("${sab.circuitBreaker.failureRateThreshold}") int failureRateThreshold,
+                                            @Value("${sab.circuitBreaker.slowCallMillis}") long slowCallMillis,
+                                            @Value("${sab.circuitBreaker.slowCallRateThreshold}") int slowCallRateThreshold,
+                                            @Value("${sab.circuitBreaker.openMillis}") long openMillis,
+                                            @Value("${sab.circuitBreaker.halfOpenCalls}") int halfOpenCalls) {
+        return new CircuitBreaker("sab", windowSize, minimumCalls, failureRateThreshold, slowCallMillis,
+            slowCallRateThreshold, openMillis, halfOpenCalls);
+    }
+
+    /*
+     * Logins still work without SAB, so an open breaker is reported in the details but does not take the health down.
+     */
+    @Bean
+    public HealthIndicator sabCircuitBreakerHealthIndicator(CircuitBreaker sabCircuitBreaker) {
+        return () -> {
+            Health.Builder health = Health.up();
+            sabCircuitBreaker.details().forEach(health::withDetail);
+            return health.build();
+        };
     }
 
     @Bean
     public Manage urlResourceServiceRegistry(@Value("${dashboard.feature.manage}") boolean manageEnabled,
                                              @Value("${manage.username}") String username,
                                              @Value("${manage.password}") String password,
-                                             @Value("${manage.manageBaseUrl}") String manageBaseUrl) {
-        return manageEnabled ? new UrlResourceManage(username, password, manageBaseUrl) : new ClassPathResourceManage();
+                                             @Value("${manage.manageBaseUrl}") String manageBaseUrl,
+                                             @Value("${manage.metadataVersionTtlSeconds}") long metadataVersionTtlSeconds,
+                                             DownstreamProber downstreamProber,
+                                             DownstreamMetrics downstreamMetrics) {
+        if (!manageEnabled) {
+            return new ClassPathResourceManage();
+        }
+        UrlResourceManage manage = new UrlResourceManage(username, password, manageBaseUrl, metadataVersionTtlSeconds);
+        downstreamProber.register("manage", manage::isAvailable, true);
+        return new MemoizingManage(downstreamMetrics.instrument(Manage.class, manage, "manage"));
+    }
+
+    @Bean
+    public IdentityProviderCache identityProviderCache(Manage manage) {
+        return new IdentityProviderCache(manage);
+    }
+
+    @Bean
+    public IdentityProviderSummaries identityProviderSummaries(Manage manage) {
+        return new IdentityProviderSummaries(manage, new Locale("nl"));
     }
 
     @Bean
@@ -63,16 +142,79 @@ public class Application {
                                  @Value("${jiraBaseUrl}") String baseUrl,
                                  @Value("${jiraUsername}") String username,
                                  @Value("${jiraPassword}") String password,
-                                 @Value("${jiraProjectKey}") String projectKey) {
-        return jiraEnabled ? new JiraClientImpl(baseUrl, username, password, projectKey) :new JiraClientMock();
+                                 @Value("${jiraProjectKey}") String projectKey,
+                                 @Value("${jira.connectTimeoutMillis}") int connectTimeoutMillis,
+                                 @Value("${jira.readTimeoutMillis}") int readTimeoutMillis,
+                                 @Value("${jira.maxConnections}") int maxConnections,
+                                 @Value("${jira.keepAliveMillis}") long keepAliveMillis,
+                                 DownstreamProber downstreamProber,
+                                 DownstreamMetrics downstreamMetrics) {
+        if (!jiraEnabled) {
+            return new JiraClientMock();
+        }
+        JiraClientImpl jiraClient = new JiraClientImpl(baseUrl, username, password, projectKey, connectTimeoutMillis,
+            readTimeoutMillis, maxConnections, keepAliveMillis);
+        downstreamProber.register("jira", jiraClient::isAvailable);
+        return downstreamMetrics.instrument(JiraClient.class, jiraClient, "jira");
+    }
+
+    /*
+     * Pending actions only exist in the store until Jira has their issue, with the real Jira they must survive a restart
+     */
+    @Bean
+    public ActionStore actionStore(@Value("${dashboard.feature.jira}") boolean jiraEnabled,
+                                   @Value("${actions.store.file}") String file) {
+        if (file.isEmpty() && jiraEnabled) {
+            throw new IllegalStateException("actions.store.file is required when dashboard.feature.jira is enabled");
+        }
+        return new ActionStore(file.isEmpty() ? null : new File(file));
+    }
+
+    /*
+     * The user is told the request is pending as soon as it is in the outbox, with the real Jira it must survive a
+     * restart
+     */
+    @Bean
+    public JiraOutbox jiraOutbox(@Value("${dashboard.feature.jira}") boolean jiraEnabled,
+                                 @Value("${jira.outbox.file}") String file,
+                                 @Value("${jira.outbox.threads}") int threads,
+                                 @Value("${jira.outbox.initialBackoffMillis}") long initialBackoffMillis,
+                                 @Value("${jira.outbox.maxBackoffMillis}") long maxBackoffMillis,
+                                 @Value("${jira.outbox.maxClientErrorAttempts}") int maxClientErrorAttempts,
+                                 JiraClient jiraClient) {
+        if (file.isEmpty() && jiraEnabled) {
+            throw new IllegalStateException("jira.outbox.file is required when dashboard.feature.jira is enabled");
+        }
+        return new JiraOutbox(file.isEmpty() ? null : new File(file), jiraClient,
+            Executors.newScheduledThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("jira-outbox-%d").setDaemon(true).build()),
+            initialBackoffMillis, maxBackoffMillis, maxClientErrorAttempts);
     }
 
     @Bean
     public PdpService pdpService(@Value("${dashboard.feature.manage}") boolean pdpEnabled,
                                  @Value("${pdp.server}") String server,
                                  @Value("${pdp.username}") String username,
-                                 @Value("${pdp.password}") String password) {
-        return pdpEnabled ? new PdpServiceImpl(server, username, password) : new PdpServiceMock();
+                                 @Value("${pdp.password}") String password,
+                                 @Value("${pdp.policiesCacheTtlSeconds}") long policiesCacheTtlSeconds,
+                                 @Value("${pdp.attributesCacheTtlSeconds}") long attributesCacheTtlSeconds,
+                                 DownstreamProber downstreamProber,
+                                 DownstreamMetrics downstreamMetrics) {
+        if (!pdpEnabled) {
+            return new PdpServiceMock();
+        }
+        PdpServiceImpl pdpService = new PdpServiceImpl(server, username, password);
+        downstreamProber.register("pdp", pdpService::isAvailable);
+        return new CachingPdpService(downstreamMetrics.instrument(PdpService.class, pdpService, "pdp"),
+            policiesCacheTtlSeconds, attributesCacheTtlSeconds,
+            () -> downstreamProber.isAvailable("pdp"));
+    }
+
+    @Bean
+    public JavaScriptErrorSink javaScriptErrorSink(@Value("${jsErrors.flushIntervalMillis}") long flushIntervalMillis,
+                                                   @Value("${jsErrors.maxReportsPerSession}") int maxReportsPerSession,
+                                                   @Value("${jsErrors.maxFingerprints}") int maxFingerprints) {
+        return new JavaScriptErrorSink(flushIntervalMillis, maxReportsPerSession, maxFingerprints);
     }
 
     @Bean
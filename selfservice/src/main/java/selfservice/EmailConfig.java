@@ -1,24 +1,52 @@
 package selfservice;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
+import selfservice.health.DownstreamProber;
+import selfservice.metrics.DownstreamMetrics;
 import selfservice.service.EmailService;
 import selfservice.service.impl.EmailServiceImpl;
 import selfservice.util.mail.Emailer;
-import selfservice.util.mail.EmailerImpl;
 import selfservice.util.mail.MockEmailerImpl;
+import selfservice.util.mail.QueueingEmailer;
+import selfservice.util.mail.QueueingEmailer.OverflowPolicy;
 
 @Configuration
 public class EmailConfig {
 
     @Bean
-    public EmailService emailService(JavaMailSender mailSender,
+    public Emailer emailer(JavaMailSender mailSender,
+                           @Value("${dashboard.feature.mail}") boolean mailEnabled,
+                           @Value("${mail.queue.capacity}") int capacity,
+                           @Value("${mail.queue.batchSize}") int batchSize,
+                           @Value("${mail.queue.overflowPolicy}") OverflowPolicy overflowPolicy,
+                           @Value("${mail.retry.initialBackoffMillis}") long initialBackoffMillis,
+                           @Value("${mail.retry.maxBackoffMillis}") long maxBackoffMillis,
+                           @Value("${mail.retry.maxAttempts}") int maxAttempts,
+                           CounterService counterService,
+                           GaugeService gaugeService,
+                           DownstreamProber downstreamProber) {
+        if (!mailEnabled) {
+            return new MockEmailerImpl();
+        }
+        QueueingEmailer emailer = new QueueingEmailer(mailSender, capacity, batchSize, overflowPolicy,
+            initialBackoffMillis, maxBackoffMillis, maxAttempts, counterService, gaugeService);
+        downstreamProber.register("mail", emailer::isAvailable);
+        emailer.start();
+        return emailer;
+    }
+
+    @Bean
+    public EmailService emailService(Emailer emailer,
                                      @Value("${coin-administrative-email}") String administrativeEmail,
-                                     @Value("${dashboard.feature.mail}") boolean mailEnabled) {
-        Emailer emailer = mailEnabled ? new EmailerImpl(mailSender) : new MockEmailerImpl();
-        return new EmailServiceImpl(administrativeEmail, emailer);
+                                     DownstreamMetrics downstreamMetrics) {
+        // instrumented here instead of in emailer(), a proxy would hide the shutdown method of the QueueingEmailer
+        return new EmailServiceImpl(administrativeEmail,
+            downstreamMetrics.instrument(Emailer.class, emailer, "mail"));
     }
 
 }
@@ -0,0 +1,48 @@
+package selfservice;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import selfservice.health.DownstreamProber;
+import selfservice.metrics.DownstreamMetrics;
+import selfservice.metrics.ServerTimingFilter;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableScheduling
+public class HealthConfig {
+
+    @Bean
+    public DownstreamProber downstreamProber(@Value("${health.probe.timeoutMillis}") long timeoutMillis) {
+        return new DownstreamProber(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("probe-%d").setDaemon(true).build()), timeoutMillis);
+    }
+
+    @Bean
+    public DownstreamMetrics downstreamMetrics(@Value("${metrics.downstream.windowMillis}") long windowMillis) {
+        return new DownstreamMetrics(windowMillis);
+    }
+
+    /*
+     * Runs before all other filters, so the timings cover loading and saving the session as well
+     */
+    @Bean
+    public FilterRegistrationBean serverTimingFilter(@Value("${requestTimings.slowRequestMillis}") long slowRequestMillis,
+                                                     @Value("${requestTimings.header.enabled}") boolean addHeader) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(
+            new ServerTimingFilter(slowRequestMillis, addHeader));
+        registration.setOrder(FilterRegistrationBean.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    public HealthIndicator downstreamHealthIndicator(DownstreamProber downstreamProber) {
+        return downstreamProber.healthIndicator();
+    }
+
+}
@@ -0,0 +1,61 @@
+package selfservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import selfservice.session.FileSessionRepository;
+import selfservice.session.SessionAttributeCodec;
+import selfservice.session.SessionRepository;
+import selfservice.session.SessionRepositoryFilter;
+
+import java.io.File;
+
+/**
+ * Keeps the HTTP sessions in a {@link SessionRepository} instead of in the servlet container, so the nodes don't need
+ * sticky sessions and logins survive a redeploy. Without a {@code session.store.directory} the sessions stay in the
+ * servlet container, which is fine for a single node and for development.
+ */
+@Configuration
+@ConditionalOnProperty("session.store.directory")
+public class SessionConfig {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionConfig.class);
+
+    //No default, a directory that is cleaned up or not shared between the nodes silently logs users out
+    @Value("${session.store.directory}")
+    private File directory;
+
+    @Value("${server.session.timeout}")
+    private int timeoutSeconds;
+
+    @Value("${session.cookieName}")
+    private String cookieName;
+
+    @Bean
+    public SessionRepository sessionRepository() {
+        return new FileSessionRepository(directory);
+    }
+
+    /*
+     * Runs directly after the ServerTimingFilter of HealthConfig, the mock Shibboleth filter already uses the session
+     */
+    @Bean
+    public FilterRegistrationBean sessionRepositoryFilter() {
+        FilterRegistrationBean registration = new FilterRegistrationBean(new SessionRepositoryFilter(
+            sessionRepository(), new SessionAttributeCodec(), timeoutSeconds, cookieName));
+        registration.setOrder(FilterRegistrationBean.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    @Scheduled(fixedDelayString = "${session.store.purgeIntervalMillis}")
+    public void deleteExpiredSessions() {
+        int deleted = sessionRepository().deleteExpired();
+        LOG.debug("Deleted {} expired sessions", deleted);
+    }
+
+}
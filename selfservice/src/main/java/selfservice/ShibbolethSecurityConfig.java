@@ -1,9 +1,11 @@
 package selfservice;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.CounterService;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -36,6 +38,10 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableWebSecurity
@@ -49,6 +55,9 @@ public class ShibbolethSecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private Sab sab;
 
+    @Autowired
+    private CounterService counterService;
+
     @Value("${dashboard.admin}")
     private String dashboardAdmin;
 
@@ -67,6 +76,27 @@ public class ShibbolethSecurityConfig extends WebSecurityConfigurerAdapter {
     @Value("${dashboard.feature.shibboleth}")
     private boolean shibbolethEnabled;
 
+    @Value("${login.deadlineMillis}")
+    private long loginDeadlineMillis;
+
+    @Value("${login.executor.threads}")
+    private int loginExecutorThreads;
+
+    @Value("${login.executor.queueCapacity}")
+    private int loginExecutorQueueCapacity;
+
+    /*
+     * Bounded pool for the remote calls made during login. When it is saturated the calls are rejected, the login
+     * continues without the SAB entitlements instead of making the request thread wait for SAB.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService loginExecutor() {
+        return new ThreadPoolExecutor(loginExecutorThreads, loginExecutorThreads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(loginExecutorQueueCapacity),
+            new ThreadFactoryBuilder().setNameFormat("login-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
     @Bean
     public FilterRegistrationBean mockShibbolethFilter() {
         FilterRegistrationBean shibFilter = new FilterRegistrationBean();
@@ -81,7 +111,8 @@ public class ShibbolethSecurityConfig extends WebSecurityConfigurerAdapter {
                 }
             });
         }
-        shibFilter.setOrder(FilterRegistrationBean.HIGHEST_PRECEDENCE);
+        //directly after the session filter of SessionConfig
+        shibFilter.setOrder(FilterRegistrationBean.HIGHEST_PRECEDENCE + 2);
         return shibFilter;
     }
 
@@ -108,6 +139,12 @@ public class ShibbolethSecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
+        ShibbolethPreAuthenticatedProcessingFilter shibbolethFilter = new ShibbolethPreAuthenticatedProcessingFilter(
+            authenticationManagerBean(), manage, sab, dashboardAdmin, dashboardViewer, dashboardSuperUser,
+            adminSufConextIdpRole, viewerSurfConextIdpRole);
+        shibbolethFilter.setLoginExecutor(loginExecutor());
+        shibbolethFilter.setLoginDeadlineMillis(loginDeadlineMillis);
+
         http
             .logout()
             .logoutUrl("/dashboard/api/logout")
@@ -116,13 +153,8 @@ public class ShibbolethSecurityConfig extends WebSecurityConfigurerAdapter {
             .logoutSuccessHandler(new DashboardLogoutSuccessHandler())
             .addLogoutHandler(new DashboardLogoutHandler()).and()
             .csrf().disable()
-            .addFilterBefore(
-                new ShibbolethPreAuthenticatedProcessingFilter(authenticationManagerBean(), manage, sab,
-                    dashboardAdmin, dashboardViewer, dashboardSuperUser, adminSufConextIdpRole,
-                    viewerSurfConextIdpRole),
-                AbstractPreAuthenticatedProcessingFilter.class
-            )
-            .addFilterAfter(new EnsureAccessToIdpFilter(manage), ShibbolethPreAuthenticatedProcessingFilter.class)
+            .addFilterBefore(shibbolethFilter, AbstractPreAuthenticatedProcessingFilter.class)
+            .addFilterAfter(new EnsureAccessToIdpFilter(manage, counterService), ShibbolethPreAuthenticatedProcessingFilter.class)
             .authorizeRequests()
             .antMatchers("/identity/**").hasRole("DASHBOARD_SUPER_USER")
             .antMatchers("/dashboard/api/**").hasAnyRole("DASHBOARD_ADMIN", "DASHBOARD_VIEWER", "DASHBOARD_SUPER_USER")
@@ -1,5 +1,6 @@
 package selfservice;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
@@ -10,6 +11,8 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
 import selfservice.api.dashboard.GsonHttpMessageConverter;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.metrics.RequestTimings;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -18,6 +21,8 @@ import java.util.List;
 @Configuration
 public class WebConfig extends WebMvcConfigurerAdapter {
 
+    private static final String CONTROLLER_SPAN = WebConfig.class.getName() + ".CONTROLLER_SPAN";
+
     @Value("${statsBaseUrl}")
     private String statsBaseUrl;
 
@@ -36,6 +41,9 @@ public class WebConfig extends WebMvcConfigurerAdapter {
     @Value("${dashboard.feature.statistics}")
     private boolean statsEnabled;
 
+    @Autowired
+    private IdentityProviderCache identityProviderCache;
+
     @Override
     public void configureContentNegotiation(ContentNegotiationConfigurer configurer) {
         configurer.mediaType("csv", new MediaType("text", "csv"));
@@ -57,11 +65,28 @@ public class WebConfig extends WebMvcConfigurerAdapter {
                 return true;
             }
         });
+        registry.addInterceptor(new HandlerInterceptorAdapter() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                request.setAttribute(CONTROLLER_SPAN, RequestTimings.start("controller"));
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                        Exception ex) {
+                RequestTimings.Span span = (RequestTimings.Span) request.getAttribute(CONTROLLER_SPAN);
+                if (span != null) {
+                    span.close();
+                    request.removeAttribute(CONTROLLER_SPAN);
+                }
+            }
+        });
     }
 
     @Override
     public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
         converters.add(new GsonHttpMessageConverter(statsBaseUrl, statsAuthorizePath, statsClientId, statsScope,
-            statsRedirectUri, statsEnabled));
+            statsRedirectUri, statsEnabled, identityProviderCache));
     }
 }
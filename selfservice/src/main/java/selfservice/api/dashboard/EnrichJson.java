@@ -8,7 +8,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import selfservice.domain.CoinAuthority.Authority;
 import selfservice.domain.CoinUser;
+import selfservice.domain.IdentityProvider;
 import selfservice.domain.Service;
+import selfservice.manage.IdentityProviderCache;
 import selfservice.util.AttributeMapFilter;
 
 import java.util.Collection;
@@ -36,20 +38,37 @@ public class EnrichJson {
     private Map<Class<?>, JsonApplier> mapping = new HashMap<>();
 
     private CoinUser currentUser;
+    private IdentityProviderCache identityProviders;
     private JsonElement json;
 
     @SuppressWarnings("unchecked")
-    private EnrichJson(boolean statsEnabled, CoinUser coinUser, String statsUrl) {
+    private EnrichJson(boolean statsEnabled, CoinUser coinUser, String statsUrl,
+                       IdentityProviderCache identityProviders) {
         LOG.debug("Using {} for user {}", statsUrl, coinUser.getDisplayName());
         this.currentUser = coinUser;
+        this.identityProviders = identityProviders;
         boolean statsEnabled1 = statsEnabled;
         Gson gson = GsonHttpMessageConverter.GSON_BUILDER.create();
 
         mapping.put(CoinUser.class, (coinUserJsonElement, payload) -> {
             JsonObject user = coinUserJsonElement.getAsJsonObject();
+            CoinUser userPayload = (CoinUser) payload;
 
             filterDashboardAuthorities(user);
 
+            // the user only holds on to the entity ids, the client needs the IdPs themselves
+            if (userPayload.getIdpId() != null) {
+                IdentityProvider currentIdp = identityProviders.get(userPayload.getIdpId()).orElseThrow(() ->
+                    new IllegalStateException("The current IdP " + userPayload.getIdpId() + " is unknown in Manage"));
+                user.add("currentIdp", gson.toJsonTree(currentIdp));
+            }
+            userPayload.getSwitchedToIdpId().flatMap(identityProviders::get)
+                .ifPresent(idp -> user.add("switchedToIdp", gson.toJsonTree(idp)));
+            JsonArray institutionIdps = new JsonArray();
+            identityProviders.getAll(userPayload.getInstitutionIdpIds()).values()
+                .forEach(idp -> institutionIdps.add(gson.toJsonTree(idp)));
+            user.add("institutionIdps", institutionIdps);
+
             user.addProperty(SUPER_USER, ((CoinUser) payload).isSuperUser());
             user.addProperty(DASHBOARD_ADMIN, ((CoinUser) payload).isDashboardAdmin());
             user.addProperty(STATS_URL, statsUrl);
@@ -70,8 +89,9 @@ public class EnrichJson {
         });
     }
 
-    public static EnrichJson forUser(boolean statsEnabled, CoinUser currentUser, String statsUrl) {
-        return new EnrichJson(statsEnabled, currentUser, statsUrl);
+    public static EnrichJson forUser(boolean statsEnabled, CoinUser currentUser, String statsUrl,
+                                     IdentityProviderCache identityProviders) {
+        return new EnrichJson(statsEnabled, currentUser, statsUrl, identityProviders);
     }
 
     private void filterDashboardAuthorities(JsonObject user) {
@@ -1,5 +1,6 @@
 package selfservice.api.dashboard;
 
+import com.google.common.io.CountingOutputStream;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -15,6 +16,9 @@ import org.springframework.http.MediaType;
 import org.springframework.http.converter.AbstractHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
+import selfservice.jfr.SerializationEvent;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.metrics.RequestTimings;
 import selfservice.shibboleth.ShibbolethHeader;
 import selfservice.util.SpringSecurity;
 
@@ -46,8 +50,10 @@ public class GsonHttpMessageConverter extends AbstractHttpMessageConverter<RestR
   private String statsScope;
   private String statsRedirectUri;
 
+  private final IdentityProviderCache identityProviders;
+
   public GsonHttpMessageConverter(String statsBaseUr, String statsAuthorizePath, String
-      statsClientId, String statsScope, String statsRedirectUri, boolean statsEnabled) {
+      statsClientId, String statsScope, String statsRedirectUri, boolean statsEnabled, IdentityProviderCache identityProviders) {
     this.gson = GSON_BUILDER.create();
     this.statsBaseUrl = statsBaseUr;
     this.statsAuthorizePath = statsAuthorizePath;
@@ -55,6 +61,7 @@ public class GsonHttpMessageConverter extends AbstractHttpMessageConverter<RestR
     this.statsScope = statsScope;
     this.statsRedirectUri = statsRedirectUri;
     this.statsEnabled = statsEnabled;
+    this.identityProviders = identityProviders;
   }
 
   @Override
@@ -87,28 +94,49 @@ public class GsonHttpMessageConverter extends AbstractHttpMessageConverter<RestR
   @Override
   protected void writeInternal(RestResponse<?> objectRestResponse, HttpOutputMessage outputMessage) throws
     IOException, HttpMessageNotWritableException {
-    JsonElement json = gson.toJsonTree(objectRestResponse);
-    EnrichJson.forUser(
-      statsEnabled,
-      SpringSecurity.getCurrentUser(),
-      format(
-        "%s/%s?response_type=token&client_id=%s&scope=%s&redirect_uri=%s",
-        statsBaseUrl,
-        statsAuthorizePath,
-        statsClientId,
-        statsScope,
-        statsRedirectUri
-      )
-    )
-      .json(json)
-      .forPayload(objectRestResponse.getPayload());
-
-    Charset charset = getCharset(outputMessage.getHeaders());
+    SerializationEvent event = new SerializationEvent();
+    event.begin();
+    try (RequestTimings.Span span = RequestTimings.start("serialization")) {
+      JsonElement json = gson.toJsonTree(objectRestResponse);
+      enrich(json, objectRestResponse);
+
+      Charset charset = getCharset(outputMessage.getHeaders());
+      //only count the bytes when they are recorded
+      CountingOutputStream body = event.isEnabled() ? new CountingOutputStream(outputMessage.getBody()) : null;
+
+      try (OutputStreamWriter jsonWriter = new OutputStreamWriter(body != null ? body : outputMessage.getBody(),
+        charset)) {
+        gson.toJson(json, jsonWriter);
+      } catch (JsonIOException e) {
+        throw new HttpMessageNotWritableException("Could not write JSON: " + e.getMessage(), e);
+      }
+
+      if (body != null && event.shouldCommit()) {
+        Object payload = objectRestResponse.getPayload();
+        event.payloadClass = payload == null ? null : payload.getClass().getName();
+        event.bytes = body.getCount();
+        event.commit();
+      }
+    }
+  }
 
-    try (OutputStreamWriter jsonWriter = new OutputStreamWriter(outputMessage.getBody(), charset)) {
-      gson.toJson(json, jsonWriter);
-    } catch (JsonIOException e) {
-      throw new HttpMessageNotWritableException("Could not write JSON: " + e.getMessage(), e);
+  private void enrich(JsonElement json, RestResponse<?> objectRestResponse) {
+    try (RequestTimings.Span span = RequestTimings.start("enrich")) {
+      EnrichJson.forUser(
+        statsEnabled,
+        SpringSecurity.getCurrentUser(),
+        format(
+          "%s/%s?response_type=token&client_id=%s&scope=%s&redirect_uri=%s",
+          statsBaseUrl,
+          statsAuthorizePath,
+          statsClientId,
+          statsScope,
+          statsRedirectUri
+        ),
+        identityProviders
+      )
+        .json(json)
+        .forPayload(objectRestResponse.getPayload());
     }
   }
 
@@ -1,12 +1,11 @@
 package selfservice.api.dashboard;
 
-import static java.util.function.Function.identity;
 import static selfservice.api.dashboard.Constants.HTTP_X_IDP_ENTITY_ID;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
@@ -22,6 +21,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 
 import selfservice.domain.IdentityProvider;
 import selfservice.domain.LicenseContactPerson;
+import selfservice.manage.Manage;
 import selfservice.sab.Sab;
 import selfservice.sab.SabPerson;
 import selfservice.util.LicenseContactPersonService;
@@ -36,9 +36,14 @@ public class IdpController extends BaseController {
   @Autowired
   private Sab sabClient;
 
+  @Autowired
+  private Manage manage;
+
   @RequestMapping("/current/roles")
   public ResponseEntity<RestResponse<Map<String, Collection<SabPerson>>>> roles(@RequestHeader(HTTP_X_IDP_ENTITY_ID) String idpEntityId) {
-    Map<String, Collection<SabPerson>> roleAssignments = SpringSecurity.getCurrentUser().getByEntityId(idpEntityId)
+    Map<String, Collection<SabPerson>> roleAssignments = Optional.of(idpEntityId)
+        .filter(SpringSecurity.getCurrentUser()::isInstitutionIdp)
+        .flatMap(entityId -> manage.getIdentityProvider(entityId, false))
         .map(this::personsInRole)
         .orElse(ImmutableMap.of());
 
@@ -50,9 +55,7 @@ public class IdpController extends BaseController {
       return ImmutableMap.of();
     }
 
-    return INTERESTING_ROLES.stream().collect(Collectors.toMap(
-        identity(),
-        role -> sabClient.getPersonsInRoleForOrganization(idp.getInstitutionId(), role)));
+    return sabClient.getPersonsInRolesForOrganization(idp.getInstitutionId(), INTERESTING_ROLES);
   }
 
 }
@@ -16,10 +16,12 @@ import selfservice.domain.Action;
 import selfservice.domain.Category;
 import selfservice.domain.CategoryValue;
 import selfservice.domain.CoinUser;
+import selfservice.domain.IdentityProvider;
 import selfservice.domain.InstitutionIdentityProvider;
 import selfservice.domain.Provider;
 import selfservice.domain.Service;
 import selfservice.manage.EntityType;
+import selfservice.manage.IdentityProviderCache;
 import selfservice.manage.Manage;
 import selfservice.service.ActionsService;
 import selfservice.service.Services;
@@ -61,6 +63,9 @@ public class ServicesController extends BaseController {
     @Autowired
     private Manage manage;
 
+    @Autowired
+    private IdentityProviderCache identityProviderCache;
+
     @Autowired
     private ActionsService actionsService;
 
@@ -218,7 +223,9 @@ public class ServicesController extends BaseController {
             return Optional.empty();
         }
 
-        if (isNullOrEmpty(currentUser.getIdp().getInstitutionId())) {
+        String institutionId = identityProviderCache.get(currentUser.getIdpId())
+            .map(IdentityProvider::getInstitutionId).orElse(null);
+        if (isNullOrEmpty(institutionId)) {
             return Optional.empty();
         }
 
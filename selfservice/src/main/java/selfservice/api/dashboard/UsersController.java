@@ -1,5 +1,6 @@
 package selfservice.api.dashboard;
 
+import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,22 +21,24 @@ import selfservice.domain.CoinAuthority.Authority;
 import selfservice.domain.CoinUser;
 import selfservice.domain.ContactPerson;
 import selfservice.domain.IdentityProvider;
-import selfservice.domain.Provider;
 import selfservice.domain.Service;
 import selfservice.domain.Settings;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.manage.IdentityProviderSummaries;
 import selfservice.manage.Manage;
 import selfservice.service.ActionsService;
 import selfservice.service.Services;
 import selfservice.util.SpringSecurity;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.Null;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -52,14 +55,26 @@ public class UsersController extends BaseController {
     @Autowired
     private Manage manage;
 
+    @Autowired
+    private IdentityProviderCache identityProviderCache;
+
     @Autowired
     private Services services;
 
     @Autowired
     private ActionsService actionsService;
 
+    @Autowired
+    private IdentityProviderSummaries identityProviderSummaries;
+
     private static final Logger LOG = LoggerFactory.getLogger(UsersController.class);
 
+    private static final byte[] SUPER_IDPS_PREFIX = "{\"payload\":{\"idps\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUPER_IDPS_ROLES = (",\"roles\":" + new Gson().toJson(Arrays.asList(
+        Authority.ROLE_DASHBOARD_VIEWER.name(), Authority.ROLE_DASHBOARD_ADMIN.name())) + "},\"language\":\"")
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUPER_IDPS_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
 
     @RequestMapping("/me")
     public RestResponse<CoinUser> me() {
@@ -67,26 +82,27 @@ public class UsersController extends BaseController {
     }
 
     @RequestMapping("/super/idps")
-    public ResponseEntity<RestResponse<Map<String, List<?>>>> idps() {
+    public void idps(HttpServletRequest request, HttpServletResponse response) throws IOException {
         CoinUser currentUser = SpringSecurity.getCurrentUser();
 
         if (!currentUser.isSuperUser()) {
             LOG.warn("IdP's endpoint is only allowed for superUser, not for {}", currentUser);
-            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+            response.setStatus(HttpStatus.FORBIDDEN.value());
+            return;
         }
 
-        List<IdentityProvider> idps = manage.getAllIdentityProviders().stream()
-                .sorted(Comparator.comparing(Provider::getName))
-                .collect(toList());
-
-        List<String> roles = Arrays.asList(Authority.ROLE_DASHBOARD_VIEWER.name(),
-                Authority.ROLE_DASHBOARD_ADMIN.name());
-
-        HashMap<String, List<?>> payload = new HashMap<>();
-        payload.put("idps", idps);
-        payload.put("roles", roles);
-
-        return new ResponseEntity<>(createRestResponse(payload), HttpStatus.OK);
+        //Same JSON as a RestResponse with the idps and roles as payload, but the idps are pre-serialized
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        OutputStream outputStream = response.getOutputStream();
+        outputStream.write(SUPER_IDPS_PREFIX);
+        outputStream.write(identityProviderSummaries.getSortedJson());
+        outputStream.write(SUPER_IDPS_ROLES);
+        outputStream.write(getLocale(request).getLanguage().getBytes(StandardCharsets.UTF_8));
+        outputStream.write(SUPER_IDPS_SUFFIX);
+        outputStream.flush();
     }
 
     @RequestMapping(value = "/me/serviceproviders", method = RequestMethod.GET)
@@ -98,9 +114,10 @@ public class UsersController extends BaseController {
 
     private List<Service> getServiceProvidersForCurrentUser(Locale locale) throws IOException {
         CoinUser currentUser = SpringSecurity.getCurrentUser();
-        Optional<IdentityProvider> switchedToIdp = currentUser.getSwitchedToIdp();
-        //We can not map as a null value is converted to an empty Optional
-        String usersInstitutionId = switchedToIdp.isPresent() ? switchedToIdp.get().getInstitutionId() :
+        Optional<String> switchedToIdpId = currentUser.getSwitchedToIdpId();
+        String usersInstitutionId = switchedToIdpId.isPresent() ?
+                identityProviderCache.get(switchedToIdpId.get()).map(IdentityProvider::getInstitutionId)
+                    .orElse(null) :
                 currentUser.getInstitutionId();
 
         return isNullOrEmpty(usersInstitutionId) ? Collections.emptyList()
@@ -135,7 +152,8 @@ public class UsersController extends BaseController {
             return new ResponseEntity<>(HttpStatus.FORBIDDEN);
         }
 
-        IdentityProvider idp = currentUser.getIdp();
+        IdentityProvider idp = identityProviderCache.get(currentUser.getIdpId())
+                .orElseThrow(() -> new SecurityException(currentUser.getIdpId() + " does not exist"));
 
         List<Change> changes = getChanges(locale, settings, idp);
         if (changes.isEmpty()) {
@@ -22,7 +22,7 @@ import static selfservice.domain.CoinAuthority.Authority.ROLE_DASHBOARD_VIEWER;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -40,19 +40,23 @@ import org.springframework.util.StringUtils;
 import selfservice.domain.CoinAuthority.Authority;
 import selfservice.shibboleth.ShibbolethHeader;
 
+/**
+ * The logged in user, kept in the HTTP session. IdentityProviders are referenced by their entity id only and resolved
+ * from {@link selfservice.manage.Manage} when needed, so sessions don't hold on to (outdated copies of) the metadata.
+ */
 @SuppressWarnings("serial")
 public class CoinUser implements UserDetails {
 
   private String uid;
   private String displayName;
   private String schacHomeOrganization;
-  private IdentityProvider currentIdp;
-  private IdentityProvider switchedToIdp;
-  private List<IdentityProvider> institutionIdps = new ArrayList<>();
+  private String currentIdpId;
+  private String switchedToIdpId;
+  private List<String> institutionIdpIds = new ArrayList<>();
   private String institutionId;
   private String email;
   private Set<CoinAuthority> grantedAuthorities = new HashSet<>();
-  private Map<ShibbolethHeader, List<String>> attributeMap = new HashMap<>();
+  private Map<ShibbolethHeader, List<String>> attributeMap = new EnumMap<>(ShibbolethHeader.class);
 
   @Override
   @JsonIgnore
@@ -177,17 +181,21 @@ public class CoinUser implements UserDetails {
   }
 
   /**
-   * List of {@link InstitutionIdentityProvider}'s of the institution for this users.
+   * Entity ids of the IdentityProviders of the institution for this user, sorted by name.
    * Usually contains only the IdP the user logs in with.
    *
-   * @return List of {@link InstitutionIdentityProvider}'s
+   * @return List of entity ids
    */
-  public List<IdentityProvider> getInstitutionIdps() {
-    return institutionIdps;
+  public List<String> getInstitutionIdpIds() {
+    return institutionIdpIds;
+  }
+
+  public void addInstitutionIdpId(String idpId) {
+    this.institutionIdpIds.add(idpId);
   }
 
-  public void addInstitutionIdp(IdentityProvider idp) {
-    this.institutionIdps.add(idp);
+  public boolean isInstitutionIdp(String idpId) {
+    return institutionIdpIds.contains(idpId);
   }
 
   /**
@@ -210,20 +218,20 @@ public class CoinUser implements UserDetails {
    *
    * @return Identifier of the IdentityProvider the user has logged in with
    */
-  public IdentityProvider getIdp() {
-    return currentIdp;
+  public String getIdpId() {
+    return currentIdpId;
   }
 
-  public void setIdp(IdentityProvider idp) {
-    this.currentIdp = idp;
+  public void setIdpId(String idpId) {
+    this.currentIdpId = idpId;
   }
 
-  public Optional<IdentityProvider> getSwitchedToIdp() {
-    return Optional.ofNullable(switchedToIdp);
+  public Optional<String> getSwitchedToIdpId() {
+    return Optional.ofNullable(switchedToIdpId);
   }
 
-  public void setSwitchedToIdp(IdentityProvider switchedToIdp) {
-    this.switchedToIdp = switchedToIdp;
+  public void setSwitchedToIdpId(String switchedToIdpId) {
+    this.switchedToIdpId = switchedToIdpId;
   }
 
   /**
@@ -236,7 +244,8 @@ public class CoinUser implements UserDetails {
   }
 
   public void setAttributeMap(Map<ShibbolethHeader, List<String>> attributeMap) {
-    this.attributeMap = attributeMap;
+    this.attributeMap = new EnumMap<>(ShibbolethHeader.class);
+    this.attributeMap.putAll(attributeMap);
   }
 
   public void addAttribute(ShibbolethHeader key, List<String> value) {
@@ -247,23 +256,19 @@ public class CoinUser implements UserDetails {
     return grantedAuthorities.stream().map(CoinAuthority::getEnumAuthority).collect(Collectors.toList());
   }
 
-  public Optional<IdentityProvider> getByEntityId(String entityId) {
-    return getInstitutionIdps().stream().filter(iip -> iip.getId().equals(entityId)).findFirst();
-  }
-
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
         .add("uid", uid)
         .add("displayName", displayName)
         .add("schacHomeOrganization", schacHomeOrganization)
-        .add("idp", currentIdp)
-        .add("institutionIdps", institutionIdps)
+        .add("idp", currentIdpId)
+        .add("institutionIdps", institutionIdpIds)
         .add("institutionId", institutionId)
         .add("email", email)
         .add("grantedAuthorities", grantedAuthorities)
         .add("attributeMap", attributeMap)
-        .add("switchedToIdp", switchedToIdp).toString();
+        .add("switchedToIdp", switchedToIdpId).toString();
   }
 
 }
@@ -1,8 +1,10 @@
 package selfservice.filter;
 
+import org.springframework.boot.actuate.metrics.CounterService;
 import org.springframework.web.filter.GenericFilterBean;
 import selfservice.domain.IdentityProvider;
 import selfservice.manage.Manage;
+import selfservice.metrics.RequestTimings;
 import selfservice.util.SpringSecurity;
 
 import javax.servlet.FilterChain;
@@ -10,17 +12,29 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static selfservice.api.dashboard.Constants.HTTP_X_IDP_ENTITY_ID;
 
 public class EnsureAccessToIdpFilter extends GenericFilterBean {
 
+  static final String GRANTED_IDPS_SESSION_ATTRIBUTE = EnsureAccessToIdpFilter.class.getName() + ".GRANTED_IDPS";
+
   private Manage manage;
+  private Optional<CounterService> counterService;
 
   public EnsureAccessToIdpFilter(Manage manage) {
+    this(manage, null);
+  }
+
+  public EnsureAccessToIdpFilter(Manage manage, CounterService counterService) {
     this.manage = manage;
+    this.counterService = Optional.ofNullable(counterService);
   }
 
   @Override
@@ -29,15 +43,63 @@ public class EnsureAccessToIdpFilter extends GenericFilterBean {
 
     if (shouldAccessToIdpBeChecked(req)) {
       String idpEntityId = Optional.ofNullable(req.getHeader(HTTP_X_IDP_ENTITY_ID)).orElse(request.getParameter("idpEntityId"));
-      IdentityProvider idp = manage.getIdentityProvider(idpEntityId, false).orElseThrow(() -> new SecurityException(idpEntityId + " does not exist"));
-      SpringSecurity.ensureAccess(idp);
+      try (RequestTimings.Span span = RequestTimings.start("idpAccess")) {
+        ensureAccess(req.getSession(false), idpEntityId);
+      }
     }
 
     chain.doFilter(request, response);
   }
 
+  /*
+   * Access to an IdP only changes when the metadata changes, so a positive decision is remembered in the session for
+   * the metadata version it was made against. Denials are not remembered and are re-evaluated on every request.
+   */
+  private void ensureAccess(HttpSession session, String idpEntityId) {
+    long metadataVersion = manage.getMetadataVersion();
+    GrantedIdps granted = session == null ? null : grantedIdps(session);
+
+    if (granted != null && idpEntityId != null && granted.isGranted(idpEntityId, metadataVersion)) {
+      counterService.ifPresent(counters -> counters.increment("counter.idp.access.cache.hit"));
+      return;
+    }
+    counterService.ifPresent(counters -> counters.increment("counter.idp.access.cache.miss"));
+
+    IdentityProvider idp = manage.getIdentityProvider(idpEntityId, false).orElseThrow(() -> new SecurityException(idpEntityId + " does not exist"));
+    SpringSecurity.ensureAccess(idp);
+
+    if (granted != null) {
+      granted.grant(idpEntityId, metadataVersion);
+      //re-set so that replicated or persistent sessions pick up the change
+      session.setAttribute(GRANTED_IDPS_SESSION_ATTRIBUTE, granted);
+    }
+  }
+
+  private GrantedIdps grantedIdps(HttpSession session) {
+    GrantedIdps granted = (GrantedIdps) session.getAttribute(GRANTED_IDPS_SESSION_ATTRIBUTE);
+    if (granted == null) {
+      granted = new GrantedIdps();
+      session.setAttribute(GRANTED_IDPS_SESSION_ATTRIBUTE, granted);
+    }
+    return granted;
+  }
+
   private boolean shouldAccessToIdpBeChecked(HttpServletRequest req) {
     String requestURI = req.getRequestURI();
     return requestURI.startsWith("/dashboard/api") && !requestURI.contains("/users/me") && !requestURI.contains("/jsError");
   }
+
+  static class GrantedIdps implements Serializable {
+
+    private final Map<String, Long> metadataVersions = new ConcurrentHashMap<>();
+
+    boolean isGranted(String idpEntityId, long metadataVersion) {
+      Long granted = metadataVersions.get(idpEntityId);
+      return granted != null && granted == metadataVersion;
+    }
+
+    void grant(String idpEntityId, long metadataVersion) {
+      metadataVersions.put(idpEntityId, metadataVersion);
+    }
+  }
 }
@@ -0,0 +1,172 @@
+package selfservice.health;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.CompositeHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.OrderedHealthAggregator;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks the downstream services in the background and keeps the last outcome of every check, so that availability
+ * questions and the health endpoint never wait on a remote call.
+ * <p>
+ * Only a critical service that is unavailable takes the health endpoint down. The dashboard degrades without the
+ * others, so they stay up in the health endpoint and report the outcome of their last probe as details.
+ */
+public class DownstreamProber {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DownstreamProber.class);
+
+  private final ExecutorService executor;
+  private final long timeoutMillis;
+
+  private final Map<String, Callable<Boolean>> checks = new ConcurrentHashMap<>();
+  private final Map<String, ProbeResult> results = new ConcurrentHashMap<>();
+  private final Set<String> critical = ConcurrentHashMap.newKeySet();
+  //A cancelled future is done before its check returns, so the checks themselves record when they are done
+  private final Set<String> running = ConcurrentHashMap.newKeySet();
+  private final CompositeHealthIndicator healthIndicator = new CompositeHealthIndicator(new OrderedHealthAggregator());
+
+  public DownstreamProber(ExecutorService executor, long timeoutMillis) {
+    this.executor = executor;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Registers a service the dashboard can do without.
+   *
+   * @param check returns whether the service is available, an exception counts as unavailable
+   */
+  public void register(String name, Callable<Boolean> check) {
+    register(name, check, false);
+  }
+
+  /**
+   * @param check    returns whether the service is available, an exception counts as unavailable
+   * @param critical whether the dashboard is down when the service is unavailable
+   */
+  public void register(String name, Callable<Boolean> check, boolean critical) {
+    if (critical) {
+      this.critical.add(name);
+    }
+    checks.put(name, check);
+    healthIndicator.addHealthIndicator(name, () -> health(name));
+  }
+
+  @Scheduled(fixedDelayString = "${health.probe.intervalMillis}")
+  public void probeAll() {
+    checks.forEach((name, check) -> {
+      if (!running.add(name)) {
+        // a hanging check keeps its thread, even after it timed out, don't pile up more of them
+        LOG.warn("Previous probe of {} is still running, skipping", name);
+        return;
+      }
+      long start = System.currentTimeMillis();
+      Future<Boolean> future = executor.submit(() -> {
+        try {
+          return check.call();
+        } finally {
+          running.remove(name);
+        }
+      });
+      executor.execute(() -> awaitProbe(name, future, start));
+    });
+  }
+
+  /**
+   * @return whether the last probe succeeded, or {@code true} when the service was not probed yet
+   */
+  public boolean isAvailable(String name) {
+    ProbeResult result = results.get(name);
+    return result == null || result.up;
+  }
+
+  public ProbeResult getResult(String name) {
+    return results.get(name);
+  }
+
+  public HealthIndicator healthIndicator() {
+    return healthIndicator;
+  }
+
+  private void awaitProbe(String name, Future<Boolean> check, long start) {
+    ProbeResult result;
+    try {
+      boolean up = check.get(timeoutMillis, TimeUnit.MILLISECONDS);
+      result = new ProbeResult(up, System.currentTimeMillis() - start, start, null);
+    } catch (TimeoutException e) {
+      check.cancel(true);
+      result = new ProbeResult(false, System.currentTimeMillis() - start, start, "timed out after " + timeoutMillis + " ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (Exception e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      result = new ProbeResult(false, System.currentTimeMillis() - start, start, cause.toString());
+    }
+
+    ProbeResult previous = results.put(name, result);
+    if (previous == null || previous.up != result.up) {
+      LOG.info("Downstream {} is now {}", name, result);
+    }
+  }
+
+  private Health health(String name) {
+    ProbeResult result = results.get(name);
+    if (result == null) {
+      return Health.unknown().build();
+    }
+    Health.Builder health = result.up || !critical.contains(name) ? Health.up() : Health.down();
+    health.withDetail("available", result.up).withDetail("latencyMillis", result.latencyMillis).withDetail("checkedAt", result.checkedAt);
+    if (result.error != null) {
+      health.withDetail("error", result.error);
+    }
+    return health.build();
+  }
+
+  public static class ProbeResult {
+    private final boolean up;
+    private final long latencyMillis;
+    private final long checkedAt;
+    private final String error;
+
+    private ProbeResult(boolean up, long latencyMillis, long checkedAt, String error) {
+      this.up = up;
+      this.latencyMillis = latencyMillis;
+      this.checkedAt = checkedAt;
+      this.error = error;
+    }
+
+    public boolean isUp() {
+      return up;
+    }
+
+    public long getLatencyMillis() {
+      return latencyMillis;
+    }
+
+    public long getCheckedAt() {
+      return checkedAt;
+    }
+
+    public String getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return (up ? "UP" : "DOWN") + " (" + latencyMillis + " ms" + (error == null ? "" : ", " + error) + ")";
+    }
+  }
+}
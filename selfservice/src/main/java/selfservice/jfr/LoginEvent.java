@@ -0,0 +1,32 @@
+package selfservice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Building the principal of a user that logs in, including the SAB and Manage lookups it needs. The user itself is
+ * not recorded.
+ */
+@Name("selfservice.Login")
+@Label("Login")
+@Category({"Dashboard", "Login"})
+@Description("Building the principal from the Shibboleth headers, SAB and Manage")
+@Enabled(false)
+@StackTrace(false)
+public class LoginEvent extends Event {
+
+  @Label("IdP")
+  public String idp;
+
+  @Label("Institution IdPs")
+  public int institutionIdps;
+
+  @Label("Authorities")
+  public String authorities;
+
+}
@@ -0,0 +1,30 @@
+package selfservice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request to Manage, from sending the query until the whole response is read.
+ */
+@Name("selfservice.ManageFetch")
+@Label("Manage Fetch")
+@Category({"Dashboard", "Manage"})
+@Description("Request to Manage until the response is read")
+@Enabled(false)
+@StackTrace(false)
+public class ManageFetchEvent extends Event {
+
+  @Label("Collection")
+  public String collection;
+
+  @Label("Response Size")
+  @DataAmount
+  public long bytes;
+
+}
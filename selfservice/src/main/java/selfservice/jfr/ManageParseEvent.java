@@ -0,0 +1,35 @@
+package selfservice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Parsing Manage metadata JSON into maps, either a response of Manage or one of the bundled metadata files.
+ */
+@Name("selfservice.ManageParse")
+@Label("Manage Parse")
+@Category({"Dashboard", "Manage"})
+@Description("Parsing Manage metadata into entities")
+@Enabled(false)
+@StackTrace(false)
+public class ManageParseEvent extends Event {
+
+  @Label("Source")
+  @Description("The metadata file, empty for a response of Manage")
+  public String source;
+
+  @Label("Size")
+  @Description("The size of the metadata file, -1 for a response of Manage which is in the preceding Manage Fetch")
+  @DataAmount
+  public long bytes = -1;
+
+  @Label("Entities")
+  public int entities;
+
+}
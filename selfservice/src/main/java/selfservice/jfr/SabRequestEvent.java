@@ -0,0 +1,37 @@
+package selfservice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A round trip to SAB, from sending the request until the response is parsed.
+ */
+@Name("selfservice.SabRequest")
+@Label("SAB Request")
+@Category({"Dashboard", "SAB"})
+@Description("Round trip to SAB until the response is parsed")
+@Enabled(false)
+@StackTrace(false)
+public class SabRequestEvent extends Event {
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Request Size")
+  @DataAmount
+  public long requestBytes;
+
+  @Label("Results")
+  @Description("The number of roles or persons in the response")
+  public int results;
+
+  @Label("Succeeded")
+  public boolean succeeded;
+
+}
@@ -0,0 +1,30 @@
+package selfservice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Writing an API response as JSON, including enriching it with the links the client needs.
+ */
+@Name("selfservice.Serialization")
+@Label("JSON Serialization")
+@Category({"Dashboard", "HTTP"})
+@Description("Enriching and writing an API response as JSON")
+@Enabled(false)
+@StackTrace(false)
+public class SerializationEvent extends Event {
+
+  @Label("Payload Class")
+  public String payloadClass;
+
+  @Label("Output Size")
+  @DataAmount
+  public long bytes;
+
+}
@@ -0,0 +1,36 @@
+package selfservice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Rebuilding data derived from the metadata after the metadata version changed.
+ */
+@Name("selfservice.SnapshotRebuild")
+@Label("Snapshot Rebuild")
+@Category({"Dashboard", "Manage"})
+@Description("Rebuilding data derived from the metadata for a new metadata version")
+@Enabled(false)
+@StackTrace(false)
+public class SnapshotRebuildEvent extends Event {
+
+  @Label("Snapshot")
+  public String snapshot;
+
+  @Label("Metadata Version")
+  public long version;
+
+  @Label("Entities")
+  public int entities;
+
+  @Label("Size")
+  @DataAmount
+  public long bytes;
+
+}
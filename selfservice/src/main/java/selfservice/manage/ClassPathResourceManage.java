@@ -16,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
@@ -29,6 +30,7 @@ public class ClassPathResourceManage implements Manage {
     private volatile Map<String, IdentityProvider> identityProviderMap = new HashMap<>();
     private volatile Map<String, ServiceProvider> serviceProviderMap = new HashMap<>();
     private volatile Map<String, ServiceProvider> exampleSingleTenants = new HashMap<>();
+    private final AtomicLong metadataVersion = new AtomicLong();
 
     public ClassPathResourceManage() {
         initializeMetadata();
@@ -96,6 +98,11 @@ public class ClassPathResourceManage implements Manage {
             .equals(sp.getInstitutionId())).collect(toList()) : Collections.emptyList();
     }
 
+    @Override
+    public long getMetadataVersion() {
+        return metadataVersion.get();
+    }
+
     private void initializeMetadata() {
         try {
             identityProviderMap = parseProviders(getIdpResource(), this::identityProvider);
@@ -109,6 +116,7 @@ public class ClassPathResourceManage implements Manage {
                 singleTenant.setExampleSingleTenant(true);
                 singleTenant.setEid(singleTenant.getEid() + maxEid);
             });
+            metadataVersion.incrementAndGet();
             LOG.debug("Initialized Manage Resources. Number of IDPs {}. Number of SPs {}", identityProviderMap.size(),
                 serviceProviderMap.size());
         } catch (Throwable e) {
@@ -0,0 +1,73 @@
+package selfservice.manage;
+
+import selfservice.domain.IdentityProvider;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Resolves IdP entity ids, like the ones a logged in user holds on to, without going to Manage on every request. The
+ * IdPs are fetched in bulk when first asked for and kept until the {@link Manage#getMetadataVersion() metadata
+ * version} changes.
+ */
+public class IdentityProviderCache {
+
+    private final Manage manage;
+
+    private volatile Snapshot snapshot;
+
+    public IdentityProviderCache(Manage manage) {
+        this.manage = manage;
+    }
+
+    public Optional<IdentityProvider> get(String entityId) {
+        return entityId == null ? Optional.empty() :
+            Optional.ofNullable(getAll(Collections.singletonList(entityId)).get(entityId));
+    }
+
+    /**
+     * @return the found IdPs by entity id in the order of the given ids, ids Manage does not know are left out
+     */
+    public Map<String, IdentityProvider> getAll(Collection<String> entityIds) {
+        Map<String, IdentityProvider> cached = current().identityProviders;
+        List<String> missing = entityIds.stream().filter(entityId -> !cached.containsKey(entityId)).collect(toList());
+        if (!missing.isEmpty()) {
+            cached.putAll(manage.getIdentityProvidersByEntityIds(missing));
+        }
+        Map<String, IdentityProvider> result = new LinkedHashMap<>();
+        entityIds.forEach(entityId -> Optional.ofNullable(cached.get(entityId))
+            .ifPresent(idp -> result.put(entityId, idp)));
+        return result;
+    }
+
+    private Snapshot current() {
+        long version = manage.getMetadataVersion();
+        Snapshot current = snapshot;
+        if (current == null || current.version != version) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || current.version != version) {
+                    current = new Snapshot(version);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final Map<String, IdentityProvider> identityProviders = new ConcurrentHashMap<>();
+
+        private Snapshot(long version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package selfservice.manage;
+
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import selfservice.domain.IdentityProvider;
+import selfservice.domain.InstitutionIdentityProvider;
+import selfservice.domain.Provider.Language;
+import selfservice.jfr.SnapshotRebuildEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps a locale-sorted list of {@link InstitutionIdentityProvider} summaries of all IdPs, both as objects and
+ * pre-serialized to JSON. The list is only rebuilt when the {@link Manage#getMetadataVersion() metadata version}
+ * changes.
+ */
+public class IdentityProviderSummaries {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdentityProviderSummaries.class);
+
+    private final Manage manage;
+    private final Collator collator;
+    private final Gson gson = new Gson();
+
+    private volatile Snapshot snapshot;
+
+    public IdentityProviderSummaries(Manage manage, Locale locale) {
+        this.manage = manage;
+        this.collator = Collator.getInstance(locale);
+        this.collator.setStrength(Collator.SECONDARY);
+    }
+
+    public List<InstitutionIdentityProvider> getSorted() {
+        return current().summaries;
+    }
+
+    /**
+     * @return the sorted summaries as a UTF-8 encoded JSON array. Callers must not modify the returned array.
+     */
+    public byte[] getSortedJson() {
+        return current().json;
+    }
+
+    private Snapshot current() {
+        long version = manage.getMetadataVersion();
+        Snapshot current = snapshot;
+        if (current == null || current.version != version) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || current.version != version) {
+                    current = build(version);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    //Collator is not thread-safe, only call when holding the lock
+    private Snapshot build(long version) {
+        SnapshotRebuildEvent event = new SnapshotRebuildEvent();
+        event.begin();
+
+        List<InstitutionIdentityProvider> summaries = manage.getAllIdentityProviders().stream()
+            .map(idp -> new Keyed(collator.getCollationKey(nullToEmpty(idp.getName())), summary(idp)))
+            .sorted(Comparator.comparing(keyed -> keyed.key))
+            .map(keyed -> keyed.summary)
+            .collect(toList());
+
+        byte[] json = gson.toJson(summaries).getBytes(StandardCharsets.UTF_8);
+        LOG.debug("Built {} IdP summaries ({} bytes) for metadata version {}", summaries.size(), json.length, version);
+
+        if (event.shouldCommit()) {
+            event.snapshot = "identityProviderSummaries";
+            event.version = version;
+            event.entities = summaries.size();
+            event.bytes = json.length;
+            event.commit();
+        }
+
+        return new Snapshot(version, Collections.unmodifiableList(summaries), json);
+    }
+
+    private InstitutionIdentityProvider summary(IdentityProvider idp) {
+        return new InstitutionIdentityProvider(idp.getId(), idp.getName(), idp.getName(Language.NL),
+            idp.getInstitutionId());
+    }
+
+    private static class Keyed {
+        private final CollationKey key;
+        private final InstitutionIdentityProvider summary;
+
+        private Keyed(CollationKey key, InstitutionIdentityProvider summary) {
+            this.key = key;
+            this.summary = summary;
+        }
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final List<InstitutionIdentityProvider> summaries;
+        private final byte[] json;
+
+        private Snapshot(long version, List<InstitutionIdentityProvider> summaries, byte[] json) {
+            this.version = version;
+            this.summaries = summaries;
+            this.json = json;
+        }
+    }
+}
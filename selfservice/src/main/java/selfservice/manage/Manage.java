@@ -6,9 +6,11 @@ import org.springframework.core.io.Resource;
 import selfservice.domain.IdentityProvider;
 import selfservice.domain.Provider;
 import selfservice.domain.ServiceProvider;
+import selfservice.jfr.ManageParseEvent;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -54,6 +56,32 @@ public interface Manage {
      */
     Optional<IdentityProvider> getIdentityProvider(String idpEntityId, boolean searchRevisions);
 
+    /**
+     * Get the service providers for a batch of entity ID's, searching the revisions for the ones that no longer exist.
+     *
+     * @param spEntityIds the entity id's of the ServiceProviders
+     * @return the found {@link ServiceProvider}s by entity id, id's that are not found are left out
+     */
+    default Map<String, ServiceProvider> getServiceProvidersByEntityIds(Collection<String> spEntityIds) {
+        Map<String, ServiceProvider> result = new HashMap<>();
+        spEntityIds.forEach(spEntityId -> getServiceProvider(spEntityId, EntityType.saml20_sp, true)
+            .ifPresent(sp -> result.put(spEntityId, sp)));
+        return result;
+    }
+
+    /**
+     * Get the identity providers for a batch of entity ID's, searching the revisions for the ones that no longer exist.
+     *
+     * @param idpEntityIds the entity id's of the IdentityProviders
+     * @return the found {@link IdentityProvider}s by entity id, id's that are not found are left out
+     */
+    default Map<String, IdentityProvider> getIdentityProvidersByEntityIds(Collection<String> idpEntityIds) {
+        Map<String, IdentityProvider> result = new HashMap<>();
+        idpEntityIds.forEach(idpEntityId -> getIdentityProvider(idpEntityId, true)
+            .ifPresent(idp -> result.put(idpEntityId, idp)));
+        return result;
+    }
+
     /**
      * Get a list of all idps that have the same instituteId as the given one.
      *
@@ -85,6 +113,16 @@ public interface Manage {
      */
     List<IdentityProvider> getLinkedIdentityProviders(String spId);
 
+    /**
+     * Version of the metadata this instance serves. Data derived from the metadata can be cached for as long as the
+     * version does not change.
+     *
+     * @return the current metadata version
+     */
+    default long getMetadataVersion() {
+        return 0L;
+    }
+
     default ServiceProvider serviceProvider(Map<String, Object> map, EntityType entityType) {
         ServiceProvider serviceProvider = new ServiceProvider(map);
         serviceProvider.setExampleSingleTenant(entityType.equals(EntityType.single_tenant_template));
@@ -97,9 +135,17 @@ public interface Manage {
 
     default <T extends Provider> Map<String, T> parseProviders(Resource resource, Function<Map<String, Object>, T>
         provider) throws IOException {
+        ManageParseEvent event = new ManageParseEvent();
+        event.begin();
         List<Map<String, Object>> providers = objectMapper.readValue(resource.getInputStream(), new
             TypeReference<List<Map<String, Object>>>() {
             });
+        if (event.shouldCommit()) {
+            event.source = resource.getFilename();
+            event.bytes = resource.contentLength();
+            event.entities = providers.size();
+            event.commit();
+        }
 
         Map<String, T> result = providers.stream()
             .map(this::transformManageMetadata).map(provider).collect(toSet()).stream().collect(toMap(Provider::getId,
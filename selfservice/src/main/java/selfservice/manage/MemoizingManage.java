@@ -0,0 +1,86 @@
+package selfservice.manage;
+
+import selfservice.domain.IdentityProvider;
+import selfservice.domain.ServiceProvider;
+import selfservice.util.RequestScopedMemoizer;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decorates a remote {@link Manage} so that identical lookups within one HTTP request only hit Manage once.
+ */
+public class MemoizingManage implements Manage {
+
+    private final Manage delegate;
+    private final RequestScopedMemoizer memoizer = new RequestScopedMemoizer("manage");
+
+    public MemoizingManage(Manage delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<ServiceProvider> getAllServiceProviders() {
+        return memoizer.memoize(delegate::getAllServiceProviders, "getAllServiceProviders");
+    }
+
+    @Override
+    public Optional<ServiceProvider> getServiceProvider(String spEntityId, EntityType type, boolean searchRevisions) {
+        return memoizer.memoize(() -> delegate.getServiceProvider(spEntityId, type, searchRevisions),
+            "getServiceProvider", spEntityId, type, searchRevisions);
+    }
+
+    @Override
+    public Optional<ServiceProvider> getServiceProviderById(Long spId, EntityType entityType) {
+        return memoizer.memoize(() -> delegate.getServiceProviderById(spId, entityType),
+            "getServiceProviderById", spId, entityType);
+    }
+
+    @Override
+    public Optional<IdentityProvider> getIdentityProvider(String idpEntityId, boolean searchRevisions) {
+        return memoizer.memoize(() -> delegate.getIdentityProvider(idpEntityId, searchRevisions),
+            "getIdentityProvider", idpEntityId, searchRevisions);
+    }
+
+    @Override
+    public Map<String, ServiceProvider> getServiceProvidersByEntityIds(Collection<String> spEntityIds) {
+        return memoizer.memoize(() -> delegate.getServiceProvidersByEntityIds(spEntityIds),
+            "getServiceProvidersByEntityIds", new HashSet<>(spEntityIds));
+    }
+
+    @Override
+    public Map<String, IdentityProvider> getIdentityProvidersByEntityIds(Collection<String> idpEntityIds) {
+        return memoizer.memoize(() -> delegate.getIdentityProvidersByEntityIds(idpEntityIds),
+            "getIdentityProvidersByEntityIds", new HashSet<>(idpEntityIds));
+    }
+
+    @Override
+    public List<IdentityProvider> getInstituteIdentityProviders(String instituteId) {
+        return memoizer.memoize(() -> delegate.getInstituteIdentityProviders(instituteId),
+            "getInstituteIdentityProviders", instituteId);
+    }
+
+    @Override
+    public List<ServiceProvider> getInstitutionalServicesForIdp(String instituteId) {
+        return memoizer.memoize(() -> delegate.getInstitutionalServicesForIdp(instituteId),
+            "getInstitutionalServicesForIdp", instituteId);
+    }
+
+    @Override
+    public List<IdentityProvider> getAllIdentityProviders() {
+        return memoizer.memoize(delegate::getAllIdentityProviders, "getAllIdentityProviders");
+    }
+
+    @Override
+    public List<IdentityProvider> getLinkedIdentityProviders(String spId) {
+        return memoizer.memoize(() -> delegate.getLinkedIdentityProviders(spId), "getLinkedIdentityProviders", spId);
+    }
+
+    @Override
+    public long getMetadataVersion() {
+        return delegate.getMetadataVersion();
+    }
+}
@@ -1,16 +1,21 @@
 package selfservice.manage;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import selfservice.domain.IdentityProvider;
+import selfservice.domain.Provider;
 import selfservice.domain.ServiceProvider;
+import selfservice.jfr.ManageFetchEvent;
+import selfservice.jfr.ManageParseEvent;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
@@ -18,16 +23,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 public class UrlResourceManage implements Manage {
     private final static Logger LOG = LoggerFactory.getLogger(UrlResourceManage.class);
 
+    private static final int ENTITY_IDS_BATCH_SIZE = 25;
+
     private final String manageBaseUrl;
+    private final long metadataVersionTtlMillis;
 
     private final RestTemplate restTemplate = new RestTemplate();
     private final HttpHeaders httpHeaders;
@@ -39,6 +55,8 @@ public class UrlResourceManage implements Manage {
     private String bodyForInstitutionId =
         "{\"metaDataFields.coin:institution_id\":\"@@institution_id@@\", \"ALL_ATTRIBUTES\":true}";
 
+    private String entityIdsQuery = "{$and: [{\"data.entityid\": {$in: @@entityids@@}}, {\"data.state\":\"prodaccepted\"}]}";
+
     private String linkedQuery = "{$and: [{$or:[{\"data.allowedEntities.name\": {$in: [\"@@entityid@@\"]}}, {\"data" +
         ".allowedall\": true}]}, {\"data.state\":\"prodaccepted\"}]}";
 
@@ -46,8 +64,19 @@ public class UrlResourceManage implements Manage {
         String username,
         String password,
         String manageBaseUrl) {
+        this(username, password, manageBaseUrl, 300);
+    }
+
+    public UrlResourceManage(
+        String username,
+        String password,
+        String manageBaseUrl,
+        long metadataVersionTtlSeconds) {
+        checkArgument(metadataVersionTtlSeconds > 0, "metadataVersionTtlSeconds must be positive, was %s",
+            metadataVersionTtlSeconds);
         String basicAuth = "Basic " + new String(Base64.getEncoder().encode((username + ":" + password).getBytes()));
         this.manageBaseUrl = manageBaseUrl;
+        this.metadataVersionTtlMillis = TimeUnit.SECONDS.toMillis(metadataVersionTtlSeconds);
 
         this.httpHeaders = new HttpHeaders();
         this.httpHeaders.add(HttpHeaders.CONTENT_TYPE, "application/json");
@@ -117,6 +146,40 @@ public class UrlResourceManage implements Manage {
         return providers.stream().map(this::transformManageMetadata).map(this::identityProvider).findFirst();
     }
 
+    @Override
+    public Map<String, ServiceProvider> getServiceProvidersByEntityIds(Collection<String> spEntityIds) {
+        return findByEntityIds(spEntityIds, "saml20_sp", sp -> this.serviceProvider(sp, EntityType.saml20_sp));
+    }
+
+    @Override
+    public Map<String, IdentityProvider> getIdentityProvidersByEntityIds(Collection<String> idpEntityIds) {
+        return findByEntityIds(idpEntityIds, "saml20_idp", this::identityProvider);
+    }
+
+    /*
+     * One $in query per batch on the live collection, then one on the revisions for the id's that were not found.
+     * The batches keep the query string well below the URL length limits.
+     */
+    private <T extends Provider> Map<String, T> findByEntityIds(Collection<String> entityIds, String collection,
+                                                                Function<Map<String, Object>, T> provider) {
+        Set<String> remaining = entityIds.stream().filter(StringUtils::hasText).collect(Collectors.toSet());
+        Map<String, T> result = new HashMap<>();
+        for (String searchCollection : Arrays.asList(collection, collection + "_revision")) {
+            for (List<String> batch : Iterables.partition(remaining, ENTITY_IDS_BATCH_SIZE)) {
+                String query = entityIdsQuery.replace("@@entityids@@", toJson(batch));
+                getMaps(rawSearch(searchCollection, query)).stream()
+                    .map(this::transformManageMetadata)
+                    .map(provider)
+                    .forEach(p -> result.putIfAbsent(p.getId(), p));
+            }
+            remaining.removeAll(result.keySet());
+            if (remaining.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<IdentityProvider> getInstituteIdentityProviders(String instituteId) {
         String body = bodyForInstitutionId.replace("@@institution_id@@", instituteId);
@@ -137,7 +200,7 @@ public class UrlResourceManage implements Manage {
     @Override
     public List<IdentityProvider> getLinkedIdentityProviders(String spId) {
         String replaced = linkedQuery.replace("@@entityid@@", spId);
-        InputStream inputStream = searchIdp(replaced);
+        InputStream inputStream = rawSearch("saml20_idp", replaced);
         List<Map<String, Object>> providers = getMaps(inputStream);
         return providers.stream().map(this::transformManageMetadata).map(this::identityProvider)
             .collect(Collectors.toList());
@@ -154,9 +217,46 @@ public class UrlResourceManage implements Manage {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Manage is queried live, so there is no local copy of the metadata to version. Instead the version changes every
+     * metadataVersionTtlSeconds, which bounds how stale derived data can get.
+     */
+    @Override
+    public long getMetadataVersion() {
+        return System.currentTimeMillis() / metadataVersionTtlMillis;
+    }
+
+    /**
+     * Cheap check for the health prober: a search that matches nothing still needs a working Manage.
+     */
+    public boolean isAvailable() {
+        try {
+            getIdpInputStream("{\"entityid\":\"urn:dashboard:availability-probe\"}");
+            return true;
+        } catch (RestClientException e) {
+            LOG.warn("Manage was not available: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private String toJson(List<String> values) {
+        try {
+            return objectMapper.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     private List<Map<String, Object>> getMaps(InputStream inputStream) {
+        ManageParseEvent event = new ManageParseEvent();
+        event.begin();
         try {
-            return objectMapper.readValue(inputStream, List.class);
+            List<Map<String, Object>> maps = objectMapper.readValue(inputStream, List.class);
+            if (event.shouldCommit()) {
+                event.entities = maps.size();
+                event.commit();
+            }
+            return maps;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -172,10 +272,8 @@ public class UrlResourceManage implements Manage {
 
     private InputStream getIdpInputStreamFromCollection(String body, String collection) {
         LOG.debug("Fetching IDP metadata entries from {} with body {}", manageBaseUrl);
-        ResponseEntity<byte[]> responseEntity = restTemplate.exchange
-            (manageBaseUrl + "/manage/api/internal/search/"+collection, HttpMethod.POST,
-                new HttpEntity<>(body, this.httpHeaders), byte[].class);
-        return new BufferedInputStream(new ByteArrayInputStream(responseEntity.getBody()));
+        return fetch(manageBaseUrl + "/manage/api/internal/search/" + collection, HttpMethod.POST,
+            new HttpEntity<>(body, this.httpHeaders), collection);
     }
 
     private InputStream getSpInputStream(String body) {
@@ -188,32 +286,38 @@ public class UrlResourceManage implements Manage {
 
     private InputStream getSpInputStreamFromCollection(String body, String collection) {
         LOG.debug("Fetching SP metadata entries from {} with body {}", manageBaseUrl, body);
-        ResponseEntity<byte[]> responseEntity = restTemplate.exchange
-            (manageBaseUrl + "/manage/api/internal/search/"+collection, HttpMethod.POST,
-                new HttpEntity<>(body, this.httpHeaders), byte[].class);
-        return new BufferedInputStream(new ByteArrayInputStream(responseEntity.getBody()));
+        return fetch(manageBaseUrl + "/manage/api/internal/search/" + collection, HttpMethod.POST,
+            new HttpEntity<>(body, this.httpHeaders), collection);
     }
 
-    private InputStream searchIdp(String query) {
-        LOG.debug("Quering IdP metadata entries from {} with query {}", manageBaseUrl, body);
+    private InputStream rawSearch(String collection, String query) {
+        LOG.debug("Querying {} metadata entries from {} with query {}", collection, manageBaseUrl, query);
         String url;
         try {
-            url = manageBaseUrl + "/manage/api/internal/rawSearch/saml20_idp?query=" + URLEncoder.encode(query,
+            url = manageBaseUrl + "/manage/api/internal/rawSearch/" + collection + "?query=" + URLEncoder.encode(query,
                 "UTF-8");
         } catch (UnsupportedEncodingException e) {
             throw new IllegalArgumentException(e);
         }
-        ResponseEntity<byte[]> responseEntity = restTemplate.exchange(url, HttpMethod.GET,
-            new HttpEntity<>(this.httpHeaders), byte[].class);
-        return new BufferedInputStream(new ByteArrayInputStream(responseEntity.getBody()));
+        return fetch(url, HttpMethod.GET, new HttpEntity<>(this.httpHeaders), collection);
     }
 
     private InputStream getSingleTenantInputStream(String body) {
         LOG.debug("Fetching Single Tenant Templates metadata entries from {} with body {}", manageBaseUrl, body);
-        ResponseEntity<byte[]> responseEntity = restTemplate.exchange
-            (manageBaseUrl + "/manage/api/internal/search/single_tenant_template", HttpMethod.POST,
-                new HttpEntity<>(body, this.httpHeaders), byte[].class);
-        return new BufferedInputStream(new ByteArrayInputStream(responseEntity.getBody()));
+        return fetch(manageBaseUrl + "/manage/api/internal/search/single_tenant_template", HttpMethod.POST,
+            new HttpEntity<>(body, this.httpHeaders), "single_tenant_template");
+    }
+
+    private InputStream fetch(String url, HttpMethod method, HttpEntity<?> requestEntity, String collection) {
+        ManageFetchEvent event = new ManageFetchEvent();
+        event.begin();
+        byte[] response = restTemplate.exchange(url, method, requestEntity, byte[].class).getBody();
+        if (event.shouldCommit()) {
+            event.collection = collection;
+            event.bytes = response == null ? 0 : response.length;
+            event.commit();
+        }
+        return new BufferedInputStream(new ByteArrayInputStream(response));
     }
 
 }
@@ -0,0 +1,150 @@
+package selfservice.metrics;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the calls the dashboard makes to the systems it depends on, per operation (method) of their client
+ * interface, and exposes them on the actuator metrics endpoint:
+ * <ul>
+ * <li>{@code downstream.<client>.<operation>.calls} and {@code .errors}, counted since the start</li>
+ * <li>{@code .inFlight}, the calls in progress</li>
+ * <li>{@code .latency.p50}, {@code .p95}, {@code .p99}, {@code .max} and {@code .mean} in milliseconds</li>
+ * <li>{@code .payload.p50} and {@code .max}, the number of items or characters returned</li>
+ * </ul>
+ * The distributions cover the last one to two windows. The calls are also part of the {@link RequestTimings} of the
+ * request that makes them.
+ */
+public class DownstreamMetrics implements PublicMetrics {
+
+  private final long windowMillis;
+  private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+  public DownstreamMetrics(long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * Wraps the client, so every call through the interface is recorded. Calls the client makes on itself are not.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T instrument(Class<T> clientInterface, T client, String name) {
+    InvocationHandler handler = (proxy, method, args) -> {
+      if (method.getDeclaringClass() == Object.class) {
+        return invoke(client, method, args);
+      }
+      Operation operation = operation(name + "." + method.getName());
+      long start = System.nanoTime();
+      operation.inFlight.incrementAndGet();
+      try (RequestTimings.Span span = RequestTimings.start(name)) {
+        Object result = invoke(client, method, args);
+        operation.recordPayload(result);
+        return result;
+      } catch (Throwable t) {
+        operation.errors.increment();
+        throw t;
+      } finally {
+        operation.inFlight.decrementAndGet();
+        operation.calls.increment();
+        operation.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+      }
+    };
+    return (T) Proxy.newProxyInstance(clientInterface.getClassLoader(), new Class<?>[]{clientInterface}, handler);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>();
+    operations.forEach((name, operation) -> {
+      String prefix = "downstream." + name;
+      metrics.add(new Metric<>(prefix + ".calls", operation.calls.sum()));
+      metrics.add(new Metric<>(prefix + ".errors", operation.errors.sum()));
+      metrics.add(new Metric<>(prefix + ".inFlight", operation.inFlight.get()));
+
+      Histogram.Snapshot latency = operation.latency.snapshot();
+      metrics.add(new Metric<>(prefix + ".latency.p50", millis(latency.getPercentile(0.5))));
+      metrics.add(new Metric<>(prefix + ".latency.p95", millis(latency.getPercentile(0.95))));
+      metrics.add(new Metric<>(prefix + ".latency.p99", millis(latency.getPercentile(0.99))));
+      metrics.add(new Metric<>(prefix + ".latency.max", millis(latency.getMax())));
+      metrics.add(new Metric<>(prefix + ".latency.mean", latency.getMean() / 1000));
+
+      Histogram.Snapshot payload = operation.payload.snapshot();
+      if (payload.getCount() > 0) {
+        metrics.add(new Metric<>(prefix + ".payload.p50", payload.getPercentile(0.5)));
+        metrics.add(new Metric<>(prefix + ".payload.max", payload.getMax()));
+      }
+    });
+    return metrics;
+  }
+
+  private Operation operation(String name) {
+    return operations.computeIfAbsent(name, key -> new Operation(windowMillis));
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000D;
+  }
+
+  private static class Operation {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Histogram latency;
+    private final Histogram payload;
+
+    private Operation(long windowMillis) {
+      this.latency = new Histogram(windowMillis);
+      this.payload = new Histogram(windowMillis);
+    }
+
+    private void recordPayload(Object result) {
+      size(result).ifPresent(payload::record);
+    }
+
+    private static Optional<Long> size(Object result) {
+      if (result instanceof Optional) {
+        return ((Optional<?>) result).flatMap(Operation::size);
+      }
+      if (result instanceof HttpEntity) {
+        return size(((HttpEntity<?>) result).getBody());
+      }
+      if (result instanceof Collection) {
+        return Optional.of((long) ((Collection<?>) result).size());
+      }
+      if (result instanceof Map) {
+        return Optional.of((long) ((Map<?, ?>) result).size());
+      }
+      if (result instanceof CharSequence) {
+        return Optional.of((long) ((CharSequence) result).length());
+      }
+      if (result != null && result.getClass().isArray()) {
+        return Optional.of((long) Array.getLength(result));
+      }
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package selfservice.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Distribution of recorded values over the last one to two intervals, so the percentiles follow the current behaviour
+ * instead of everything since the start.
+ * <p>
+ * Values are counted in buckets that are four per power of two wide, percentiles are the upper bound of their bucket
+ * and thus at most 25% too high. Recording does not lock and does not allocate.
+ */
+public class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  //up to 2^48, which is almost nine years in microseconds
+  private static final int BUCKETS = 48 * SUB_BUCKETS;
+
+  private final long intervalMillis;
+  private final LongSupplier clock;
+
+  private volatile Window current;
+  private volatile Window previous;
+
+  public Histogram(long intervalMillis) {
+    this(intervalMillis, System::currentTimeMillis);
+  }
+
+  Histogram(long intervalMillis, LongSupplier clock) {
+    this.intervalMillis = intervalMillis;
+    this.clock = clock;
+    this.current = new Window(clock.getAsLong());
+    this.previous = new Window(current.start - intervalMillis);
+  }
+
+  public void record(long value) {
+    window().record(Math.max(0, value));
+  }
+
+  public Snapshot snapshot() {
+    Window now = window();
+    Window before = previous;
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = now.counts.get(i) + before.counts.get(i);
+      total += counts[i];
+    }
+    return new Snapshot(counts, total, now.sum.sum() + before.sum.sum(), Math.max(now.max.get(), before.max.get()));
+  }
+
+  private Window window() {
+    Window window = current;
+    long now = clock.getAsLong();
+    if (now - window.start < intervalMillis) {
+      return window;
+    }
+    synchronized (this) {
+      window = current;
+      if (now - window.start >= intervalMillis) {
+        //a gap of more than one interval leaves nothing worth keeping
+        previous = now - window.start < 2 * intervalMillis ? window : new Window(now - intervalMillis);
+        window = new Window(now);
+        current = window;
+      }
+      return window;
+    }
+  }
+
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  private static class Window {
+    private final long start;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    private Window(long start) {
+      this.start = start;
+    }
+
+    private void record(long value) {
+      counts.incrementAndGet(bucket(value));
+      sum.add(value);
+      max.accumulate(value);
+    }
+  }
+
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.95
+     */
+    public long getPercentile(double quantile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(quantile * count);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(upperBound(i), max);
+        }
+      }
+      return max;
+    }
+  }
+}
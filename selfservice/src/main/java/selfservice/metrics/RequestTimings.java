@@ -0,0 +1,162 @@
+package selfservice.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Where the time of the current request went, e.g. authentication, Manage calls, the controller and serialization.
+ * <p>
+ * Code marks a part of the request with a {@link Span}. Spans nest and each span only counts its own time, so a
+ * controller calling Manage is split into controller and Manage time and the parts add up to the total. Spans of the
+ * same name are added up. Spans started on other threads than the request thread are not recorded, their time is part
+ * of the span that waits for them.
+ */
+public class RequestTimings {
+
+  private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+  private static final Span NO_SPAN = () -> {
+  };
+
+  private final long start = System.nanoTime();
+  private final Map<String, Timing> timings = new LinkedHashMap<>();
+  private final Deque<OpenSpan> open = new ArrayDeque<>();
+
+  /**
+   * Starts recording the timings of the request handled by the current thread.
+   */
+  public static RequestTimings begin() {
+    RequestTimings timings = new RequestTimings();
+    CURRENT.set(timings);
+    return timings;
+  }
+
+  /**
+   * Stops recording for the current thread.
+   */
+  public static void end() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Starts a span, to be closed when the part is done. Does nothing outside of a recorded request.
+   */
+  public static Span start(String name) {
+    RequestTimings timings = CURRENT.get();
+    return timings == null ? NO_SPAN : timings.open(name);
+  }
+
+  public long getElapsedNanos() {
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * The time spent per span name, including the time so far of the spans that are still open.
+   */
+  public Map<String, Timing> getTimings() {
+    long now = System.nanoTime();
+    Map<String, Timing> result = new LinkedHashMap<>();
+    timings.forEach((name, timing) -> result.put(name, new Timing(timing.nanos, timing.count)));
+    //innermost first, each open span excludes the time of the open span inside it
+    long innerNanos = 0;
+    for (OpenSpan span : open) {
+      result.merge(span.name, new Timing(span.selfNanos(now) - innerNanos, 0),
+          (recorded, running) -> new Timing(recorded.nanos + running.nanos, recorded.count));
+      innerNanos = now - span.start;
+    }
+    return result;
+  }
+
+  /**
+   * @return the timings as the value of a Server-Timing header, e.g. {@code manage;desc="3 calls";dur=12.5, total;dur=40.1}
+   */
+  public String toServerTiming() {
+    String parts = getTimings().entrySet().stream()
+        .map(entry -> entry.getKey()
+            + (entry.getValue().count > 1 ? ";desc=\"" + entry.getValue().count + " calls\"" : "")
+            + ";dur=" + millis(entry.getValue().nanos))
+        .collect(joining(", "));
+    return (parts.isEmpty() ? "" : parts + ", ") + "total;dur=" + millis(getElapsedNanos());
+  }
+
+  private Span open(String name) {
+    OpenSpan span = new OpenSpan(name, System.nanoTime());
+    open.push(span);
+    return span;
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  /**
+   * A part of the request, see {@link RequestTimings#start(String)}.
+   */
+  public interface Span extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  public static class Timing {
+    private final long nanos;
+    private final int count;
+
+    private Timing(long nanos, int count) {
+      this.nanos = nanos;
+      this.count = count;
+    }
+
+    public double getMillis() {
+      return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public int getCount() {
+      return count;
+    }
+  }
+
+  private class OpenSpan implements Span {
+    private final String name;
+    private final long start;
+    private long childNanos;
+    private boolean closed;
+
+    private OpenSpan(String name, long start) {
+      this.name = name;
+      this.start = start;
+    }
+
+    private long selfNanos(long now) {
+      return now - start - childNanos;
+    }
+
+    /*
+     * Spans that were left open inside this one, e.g. because of an exception, are closed as well
+     */
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      long now = System.nanoTime();
+      OpenSpan top;
+      do {
+        top = open.pop();
+        top.closed = true;
+        Timing timing = timings.get(top.name);
+        timings.put(top.name, new Timing((timing == null ? 0 : timing.nanos) + top.selfNanos(now),
+            (timing == null ? 0 : timing.count) + 1));
+        OpenSpan parent = open.peek();
+        if (parent != null) {
+          parent.childNanos += now - top.start;
+        }
+      } while (top != this);
+    }
+  }
+}
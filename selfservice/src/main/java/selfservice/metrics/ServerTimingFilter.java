@@ -0,0 +1,89 @@
+package selfservice.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the {@link RequestTimings} of every request, logs the requests that take longer than
+ * {@code slowRequestMillis} and, when enabled, adds the timings to the response as a Server-Timing header.
+ * <p>
+ * The header is added when the response is committed, so the parts of a response that are written after that (like
+ * serializing a large response) are only in the log.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServerTimingFilter.class);
+
+  static final String SERVER_TIMING = "Server-Timing";
+
+  private final long slowRequestMillis;
+  private final boolean addHeader;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  public ServerTimingFilter(long slowRequestMillis, boolean addHeader) {
+    this.slowRequestMillis = slowRequestMillis;
+    this.addHeader = addHeader;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    RequestTimings timings = RequestTimings.begin();
+    try {
+      chain.doFilter(request, addHeader ? new ServerTimingResponse(response, timings) : response);
+    } finally {
+      RequestTimings.end();
+      if (addHeader && !response.isCommitted()) {
+        response.setHeader(SERVER_TIMING, timings.toServerTiming());
+      }
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(timings.getElapsedNanos());
+      if (elapsedMillis >= slowRequestMillis) {
+        logSlowRequest(request, response, timings, elapsedMillis);
+      }
+    }
+  }
+
+  private void logSlowRequest(HttpServletRequest request, HttpServletResponse response, RequestTimings timings,
+                              long elapsedMillis) {
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("method", request.getMethod());
+    entry.put("uri", request.getRequestURI());
+    entry.put("status", response.getStatus());
+    entry.put("millis", elapsedMillis);
+    entry.put("timings", timings.getTimings());
+    try {
+      LOG.warn("Slow request {}", objectMapper.writeValueAsString(entry));
+    } catch (JsonProcessingException e) {
+      LOG.warn("Slow request {} {} took {} ms: {}", request.getMethod(), request.getRequestURI(), elapsedMillis,
+          timings.toServerTiming());
+    }
+  }
+
+  private static class ServerTimingResponse extends OnCommittedResponseWrapper {
+
+    private final RequestTimings timings;
+
+    private ServerTimingResponse(HttpServletResponse response, RequestTimings timings) {
+      super(response);
+      this.timings = timings;
+    }
+
+    @Override
+    protected void onResponseCommitted() {
+      ((HttpServletResponse) getResponse()).setHeader(SERVER_TIMING, timings.toServerTiming());
+    }
+  }
+}
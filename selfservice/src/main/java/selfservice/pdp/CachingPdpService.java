@@ -0,0 +1,132 @@
+package selfservice.pdp;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.http.ResponseEntity;
+import selfservice.domain.CoinUser;
+import selfservice.domain.Policy;
+import selfservice.domain.Policy.Attribute;
+import selfservice.util.SpringSecurity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caches the PDP answers. The PDP filters policies on the IdP of the current user, so the policy caches are keyed by
+ * that IdP. Every create, update or delete empties the policy caches, the allowed attributes are cached much longer.
+ */
+public class CachingPdpService implements PdpService {
+
+  private static final String ALLOWED_ATTRIBUTES = "allowedAttributes";
+
+  private final PdpService delegate;
+  private final BooleanSupplier availability;
+  private final Cache<String, List<Policy>> policies;
+  private final Cache<List<Object>, Policy> policy;
+  private final Cache<List<Object>, List<Policy>> revisions;
+  private final Cache<String, List<Attribute>> allowedAttributes;
+
+  public CachingPdpService(PdpService delegate, long policiesTtlSeconds, long attributesTtlSeconds) {
+    this(delegate, policiesTtlSeconds, attributesTtlSeconds, delegate::isAvailable);
+  }
+
+  /**
+   * @param availability answers {@link #isAvailable()}, typically the last outcome of a background probe
+   */
+  public CachingPdpService(PdpService delegate, long policiesTtlSeconds, long attributesTtlSeconds,
+                           BooleanSupplier availability) {
+    this.delegate = delegate;
+    this.availability = availability;
+    this.policies = newCache(policiesTtlSeconds);
+    this.policy = newCache(policiesTtlSeconds);
+    this.revisions = newCache(policiesTtlSeconds);
+    this.allowedAttributes = newCache(attributesTtlSeconds);
+  }
+
+  @Override
+  public List<Policy> policies() {
+    return cached(policies, currentIdp(), delegate::policies);
+  }
+
+  @Override
+  public Policy policy(Long id) {
+    return cached(policy, Arrays.asList(currentIdp(), id), () -> delegate.policy(id));
+  }
+
+  @Override
+  public List<Policy> revisions(Long id) {
+    return cached(revisions, Arrays.asList(currentIdp(), id), () -> delegate.revisions(id));
+  }
+
+  @Override
+  public List<Attribute> allowedAttributes() {
+    return cached(allowedAttributes, ALLOWED_ATTRIBUTES, delegate::allowedAttributes);
+  }
+
+  @Override
+  public Policy create(Policy policy) {
+    try {
+      return delegate.create(policy);
+    } finally {
+      invalidatePolicies();
+    }
+  }
+
+  @Override
+  public Policy update(Policy policy) {
+    try {
+      return delegate.update(policy);
+    } finally {
+      invalidatePolicies();
+    }
+  }
+
+  @Override
+  public ResponseEntity<String> delete(Long id) {
+    try {
+      return delegate.delete(id);
+    } finally {
+      invalidatePolicies();
+    }
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return availability.getAsBoolean();
+  }
+
+  /*
+   * A policy can be visible for more than one IdP, so writes drop the cached policies of all of them.
+   */
+  private void invalidatePolicies() {
+    policies.invalidateAll();
+    policy.invalidateAll();
+    revisions.invalidateAll();
+  }
+
+  private String currentIdp() {
+    CoinUser user = SpringSecurity.getCurrentUser();
+    return user.getSwitchedToIdpId().orElse(user.getIdpId());
+  }
+
+  private <K, V> V cached(Cache<K, V> cache, K key, Supplier<V> loader) {
+    V value = cache.getIfPresent(key);
+    if (value == null) {
+      value = loader.get();
+      if (value != null) {
+        cache.put(key, value);
+      }
+    }
+    return value;
+  }
+
+  private static <K, V> Cache<K, V> newCache(long ttlSeconds) {
+    return CacheBuilder.newBuilder()
+      .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+      .maximumSize(1000)
+      .build();
+  }
+}
@@ -41,7 +41,6 @@ import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import selfservice.domain.CoinUser;
-import selfservice.domain.IdentityProvider;
 import selfservice.domain.Policy;
 import selfservice.domain.Policy.Attribute;
 import selfservice.util.SpringSecurity;
@@ -68,13 +67,13 @@ public class PdpServiceImpl implements PdpService {
     this.pdpRestTemplate.setInterceptors(ImmutableList.of((request, body, execution) -> {
       CoinUser user = SpringSecurity.getCurrentUser();
 
-      IdentityProvider idp = user.getSwitchedToIdp().orElse(user.getIdp());
+      String idpId = user.getSwitchedToIdpId().orElse(user.getIdpId());
 
       HttpHeaders headers = request.getHeaders();
       headers.setContentType(APPLICATION_JSON);
       headers.setAccept(ImmutableList.of(APPLICATION_JSON));
       headers.set(AUTHORIZATION, authorizationHeaderValue(username, password));
-      headers.set(X_IDP_ENTITY_ID, idp.getId());
+      headers.set(X_IDP_ENTITY_ID, idpId);
       headers.set(X_UNSPECIFIED_NAME_ID, user.getUid());
       headers.set(X_DISPLAY_NAME, user.getDisplayName());
 
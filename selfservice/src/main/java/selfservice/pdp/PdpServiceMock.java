@@ -96,7 +96,7 @@ public class PdpServiceMock implements PdpService {
                 .withUserDisplayName(SpringSecurity.getCurrentUser().getDisplayName())
                 .withCreated(String.valueOf(System.currentTimeMillis()))
                 .withActionsAllowed(true)
-                .withServiceProviderName(services.getServiceByEntityId(SpringSecurity.getCurrentUser().getIdp().getId(),
+                .withServiceProviderName(services.getServiceByEntityId(SpringSecurity.getCurrentUser().getIdpId(),
                     policy.getServiceProviderId(), EntityType.saml20_sp, Locale.ENGLISH)
                     .map(Service::getName)
                     .orElse("????"))
@@ -115,7 +115,7 @@ public class PdpServiceMock implements PdpService {
                 .withActionsAllowed(true)
                 .withRevisionNbr(policy.getRevisionNbr() + 1)
                 .withNumberOfRevisions(policy.getNumberOfRevisions() + 1)
-                .withServiceProviderName(services.getServiceByEntityId(SpringSecurity.getCurrentUser().getIdp().getId(),
+                .withServiceProviderName(services.getServiceByEntityId(SpringSecurity.getCurrentUser().getIdpId(),
                     policy.getServiceProviderId(), EntityType.saml20_sp, Locale.ENGLISH)
                     .map(Service::getName)
                     .orElse("????"))
@@ -0,0 +1,92 @@
+package selfservice.sab;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the SAB roles per uid. After the TTL a lookup still returns the cached roles while they are refreshed in the
+ * background (stale-while-revalidate); a failed refresh keeps the stale roles until the maximum staleness is reached.
+ * "Not found" answers are cached as well, failed lookups are not.
+ * <p>
+ * The persons per role of an organisation are cached briefly, so that the IdP roles page does not go to SAB on every
+ * view. A lookup that failed with a {@link SabUnavailableException} is not cached, the next view asks SAB again.
+ */
+public class CachingSab implements Sab {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CachingSab.class);
+
+  private final Sab delegate;
+  private final LoadingCache<String, SabRoleHolder> roles;
+  private final Cache<List<Object>, Map<String, Collection<SabPerson>>> personsInRoles;
+
+  public CachingSab(Sab delegate, long ttlSeconds, long maxStaleSeconds, long maximumSize, Executor refreshExecutor,
+                    long personsTtlSeconds) {
+    this.delegate = delegate;
+    this.personsInRoles = CacheBuilder.newBuilder()
+      .expireAfterWrite(personsTtlSeconds, TimeUnit.SECONDS)
+      .maximumSize(maximumSize)
+      .build();
+    this.roles = CacheBuilder.newBuilder()
+      .refreshAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+      .expireAfterWrite(maxStaleSeconds, TimeUnit.SECONDS)
+      .maximumSize(maximumSize)
+      .recordStats()
+      .build(CacheLoader.asyncReloading(new CacheLoader<String, SabRoleHolder>() {
+        @Override
+        public SabRoleHolder load(String userId) {
+          return delegate.getRoles(userId).orElseThrow(() -> new SabUnavailableException("No SAB answer for " + userId));
+        }
+      }, refreshExecutor));
+  }
+
+  @Override
+  public Optional<SabRoleHolder> getRoles(String userId) {
+    try {
+      return Optional.of(roles.get(userId));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (!(e.getCause() instanceof SabUnavailableException)) {
+        LOG.warn("Skipping SAB entitlement, SAB lookup failed", e.getCause());
+      }
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public Collection<SabPerson> getPersonsInRoleForOrganization(String organisationAbbreviation, String role) {
+    return delegate.getPersonsInRoleForOrganization(organisationAbbreviation, role);
+  }
+
+  @Override
+  public Map<String, Collection<SabPerson>> getPersonsInRolesForOrganization(String organisationAbbreviation, List<String> roles) {
+    List<Object> key = Arrays.asList(organisationAbbreviation, roles);
+    Map<String, Collection<SabPerson>> cached = personsInRoles.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    Map<String, Collection<SabPerson>> persons = Collections.unmodifiableMap(
+      delegate.getPersonsInRolesForOrganization(organisationAbbreviation, roles));
+    personsInRoles.put(key, persons);
+    return persons;
+  }
+
+  @VisibleForTesting
+  LoadingCache<String, SabRoleHolder> getRolesCache() {
+    return roles;
+  }
+}
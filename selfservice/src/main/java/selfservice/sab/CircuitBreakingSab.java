@@ -0,0 +1,54 @@
+package selfservice.sab;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import selfservice.util.CircuitBreaker;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Guards the SAB role lookup on the login path. While the breaker is open logins skip SAB altogether and continue with
+ * the membership derived roles, as if SAB had no answer. An empty answer counts as a failure.
+ */
+public class CircuitBreakingSab implements Sab {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreakingSab.class);
+
+  private final Sab delegate;
+  private final CircuitBreaker circuitBreaker;
+
+  public CircuitBreakingSab(Sab delegate, CircuitBreaker circuitBreaker) {
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  @Override
+  public Optional<SabRoleHolder> getRoles(String userId) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      LOG.debug("Skipping SAB entitlements for {}, circuit breaker is {}", userId, circuitBreaker.getState());
+      return Optional.empty();
+    }
+    long start = System.currentTimeMillis();
+    boolean success = false;
+    try {
+      Optional<SabRoleHolder> roles = delegate.getRoles(userId);
+      success = roles.isPresent();
+      return roles;
+    } finally {
+      circuitBreaker.onResult(success, System.currentTimeMillis() - start);
+    }
+  }
+
+  @Override
+  public Collection<SabPerson> getPersonsInRoleForOrganization(String organisationAbbreviation, String role) {
+    return delegate.getPersonsInRoleForOrganization(organisationAbbreviation, role);
+  }
+
+  @Override
+  public Map<String, Collection<SabPerson>> getPersonsInRolesForOrganization(String organisationAbbreviation, List<String> roles) {
+    return delegate.getPersonsInRolesForOrganization(organisationAbbreviation, roles);
+  }
+}
@@ -16,6 +16,7 @@
 package selfservice.sab;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -24,25 +25,41 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
 
 import static java.lang.String.format;
 import static org.apache.http.HttpHeaders.AUTHORIZATION;
 
 @Component
-public class HttpClientTransport implements SabTransport {
+public class HttpClientTransport implements SabTransport, PublicMetrics {
 
   private final HttpClient httpClient;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final Semaphore bulkhead;
+  private final int maxConcurrentRequests;
+  private final GaugeService gaugeService;
 
   private final UsernamePasswordCredentials samlCredentials;
   private final UsernamePasswordCredentials restCredentials;
@@ -55,21 +72,32 @@ public class HttpClientTransport implements SabTransport {
                              @Value("${sab-rest.username}") String sabRestUserName,
                              @Value("${sab-rest.password}") String sabRestPassword,
                              @Value("${sab.endpoint}") URI sabEndpoint,
-                             @Value("${sab-rest.endpoint}") URI restEndPoint) {
+                             @Value("${sab-rest.endpoint}") URI restEndPoint,
+                             @Value("${sab.pool.maxTotal}") int maxTotal,
+                             @Value("${sab.pool.maxPerRoute}") int maxPerRoute,
+                             @Value("${sab.maxConcurrentRequests}") int maxConcurrentRequests,
+                             GaugeService gaugeService) {
 
     this.samlCredentials = new UsernamePasswordCredentials(sabUserName, sabPassword);
     this.restCredentials = new UsernamePasswordCredentials(sabRestUserName, sabRestPassword);
     this.sabEndpoint = sabEndpoint;
     this.restEndPoint = restEndPoint;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.bulkhead = new Semaphore(maxConcurrentRequests);
+    this.gaugeService = gaugeService;
 
     RequestConfig requestConfig = RequestConfig.custom()
         .setConnectTimeout(2000)
         .setConnectionRequestTimeout(2000)
         .setSocketTimeout(2000).build();
 
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    this.connectionManager.setMaxTotal(maxTotal);
+    this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
     this.httpClient = HttpClients.custom()
         .setDefaultRequestConfig(requestConfig)
-        .setConnectionManager(new PoolingHttpClientConnectionManager()).build();
+        .setConnectionManager(connectionManager).build();
   }
 
   @Override
@@ -79,29 +107,65 @@ public class HttpClientTransport implements SabTransport {
         .setUri(sabEndpoint)
         .setEntity(new StringEntity(request)).build();
 
-    return handleRequest(httpRequest, samlCredentials);
+    return handleRequest(httpRequest, samlCredentials, "timer.sab.saml");
+  }
+
+  @Override
+  public InputStream getResponse(byte[] request) throws IOException {
+    HttpUriRequest httpRequest = RequestBuilder
+        .post()
+        .setUri(sabEndpoint)
+        .setEntity(new ByteArrayEntity(request, ContentType.create("text/plain", StandardCharsets.UTF_8))).build();
+
+    return handleRequest(httpRequest, samlCredentials, "timer.sab.saml");
   }
 
   @Override
   public InputStream getRestResponse(String organisationAbbreviation, String role) throws IOException {
     HttpGet httpGet = new HttpGet(format("%s/profile?abbrev=%s&role=%s", restEndPoint, URLEncoder.encode(organisationAbbreviation, "UTF-8"), URLEncoder.encode(role, "UTF-8")));
-    return handleRequest(httpGet, restCredentials);
+    return handleRequest(httpGet, restCredentials, "timer.sab.rest");
   }
 
-  private InputStream handleRequest(HttpUriRequest request, UsernamePasswordCredentials credentials) throws IOException {
-    request.addHeader(AUTHORIZATION, "Basic " + encodeUserPass(credentials));
-
-    HttpResponse response = httpClient.execute(request);
-
-    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-      throw new IOException("Failed response: " + response.getStatusLine());
+  /*
+   * The response body is read completely before returning, so the connection goes back to the pool on every path
+   * and not whenever the caller gets around to closing the stream.
+   */
+  private InputStream handleRequest(HttpUriRequest request, UsernamePasswordCredentials credentials, String timer) throws IOException {
+    if (!bulkhead.tryAcquire()) {
+      throw new IOException(format("Too many concurrent SAB requests (%d), not calling %s", maxConcurrentRequests, request.getURI()));
+    }
+    long start = System.currentTimeMillis();
+    try {
+      request.addHeader(AUTHORIZATION, "Basic " + encodeUserPass(credentials));
+
+      HttpResponse response = httpClient.execute(request);
+      HttpEntity entity = response.getEntity();
+
+      if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+        EntityUtils.consumeQuietly(entity);
+        throw new IOException("Failed response: " + response.getStatusLine());
+      }
+
+      return new ByteArrayInputStream(entity == null ? new byte[0] : EntityUtils.toByteArray(entity));
+    } finally {
+      bulkhead.release();
+      gaugeService.submit(timer, System.currentTimeMillis() - start);
     }
-
-    return response.getEntity().getContent();
   }
 
   private String encodeUserPass(UsernamePasswordCredentials credentials) {
     return new String(Base64.encodeBase64(format("%s:%s", credentials.getUserName(), credentials.getPassword()).getBytes()));
   }
 
+  @Override
+  public Collection<Metric<?>> metrics() {
+    PoolStats stats = connectionManager.getTotalStats();
+    return Arrays.asList(
+        new Metric<>("sab.pool.leased", stats.getLeased()),
+        new Metric<>("sab.pool.available", stats.getAvailable()),
+        new Metric<>("sab.pool.pending", stats.getPending()),
+        new Metric<>("sab.pool.max", stats.getMax()),
+        new Metric<>("sab.requests.inFlight", maxConcurrentRequests - bulkhead.availablePermits()));
+  }
+
 }
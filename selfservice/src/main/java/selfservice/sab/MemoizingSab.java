@@ -0,0 +1,38 @@
+package selfservice.sab;
+
+import selfservice.util.RequestScopedMemoizer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decorates a remote {@link Sab} so that identical lookups within one HTTP request only hit SAB once.
+ */
+public class MemoizingSab implements Sab {
+
+  private final Sab delegate;
+  private final RequestScopedMemoizer memoizer = new RequestScopedMemoizer("sab");
+
+  public MemoizingSab(Sab delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Optional<SabRoleHolder> getRoles(String userId) {
+    return memoizer.memoize(() -> delegate.getRoles(userId), "getRoles", userId);
+  }
+
+  @Override
+  public Collection<SabPerson> getPersonsInRoleForOrganization(String organisationAbbreviation, String role) {
+    return memoizer.memoize(() -> delegate.getPersonsInRoleForOrganization(organisationAbbreviation, role),
+      "getPersonsInRoleForOrganization", organisationAbbreviation, role);
+  }
+
+  @Override
+  public Map<String, Collection<SabPerson>> getPersonsInRolesForOrganization(String organisationAbbreviation, List<String> roles) {
+    return memoizer.memoize(() -> delegate.getPersonsInRolesForOrganization(organisationAbbreviation, roles),
+      "getPersonsInRolesForOrganization", organisationAbbreviation, roles);
+  }
+}
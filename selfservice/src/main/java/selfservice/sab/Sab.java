@@ -17,6 +17,9 @@
 package selfservice.sab;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -34,6 +37,19 @@ public interface Sab {
 
   /**
    * Get all persons within the given organisation that have the given role.
+   *
+   * @throws SabUnavailableException when SAB did not answer
    */
   Collection<SabPerson> getPersonsInRoleForOrganization(String organisationAbbreviation, String role);
+
+  /**
+   * Get all persons within the given organisation per given role.
+   *
+   * @return the persons keyed by role, in the order of the given roles
+   */
+  default Map<String, Collection<SabPerson>> getPersonsInRolesForOrganization(String organisationAbbreviation, List<String> roles) {
+    Map<String, Collection<SabPerson>> result = new LinkedHashMap<>();
+    roles.forEach(role -> result.put(role, getPersonsInRoleForOrganization(organisationAbbreviation, role)));
+    return result;
+  }
 }
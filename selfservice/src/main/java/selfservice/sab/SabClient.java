@@ -16,28 +16,31 @@
 
 package selfservice.sab;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Throwables;
-import org.apache.commons.io.IOUtils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import selfservice.jfr.SabRequestEvent;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.MessageFormat;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-
-import static java.util.stream.Collectors.toList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Client implementation for SAB.
@@ -51,46 +54,163 @@ public class SabClient implements Sab {
 
   protected static final DateTimeFormatter XML_DATE_TIME_FORMAT = ISODateTimeFormat.dateTimeNoMillis().withZone(DateTimeZone.UTC);
 
-  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final JsonFactory jsonFactory = new JsonFactory();
   private final SabTransport sabTransport;
-  private final SabResponseParser sabResponseParser = new SabResponseParser();
+  private final Executor executor;
+  private final StaxSabResponseParser sabResponseParser = new StaxSabResponseParser();
+  private final SabRequestTemplate requestTemplate = SabRequestTemplate.fromClasspath(REQUEST_TEMPLATE_LOCATION);
 
   public SabClient(SabTransport sabTransport) {
+    this(sabTransport, MoreExecutors.directExecutor());
+  }
+
+  public SabClient(SabTransport sabTransport, Executor executor) {
     this.sabTransport = sabTransport;
+    this.executor = executor;
   }
 
   @Override
   public Optional<SabRoleHolder> getRoles(String userId) {
+    SabRequestEvent event = new SabRequestEvent();
+    event.begin();
     String messageId = UUID.randomUUID().toString();
-    String requestBody = createRequest(userId, messageId);
+    byte[] requestBody = createRequestBody(userId, messageId);
 
+    Optional<SabRoleHolder> roles;
     try (InputStream is = sabTransport.getResponse(requestBody)) {
-      return Optional.of(sabResponseParser.parse(is));
+      roles = Optional.of(sabResponseParser.parse(is));
     } catch (IOException e) {
       LOG.warn("Skipping SAB entitlement, SAB request got IOException: {}", e.getMessage());
-      return Optional.empty();
+      roles = Optional.empty();
+    }
+    if (event.shouldCommit()) {
+      event.operation = "getRoles";
+      event.requestBytes = requestBody.length;
+      event.results = roles.map(holder -> holder.getRoles().size()).orElse(0);
+      event.succeeded = roles.isPresent();
+      event.commit();
     }
+    return roles;
   }
 
+  /**
+   * @throws SabUnavailableException when SAB did not answer
+   */
   @Override
-  @SuppressWarnings("unchecked")
   public Collection<SabPerson> getPersonsInRoleForOrganization(String organisationAbbreviation, String role) {
+    SabRequestEvent event = new SabRequestEvent();
+    event.begin();
+    Collection<SabPerson> persons = Collections.emptyList();
+    boolean succeeded = false;
     try (InputStream inputStream = sabTransport.getRestResponse(organisationAbbreviation, role)) {
-      List<Map<String, Object>> profiles = (List<Map<String, Object>>) objectMapper.readValue(inputStream, HashMap.class).get("profiles");
-
-      return profiles.stream()
-          .map(profile -> {
-            List<SabRole> sabRoles = ((List<Map<String, String>>) profile.get("authorisations")).stream()
-                .map(authorisation -> new SabRole(authorisation.get("short"), authorisation.get("role")))
-                .collect(toList());
-            return new SabPerson((String) profile.get("firstname"), (String) profile.get("surname"), (String) profile.get("uid"), sabRoles);
-          })
-          .filter(p -> p.hasRole(role))
-          .collect(toList());
+      persons = parsePersonsInRole(inputStream, role);
+      succeeded = true;
     } catch (IOException e) {
-      LOG.warn("Could not retrieve SAB info", e);
-      return Collections.emptyList();
+      LOG.warn("Could not retrieve SAB info: {}", e.getMessage());
+      throw new SabUnavailableException(
+          String.format("Could not retrieve the persons with role %s of %s", role, organisationAbbreviation), e);
+    } finally {
+      if (event.shouldCommit()) {
+        event.operation = "getPersonsInRoleForOrganization";
+        event.results = persons.size();
+        event.succeeded = succeeded;
+        event.commit();
+      }
+    }
+    return persons;
+  }
+
+  /**
+   * Fetches the roles concurrently, so the lookup takes about as long as the slowest role.
+   *
+   * @throws SabUnavailableException when SAB did not answer for one of the roles
+   */
+  @Override
+  public Map<String, Collection<SabPerson>> getPersonsInRolesForOrganization(String organisationAbbreviation, List<String> roles) {
+    Map<String, CompletableFuture<Collection<SabPerson>>> futures = new LinkedHashMap<>();
+    roles.forEach(role -> futures.put(role, CompletableFuture.supplyAsync(
+        () -> getPersonsInRoleForOrganization(organisationAbbreviation, role), executor)));
+
+    Map<String, Collection<SabPerson>> result = new LinkedHashMap<>();
+    futures.forEach((role, future) -> {
+      try {
+        result.put(role, future.join());
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    });
+    return result;
+  }
+
+  /*
+   * Streams through the profiles and only materializes the persons that have the role, instead of binding the whole
+   * response to maps first.
+   */
+  private List<SabPerson> parsePersonsInRole(InputStream inputStream, String role) throws IOException {
+    List<SabPerson> persons = new ArrayList<>();
+    try (JsonParser parser = jsonFactory.createParser(inputStream)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a JSON object from the SAB REST interface");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (parser.nextToken() == JsonToken.START_ARRAY && "profiles".equals(field)) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            SabPerson person = parseProfile(parser);
+            if (person.hasRole(role)) {
+              persons.add(person);
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
     }
+    return persons;
+  }
+
+  private SabPerson parseProfile(JsonParser parser) throws IOException {
+    String firstName = null, surname = null, uid = null;
+    List<SabRole> roles = new ArrayList<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "firstname":
+          firstName = parser.getValueAsString();
+          break;
+        case "surname":
+          surname = parser.getValueAsString();
+          break;
+        case "uid":
+          uid = parser.getValueAsString();
+          break;
+        case "authorisations":
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            roles.add(parseAuthorisation(parser));
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new SabPerson(firstName, surname, uid, roles);
+  }
+
+  private SabRole parseAuthorisation(JsonParser parser) throws IOException {
+    String shortName = null, roleName = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("short".equals(field)) {
+        shortName = parser.getValueAsString();
+      } else if ("role".equals(field)) {
+        roleName = parser.getValueAsString();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return new SabRole(shortName, roleName);
   }
 
   /**
@@ -101,13 +221,12 @@ public class SabClient implements Sab {
    * @return Serialized XML
    */
   public String createRequest(String userId, String messageId) {
-    try (InputStream is = this.getClass().getResourceAsStream(REQUEST_TEMPLATE_LOCATION)) {
-      String template = IOUtils.toString(is, "UTF-8");
-      String issueInstant = XML_DATE_TIME_FORMAT.print(new Date().getTime());
-      return MessageFormat.format(template, messageId, issueInstant, userId);
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
+    return new String(createRequestBody(userId, messageId), StandardCharsets.UTF_8);
+  }
+
+  private byte[] createRequestBody(String userId, String messageId) {
+    String issueInstant = XML_DATE_TIME_FORMAT.print(System.currentTimeMillis());
+    return requestTemplate.render(messageId, issueInstant, userId);
   }
 
 }
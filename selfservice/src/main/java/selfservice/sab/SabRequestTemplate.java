@@ -0,0 +1,104 @@
+package selfservice.sab;
+
+import com.google.common.base.Throwables;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The SAB request template, read once and split into its literal UTF-8 parts and the {@code {n}} placeholders between
+ * them. Rendering writes the parts and the XML-escaped arguments into a single exactly sized byte array.
+ */
+public class SabRequestTemplate {
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\d)}");
+
+  private final byte[][] literals;
+  private final int[] placeholders;
+  private final int literalsLength;
+
+  public SabRequestTemplate(String template) {
+    List<byte[]> literalParts = new ArrayList<>();
+    List<Integer> placeholderIndexes = new ArrayList<>();
+
+    Matcher matcher = PLACEHOLDER.matcher(template);
+    int start = 0;
+    while (matcher.find()) {
+      literalParts.add(template.substring(start, matcher.start()).getBytes(StandardCharsets.UTF_8));
+      placeholderIndexes.add(Integer.parseInt(matcher.group(1)));
+      start = matcher.end();
+    }
+    literalParts.add(template.substring(start).getBytes(StandardCharsets.UTF_8));
+
+    this.literals = literalParts.toArray(new byte[literalParts.size()][]);
+    this.placeholders = placeholderIndexes.stream().mapToInt(Integer::intValue).toArray();
+    this.literalsLength = literalParts.stream().mapToInt(part -> part.length).sum();
+  }
+
+  public static SabRequestTemplate fromClasspath(String location) {
+    try (InputStream is = SabRequestTemplate.class.getResourceAsStream(location)) {
+      return new SabRequestTemplate(IOUtils.toString(is, "UTF-8"));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  public byte[] render(String... arguments) {
+    byte[][] encoded = new byte[arguments.length][];
+    int length = literalsLength;
+    for (int placeholder : placeholders) {
+      if (encoded[placeholder] == null) {
+        encoded[placeholder] = escape(arguments[placeholder]).getBytes(StandardCharsets.UTF_8);
+      }
+      length += encoded[placeholder].length;
+    }
+
+    byte[] request = new byte[length];
+    int position = 0;
+    for (int i = 0; i < placeholders.length; i++) {
+      position = copy(literals[i], request, position);
+      position = copy(encoded[placeholders[i]], request, position);
+    }
+    copy(literals[literals.length - 1], request, position);
+
+    return request;
+  }
+
+  private int copy(byte[] source, byte[] target, int position) {
+    System.arraycopy(source, 0, target, position, source.length);
+    return position + source.length;
+  }
+
+  private String escape(String value) {
+    StringBuilder escaped = null;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      String replacement;
+      switch (c) {
+        case '<': replacement = "&lt;"; break;
+        case '>': replacement = "&gt;"; break;
+        case '&': replacement = "&amp;"; break;
+        case '"': replacement = "&quot;"; break;
+        case '\'': replacement = "&apos;"; break;
+        default: replacement = null;
+      }
+      if (replacement != null && escaped == null) {
+        escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+      }
+      if (escaped != null) {
+        if (replacement != null) {
+          escaped.append(replacement);
+        } else {
+          escaped.append(c);
+        }
+      }
+    }
+    return escaped == null ? value : escaped.toString();
+  }
+}
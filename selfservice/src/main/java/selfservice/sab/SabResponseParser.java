@@ -65,12 +65,12 @@ public class SabResponseParser {
   public static final String XPATH_STATUSMESSAGE = "//samlp:StatusMessage";
 
   public static final String SAMLP_SUCCESS = "urn:oasis:names:tc:SAML:2.0:status:Success";
-  private static final String SAMLP_RESPONDER = "urn:oasis:names:tc:SAML:2.0:status:Responder";
+  static final String SAMLP_RESPONDER = "urn:oasis:names:tc:SAML:2.0:status:Responder";
 
   /**
    * Prefix of the status message if a user is queried that cannot be found.
    */
-  private static final String NOT_FOUND_MESSAGE_PREFIX = "Could not find any roles for given NameID";
+  static final String NOT_FOUND_MESSAGE_PREFIX = "Could not find any roles for given NameID";
 
   private final DocumentBuilderFactory documentBuilderFactory;
   private final javax.xml.xpath.XPathFactory xPathFactory;
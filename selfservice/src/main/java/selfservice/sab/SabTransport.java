@@ -17,10 +17,15 @@ package selfservice.sab;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 public interface SabTransport {
 
   InputStream getResponse(String request) throws IOException;
 
+  default InputStream getResponse(byte[] request) throws IOException {
+    return getResponse(new String(request, StandardCharsets.UTF_8));
+  }
+
   InputStream getRestResponse(String organisationAbbreviation, String role) throws IOException;
 }
@@ -0,0 +1,20 @@
+package selfservice.sab;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * SAB did not answer, as opposed to an answer without roles or persons.
+ */
+@SuppressWarnings("serial")
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class SabUnavailableException extends RuntimeException {
+
+  public SabUnavailableException(String message) {
+    super(message);
+  }
+
+  public SabUnavailableException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,126 @@
+package selfservice.sab;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static selfservice.sab.SabResponseParser.NOT_FOUND_MESSAGE_PREFIX;
+import static selfservice.sab.SabResponseParser.SAMLP_RESPONDER;
+import static selfservice.sab.SabResponseParser.SAMLP_SUCCESS;
+
+/**
+ * Single pass StAX alternative to the DOM / XPath based {@link SabResponseParser}. It picks the status code, status
+ * message, organisation and entitlements from the stream without building a tree, with the same semantics.
+ */
+public class StaxSabResponseParser {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StaxSabResponseParser.class);
+
+  private static final String SAMLP_NS = "urn:oasis:names:tc:SAML:2.0:protocol";
+  private static final String SAML_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+  private static final String ATTRIBUTE_ORGANISATION = "urn:oid:1.3.6.1.4.1.1076.20.100.10.50.1";
+  private static final String ATTRIBUTE_ROLES = "urn:oid:1.3.6.1.4.1.5923.1.1.1.7";
+
+  private final XMLInputFactory xmlInputFactory;
+
+  public StaxSabResponseParser() {
+    xmlInputFactory = XMLInputFactory.newInstance();
+    xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
+  public SabRoleHolder parse(InputStream inputStream) throws IOException {
+    String statusCode = null;
+    String statusMessage = null;
+    String organisation = null;
+    List<String> roles = new ArrayList<>();
+
+    try {
+      XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(inputStream);
+      try {
+        String attributeName = null;
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            String namespace = reader.getNamespaceURI();
+            String localName = reader.getLocalName();
+
+            if (SAMLP_NS.equals(namespace)) {
+              if (statusCode == null && "StatusCode".equals(localName)) {
+                statusCode = reader.getAttributeValue(null, "Value");
+              } else if (statusMessage == null && "StatusMessage".equals(localName)) {
+                statusMessage = readTextContent(reader);
+              }
+            } else if (SAML_NS.equals(namespace)) {
+              if ("Attribute".equals(localName)) {
+                attributeName = reader.getAttributeValue(null, "Name");
+              } else if ("AttributeValue".equals(localName) && attributeName != null) {
+                String value = StringUtils.trimWhitespace(readTextContent(reader));
+                if (ATTRIBUTE_ROLES.equals(attributeName)) {
+                  roles.add(value);
+                } else if (organisation == null && ATTRIBUTE_ORGANISATION.equals(attributeName)) {
+                  organisation = value;
+                }
+              }
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT && SAML_NS.equals(reader.getNamespaceURI())
+            && "Attribute".equals(reader.getLocalName())) {
+            attributeName = null;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+
+    validateStatus(statusCode == null ? "" : statusCode, statusMessage == null ? "" : statusMessage);
+
+    return new SabRoleHolder(organisation, roles);
+  }
+
+  /**
+   * Check that response contains the success status. Throw IOException with message otherwise.
+   */
+  private void validateStatus(String statusCode, String statusMessage) throws IOException {
+    if (!SAMLP_SUCCESS.equals(statusCode)) {
+      if (SAMLP_RESPONDER.equals(statusCode) && statusMessage.startsWith(NOT_FOUND_MESSAGE_PREFIX)) {
+        LOG.debug("Given nameId not found in SAB. Is regarded by us as 'valid' response, although server response indicates a server error.");
+      } else {
+        throw new IOException(String.format("Unsuccessful status. Code: '%s', message: %s", statusCode, statusMessage));
+      }
+    }
+  }
+
+  /**
+   * Concatenates all text below the current element, like DOM's getTextContent, and leaves the reader on its end tag.
+   */
+  private String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+        text.append(reader.getText());
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    return text.toString();
+  }
+}
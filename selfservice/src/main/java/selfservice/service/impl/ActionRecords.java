@@ -0,0 +1,55 @@
+package selfservice.service.impl;
+
+import selfservice.domain.Action;
+
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+/**
+ * Converts the flat fields of an {@link Action} to and from the maps that are written as JSON lines by the
+ * {@link ActionStore} and the {@link JiraOutbox}.
+ */
+final class ActionRecords {
+
+  private ActionRecords() {
+  }
+
+  static Map<String, Object> toRecord(Action action) {
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("jiraKey", action.getJiraKey().orElse(null));
+    record.put("type", action.getType() == null ? null : action.getType().name());
+    record.put("status", action.getStatus());
+    record.put("requestDate", action.getRequestDate() == null ? null : action.getRequestDate().format(ISO_OFFSET_DATE_TIME));
+    record.put("idpId", action.getIdpId());
+    record.put("spId", action.getSpId());
+    record.put("idpName", action.getIdpName());
+    record.put("spName", action.getSpName());
+    record.put("userName", action.getUserName());
+    record.put("userEmail", action.getUserEmail());
+    if (action.getBody() != null) {
+      record.put("body", action.getBody());
+    }
+    return record;
+  }
+
+  static Action fromRecord(Map<String, Object> record) {
+    String type = (String) record.get("type");
+    String requestDate = (String) record.get("requestDate");
+    return Action.builder()
+        .jiraKey((String) record.get("jiraKey"))
+        .type(type == null ? null : Action.Type.valueOf(type))
+        .status((String) record.get("status"))
+        .requestDate(requestDate == null ? null : ZonedDateTime.parse(requestDate, ISO_OFFSET_DATE_TIME))
+        .idpId((String) record.get("idpId"))
+        .spId((String) record.get("spId"))
+        .idpName((String) record.get("idpName"))
+        .spName((String) record.get("spName"))
+        .userName((String) record.get("userName"))
+        .userEmail((String) record.get("userEmail"))
+        .body((String) record.get("body"))
+        .build();
+  }
+}
@@ -0,0 +1,297 @@
+package selfservice.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import selfservice.domain.Action;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Local read model of the dashboard actions, so the history page is not a Jira search on every view.
+ * <p>
+ * Every change is appended as one JSON line to a file, which is replayed into memory on startup. The actions are
+ * indexed by IdP and SP. Without a file the store only lives in memory and is rebuilt from Jira after a
+ * restart.
+ * <p>
+ * The store is local to the node: actions created on another node only show up after the next sync with Jira.
+ */
+public class ActionStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ActionStore.class);
+
+  private static final String PENDING_PREFIX = "pending:";
+
+  private static final Comparator<Action> NEWEST_FIRST = Comparator
+      .comparing(Action::getRequestDate, Comparator.nullsLast(Comparator.<ZonedDateTime>naturalOrder())).reversed()
+      .thenComparing(action -> action.getJiraKey().orElse(""));
+
+  private final Path file;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  // keyed by the Jira key, or by the outbox id while the Jira issue is not created yet
+  private final Map<String, Action> byKey = new HashMap<>();
+  private final Map<String, Map<String, Action>> byIdp = new HashMap<>();
+  private final Map<String, Map<String, Action>> bySp = new HashMap<>();
+  private Optional<Instant> syncedUntil = Optional.empty();
+
+  private BufferedWriter writer;
+
+  /**
+   * @param file the file to keep the actions in, or {@code null} to keep them in memory only
+   */
+  public ActionStore(File file) {
+    this.file = file == null ? null : file.toPath();
+    if (this.file != null) {
+      open();
+    }
+  }
+
+  /**
+   * Adds the action or replaces the stored one with the same Jira key.
+   */
+  public synchronized void save(Action action) {
+    if (!action.getJiraKey().isPresent()) {
+      LOG.warn("Not storing action without a Jira key: {}", action);
+      return;
+    }
+    save(action.getJiraKey().get(), action);
+  }
+
+  /**
+   * Adds an action of which the Jira issue is not created yet.
+   *
+   * @param outboxId the id under which the {@link JiraOutbox} delivers the action
+   */
+  public synchronized void savePending(String outboxId, Action action) {
+    save(PENDING_PREFIX + outboxId, action);
+  }
+
+  /**
+   * Moves a pending action to its Jira key, unless the synchronization with Jira already imported it.
+   */
+  public synchronized void resolvePending(String outboxId, String jiraKey) {
+    Action pending = byKey.get(PENDING_PREFIX + outboxId);
+    if (pending == null) {
+      return;
+    }
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("op", "resolve");
+    record.put("id", outboxId);
+    record.put("jiraKey", jiraKey);
+    append(record);
+    resolve(outboxId, jiraKey);
+  }
+
+  private void save(String key, Action action) {
+    // the parsed applicant is kept, the description itself is not needed for the history
+    Action stored = action.unbuild().body(null).build();
+    Map<String, Object> record = ActionRecords.toRecord(stored);
+    record.put("op", "put");
+    record.put("key", key);
+    append(record);
+    put(key, stored);
+  }
+
+  /**
+   * Sets the status of an action of which the Jira issue could not be created.
+   */
+  public synchronized void updatePendingStatus(String outboxId, String status) {
+    updateStatus(PENDING_PREFIX + outboxId, status);
+  }
+
+  public synchronized void updateStatus(String jiraKey, String status) {
+    Action action = byKey.get(jiraKey);
+    if (action == null) {
+      return;
+    }
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("op", "status");
+    record.put("jiraKey", jiraKey);
+    record.put("status", status);
+    append(record);
+    put(jiraKey, action.unbuild().status(status).build());
+  }
+
+  public synchronized Optional<Action> find(String jiraKey) {
+    return Optional.ofNullable(byKey.get(jiraKey));
+  }
+
+  /**
+   * @return a page of the actions of the IdP, newest first, in the same shape as {@link JiraClient#getTasks}
+   */
+  public synchronized Map<String, Object> findByIdp(String idpId, int startAt, int maxResults) {
+    Collection<Action> actions = byIdp.getOrDefault(idpId, Collections.emptyMap()).values();
+    Map<String, Object> result = new HashMap<>();
+    result.put("issues", actions.stream().sorted(NEWEST_FIRST).skip(startAt).limit(maxResults).collect(toList()));
+    result.put("total", actions.size());
+    result.put("startAt", startAt);
+    result.put("maxResults", maxResults);
+    return result;
+  }
+
+  public synchronized List<Action> findBySp(String spId) {
+    return bySp.getOrDefault(spId, Collections.emptyMap()).values().stream().sorted(NEWEST_FIRST).collect(toList());
+  }
+
+  /**
+   * @return up to when all Jira changes are in the store, empty until the first synchronization completed
+   */
+  public synchronized Optional<Instant> getSyncedUntil() {
+    return syncedUntil;
+  }
+
+  public synchronized void markSynced(Instant until) {
+    append(syncedRecord(until));
+    syncedUntil = Optional.of(until);
+  }
+
+  public synchronized int size() {
+    return byKey.size();
+  }
+
+  private void resolve(String outboxId, String jiraKey) {
+    Action pending = remove(PENDING_PREFIX + outboxId);
+    if (pending != null && !byKey.containsKey(jiraKey)) {
+      put(jiraKey, pending.unbuild().jiraKey(jiraKey).build());
+    }
+  }
+
+  private Action remove(String key) {
+    Action previous = byKey.remove(key);
+    if (previous != null) {
+      index(byIdp, previous.getIdpId()).remove(key);
+      index(bySp, previous.getSpId()).remove(key);
+    }
+    return previous;
+  }
+
+  private void put(String key, Action action) {
+    Action previous = byKey.put(key, action);
+    if (previous != null) {
+      index(byIdp, previous.getIdpId()).remove(key);
+      index(bySp, previous.getSpId()).remove(key);
+    }
+    index(byIdp, action.getIdpId()).put(key, action);
+    index(bySp, action.getSpId()).put(key, action);
+  }
+
+  private Map<String, Action> index(Map<String, Map<String, Action>> index, String key) {
+    return index.computeIfAbsent(key == null ? "" : key, k -> new HashMap<>());
+  }
+
+  private void append(Map<String, Object> record) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.write(objectMapper.writeValueAsString(record));
+      writer.newLine();
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write to " + file, e);
+    }
+  }
+
+  private void open() {
+    try {
+      int lines = Files.exists(file) ? replay() : 0;
+      // the log only grows, rewrite it when most of it is superseded status updates
+      if (lines > 2 * byKey.size() + 100) {
+        compact();
+      }
+      writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open the action store " + file, e);
+    }
+    LOG.info("Loaded {} actions from {}", byKey.size(), file);
+  }
+
+  @SuppressWarnings("unchecked")
+  private int replay() throws IOException {
+    int lines = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Map<String, Object> record;
+        try {
+          record = objectMapper.readValue(line, Map.class);
+        } catch (IOException e) {
+          // a crash while appending leaves a partial last line, the record was never acknowledged
+          LOG.warn("Ignoring unreadable line {} in {}: {}", lines + 1, file, e.getMessage());
+          continue;
+        }
+        lines++;
+        switch ((String) record.get("op")) {
+          case "put":
+            Action stored = ActionRecords.fromRecord(record);
+            put((String) record.getOrDefault("key", record.get("jiraKey")), stored);
+            break;
+          case "status":
+            Action action = byKey.get(record.get("jiraKey"));
+            if (action != null) {
+              put((String) record.get("jiraKey"), action.unbuild().status((String) record.get("status")).build());
+            }
+            break;
+          case "resolve":
+            resolve((String) record.get("id"), (String) record.get("jiraKey"));
+            break;
+          case "synced":
+            syncedUntil = Optional.of(Instant.ofEpochMilli(((Number) record.get("until")).longValue()));
+            break;
+          default:
+            LOG.warn("Ignoring unknown record {} in {}", record.get("op"), file);
+        }
+      }
+    }
+    return lines;
+  }
+
+  private void compact() throws IOException {
+    Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+    try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Action> entry : byKey.entrySet()) {
+        Map<String, Object> record = ActionRecords.toRecord(entry.getValue());
+        record.put("op", "put");
+        record.put("key", entry.getKey());
+        out.write(objectMapper.writeValueAsString(record));
+        out.newLine();
+      }
+      if (syncedUntil.isPresent()) {
+        out.write(objectMapper.writeValueAsString(syncedRecord(syncedUntil.get())));
+        out.newLine();
+      }
+    }
+    Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.info("Compacted {} to {} actions", file, byKey.size());
+  }
+
+  private Map<String, Object> syncedRecord(Instant until) {
+    Map<String, Object> record = new LinkedHashMap<>();
+    record.put("op", "synced");
+    record.put("until", until.toEpochMilli());
+    return record;
+  }
+}
@@ -16,20 +16,32 @@
 package selfservice.service.impl;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import selfservice.domain.Action;
@@ -39,6 +51,7 @@ import selfservice.domain.ServiceProvider;
 import selfservice.manage.EntityType;
 import selfservice.service.ActionsService;
 import selfservice.service.EmailService;
+import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
 import selfservice.manage.Manage;
 
 @Service
@@ -47,6 +60,13 @@ public class ActionsServiceImpl implements ActionsService {
   private static final Pattern namePattern = Pattern.compile("^Applicant name: (.*)$", Pattern.MULTILINE);
   private static final Pattern emailPattern = Pattern.compile("^Applicant email: (.*)$", Pattern.MULTILINE);
 
+  private static final Logger LOG = LoggerFactory.getLogger(ActionsServiceImpl.class);
+
+  private static final int SYNC_PAGE_SIZE = 100;
+  private static final Duration SYNC_OVERLAP = Duration.ofMinutes(5);
+  private static final String PENDING_STATUS = "Pending";
+  private static final String FAILED_STATUS = "Failed";
+
 
   @Autowired
   private JiraClient jiraClient;
@@ -60,16 +80,90 @@ public class ActionsServiceImpl implements ActionsService {
   @Value("${administration.email.enabled}")
   private boolean sendAdministrationEmail;
 
+  @Autowired
+  private ActionStore actionStore;
+
+  @Autowired
+  private JiraOutbox jiraOutbox;
+
   @Override
   public Map<String, Object> getActions(String identityProvider, int startAt, int maxResults) {
+      // until the first synchronization completed the store does not know the older actions
+      if (actionStore.getSyncedUntil().isPresent()) {
+        return actionStore.findByIdp(identityProvider, startAt, maxResults);
+      }
+
       Map<String, Object> result = jiraClient.getTasks(identityProvider, startAt, maxResults);
       List<Action> issues = (List<Action>) result.get("issues");
-      List<Action> enrichedActions = issues.stream().map(this::addNames).map(this::addUser).collect(toList());
+
       Map<String, Object> copyResult = new HashMap<>(result);
-      copyResult.put("issues", enrichedActions);
+      copyResult.put("issues", enrich(issues));
       return copyResult;
   }
 
+  /**
+   * Brings the local action store up to date with Jira. The first run imports all tasks, after that only the tasks
+   * updated since the previous run are fetched. The overlap makes up for clock differences with Jira.
+   */
+  @Scheduled(initialDelayString = "${actions.sync.initialDelayMillis}",
+      fixedDelayString = "${actions.sync.intervalMillis}")
+  public void synchronizeActions() {
+    Instant started = Instant.now();
+    Optional<Duration> updatedWithin = actionStore.getSyncedUntil()
+        .map(until -> Duration.between(until, started).plus(SYNC_OVERLAP));
+
+    int startAt = 0;
+    int total;
+    do {
+      Map<String, Object> page = jiraClient.getTasksUpdatedSince(updatedWithin, startAt, SYNC_PAGE_SIZE);
+      if (page.isEmpty()) {
+        LOG.warn("Could not synchronize the actions with Jira, retrying on the next run");
+        return;
+      }
+      List<Action> issues = (List<Action>) page.get("issues");
+      store(issues);
+
+      startAt += issues.size();
+      total = ((Number) page.get("total")).intValue();
+      if (issues.isEmpty()) {
+        break;
+      }
+    } while (startAt < total);
+
+    actionStore.markSynced(started);
+    LOG.debug("Synchronized {} changed actions from Jira, {} actions stored", startAt, actionStore.size());
+  }
+
+  private void store(List<Action> issues) {
+    List<Action> unknown = new ArrayList<>();
+    issues.forEach(issue -> {
+      Optional<Action> stored = actionStore.find(issue.getJiraKey().get());
+      if (!stored.isPresent()) {
+        unknown.add(issue);
+      } else if (!Objects.equals(stored.get().getStatus(), issue.getStatus())) {
+        actionStore.updateStatus(issue.getJiraKey().get(), issue.getStatus());
+      }
+    });
+    enrich(unknown).forEach(actionStore::save);
+  }
+
+  /*
+   * Resolves all names in one go instead of with one or two Manage calls per action, and takes the applicant from the
+   * description.
+   */
+  private List<Action> enrich(List<Action> issues) {
+    Map<String, ServiceProvider> serviceProviders =
+        manage.getServiceProvidersByEntityIds(issues.stream().map(Action::getSpId).collect(toSet()));
+    Map<String, IdentityProvider> identityProviders =
+        manage.getIdentityProvidersByEntityIds(issues.stream().map(Action::getIdpId).collect(toSet()));
+
+    return issues.stream()
+        .map(action -> addNames(action, Optional.ofNullable(serviceProviders.get(action.getSpId())),
+            Optional.ofNullable(identityProviders.get(action.getIdpId()))))
+        .map(this::addUser)
+        .collect(toList());
+  }
+
   private Action addUser(Action action) {
     String body = action.getBody();
 
@@ -90,6 +184,9 @@ public class ActionsServiceImpl implements ActionsService {
   }
 
   private Optional<String> matchingGroup(Pattern pattern, String input) {
+    if (input == null) {
+      return Optional.empty();
+    }
     Matcher matcher = pattern.matcher(input);
     if (matcher.find()) {
       return Optional.ofNullable(matcher.group(1));
@@ -98,21 +195,72 @@ public class ActionsServiceImpl implements ActionsService {
     return Optional.empty();
   }
 
+  /**
+   * Hands the Jira issue to the outbox and returns without its key, the issue is created in the background. The
+   * administration email is sent once Jira accepted it, or when Jira rejected it for good.
+   */
   @Override
   public Action create(Action action, List<Change> changes) {
-    String jiraKey = jiraClient.create(action, changes);
+    SummaryAndDescription summaryAndDescription = JiraTicketSummaryAndDescriptionBuilder.build(action, changes);
+
+    Action namedAction = addNames(action).unbuild()
+        .status(PENDING_STATUS)
+        .requestDate(action.getRequestDate() != null ? action.getRequestDate() : ZonedDateTime.now())
+        .build();
+
+    String id = UUID.randomUUID().toString();
+    actionStore.savePending(id, namedAction);
+    jiraOutbox.submit(id, namedAction, summaryAndDescription);
+
+    return namedAction;
+  }
+
+  @PostConstruct
+  public void startOutbox() {
+    jiraOutbox.start(this::delivered, this::failed);
+  }
+
+  private void delivered(JiraOutbox.Delivery delivery) {
+    actionStore.resolvePending(delivery.getId(), delivery.getAction().getJiraKey().get());
+    sendAdministrationEmail(delivery.getAction());
+  }
 
-    Action savedAction = addNames(action).unbuild().jiraKey(jiraKey).build();
+  private void failed(JiraOutbox.Failure failure) {
+    actionStore.updatePendingStatus(failure.getId(), FAILED_STATUS);
+    if (!sendAdministrationEmail) {
+      return;
+    }
 
-    sendAdministrationEmail(savedAction);
+    Action action = failure.getAction();
+    String subject = String.format(
+        "[Services (%s) request] FAILED to create the Jira issue for %s connection from IdP '%s' to SP '%s'",
+        getHost(), action.getType().name(), action.getIdpId(), action.getSpId());
+
+    StringBuilder body = new StringBuilder();
+    body.append("Jira rejected the issue: " + failure.getError() + "\n");
+    body.append("SP EntityID: " + action.getSpId() + "\n");
+    body.append("SP Name: " + action.getSpName() + "\n");
 
-    return savedAction;
+    body.append("IdP EntityID: " + action.getIdpId() + "\n");
+    body.append("IdP Name: " + action.getIdpName() + "\n");
+
+    body.append("Request: " + action.getType().name() + "\n");
+    body.append("Applicant name: " + action.getUserName() + "\n");
+    body.append("Applicant email: " + action.getUserEmail() + " \n");
+    body.append("Remark from User:\n");
+    body.append(action.getBody());
+    emailService.sendMail(action.getUserEmail(), subject, body.toString());
   }
 
   private Action addNames(Action action) {
     Optional<ServiceProvider> serviceProvider = manage.getServiceProvider(action.getSpId(), EntityType.saml20_sp, true);
     Optional<IdentityProvider> identityProvider = manage.getIdentityProvider(action.getIdpId(), true);
 
+    return addNames(action, serviceProvider, identityProvider);
+  }
+
+  private Action addNames(Action action, Optional<ServiceProvider> serviceProvider,
+                          Optional<IdentityProvider> identityProvider) {
     return action.unbuild()
         .idpName(identityProvider.map(IdentityProvider::getName).orElse("Information unavailable"))
         .spName(serviceProvider.map(ServiceProvider::getName).orElse("Information unavailable")).build();
@@ -17,14 +17,36 @@ package selfservice.service.impl;
 
 import selfservice.domain.Action;
 import selfservice.domain.Change;
+import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public interface JiraClient {
 
     String create(Action action, List<Change> changes) throws IllegalStateException;
 
+    /**
+     * Create an issue from a summary and description that were prepared earlier
+     *
+     * @param label added to the issue so it can be found back with {@link #findKeyByLabel(String)}, may be null
+     */
+    String create(Action action, SummaryAndDescription summaryAndDescription, String label);
+
+    /**
+     * @return the key of the issue with the label, fails when Jira can't be searched
+     */
+    Optional<String> findKeyByLabel(String label);
+
     Map<String, Object> getTasks(String idp, int startAt, int maxResults);
 
+    /**
+     * Get the tasks of all IdP's, least recently updated first
+     *
+     * @param updatedWithin only the tasks updated within this period, or all tasks when empty
+     */
+    Map<String, Object> getTasksUpdatedSince(Optional<Duration> updatedWithin, int startAt, int maxResults);
+
 }
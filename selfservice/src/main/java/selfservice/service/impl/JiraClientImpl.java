@@ -15,19 +15,31 @@
  */
 package selfservice.service.impl;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.security.crypto.codec.Base64;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import selfservice.domain.Action;
@@ -35,17 +47,21 @@ import selfservice.domain.Action.Type;
 import selfservice.domain.Change;
 import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
 
 public class JiraClientImpl implements JiraClient {
     private static final Logger LOG = LoggerFactory.getLogger(JiraClientImpl.class);
@@ -57,6 +73,9 @@ public class JiraClientImpl implements JiraClient {
     private static final String DEFAULT_SECURITY_LEVEL_ID = "10100";
     private static final String PRIORITY_MEDIUM_ID = "3";
 
+    private static final List<String> SEARCH_FIELDS = ImmutableList.of("issuetype", "status", "created", "description",
+        "customfield_" + IDP_CUSTOM_FIELD, "customfield_" + SP_CUSTOM_FIELD);
+
     private static final Map<Action.Type, String> TASKTYPE_TO_ISSUETYPE_CODE = ImmutableMap.of(
         Type.QUESTION, "11103",
         Type.LINKREQUEST, "11104",
@@ -69,7 +88,8 @@ public class JiraClientImpl implements JiraClient {
     private final HttpHeaders defaultHeaders;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public JiraClientImpl(final String baseUrl, final String username, final String password, final String projectKey) {
+    public JiraClientImpl(final String baseUrl, final String username, final String password, final String projectKey,
+                          int connectTimeoutMillis, int readTimeoutMillis, int maxConnections, long keepAliveMillis) {
         this.projectKey = projectKey;
         this.baseUrl = baseUrl;
 
@@ -77,20 +97,58 @@ public class JiraClientImpl implements JiraClient {
         this.defaultHeaders.setContentType(MediaType.APPLICATION_JSON);
         byte[] encoded = Base64.encode((username + ":" + password).getBytes());
         this.defaultHeaders.add(HttpHeaders.AUTHORIZATION, "Basic " + new String(encoded));
-        this.restTemplate = new RestTemplate();
+        this.restTemplate = new RestTemplate(
+            clientHttpRequestFactory(connectTimeoutMillis, readTimeoutMillis, maxConnections, keepAliveMillis));
+    }
+
+    /*
+     * All calls go to the same host, so the pool is sized per route. Waiting for a pooled connection is bounded by the
+     * connect timeout, a slow Jira can then never hold on to more than maxConnections Tomcat threads for longer than
+     * the read timeout. HttpClient asks for and unpacks gzip responses by default.
+     */
+    private ClientHttpRequestFactory clientHttpRequestFactory(int connectTimeoutMillis, int readTimeoutMillis,
+                                                              int maxConnections, long keepAliveMillis) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+
+        HttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(keepAliveStrategy)
+            .evictExpiredConnections()
+            .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+            .disableCookieManagement()
+            .build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setConnectionRequestTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        return requestFactory;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public String create(final Action action, List<Change> changes) {
+        return create(action, JiraTicketSummaryAndDescriptionBuilder.build(action, changes), null);
+    }
+
+    @Override
+    public String create(Action action, SummaryAndDescription summaryAndDescription, String label) {
         Map<String, Object> fields = new HashMap<>();
         fields.put("priority", ImmutableMap.of("id", PRIORITY_MEDIUM_ID));
         fields.put("project", ImmutableMap.of("key", projectKey));
         fields.put("customfield_" + SP_CUSTOM_FIELD, action.getSpId());
         fields.put("customfield_" + IDP_CUSTOM_FIELD, action.getIdpId());
         fields.put("issuetype", ImmutableMap.of("id", TASKTYPE_TO_ISSUETYPE_CODE.get(action.getType())));
+        if (label != null) {
+            fields.put("labels", Collections.singletonList(label));
+        }
 
-        SummaryAndDescription summaryAndDescription = JiraTicketSummaryAndDescriptionBuilder.build(action, changes);
         fields.put("summary", summaryAndDescription.summary);
         fields.put("description", summaryAndDescription.description);
 
@@ -117,38 +175,28 @@ public class JiraClientImpl implements JiraClient {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<String, Object> getTasks(String idp, int startAt, int maxResults) {
-        String query = buildQueryForIdp(idp, TASKTYPE_TO_ISSUETYPE_CODE.values());
+        return search(buildQueryForIdp(idp, TASKTYPE_TO_ISSUETYPE_CODE.values()), startAt, maxResults);
+    }
 
-        try {
-            HttpEntity<Map<String, String>> entity = new HttpEntity<>(ImmutableMap.of("jql", query, "maxResults",
-                String.valueOf(maxResults)),
-                defaultHeaders);
-
-            Map<String, Object> result = restTemplate.postForObject(baseUrl + "/search?expand=all", entity, Map.class);
-
-            List<Action> issues = ((List<Map<String, Object>>) result.get("issues")).stream().map(issue -> {
-                Map<String, Object> fields = (Map<String, Object>) issue.get("fields");
-
-                String issueType = (String) ((Map<String, Object>) fields.get("issuetype")).get("id");
-
-                return Action.builder()
-                    .jiraKey((String) issue.get("key"))
-                    .idpId(Optional.ofNullable((String) fields.get("customfield_" + IDP_CUSTOM_FIELD)).orElse(""))
-                    .spId(Optional.ofNullable((String) fields.get("customfield_" + SP_CUSTOM_FIELD)).orElse(""))
-                    .status((String) ((Map<String, Object>) fields.get("status")).get("name"))
-                    .type(findType(issueType))
-                    .requestDate(ZonedDateTime.parse((String) fields.get("created"), DATE_FORMATTER))
-                    .body((String) fields.get("description")).build();
-            }).collect(toList());
-            Map<String, Object> answer = new HashMap<>();
-            answer.put("issues", issues);
-            answer.put("total", result.get("total"));
-            answer.put("startAt", result.get("startAt"));
-            answer.put("maxResults", result.get("maxResults"));
-            return answer;
+    @Override
+    public Map<String, Object> getTasksUpdatedSince(Optional<Duration> updatedWithin, int startAt, int maxResults) {
+        return search(buildQueryForUpdated(updatedWithin, TASKTYPE_TO_ISSUETYPE_CODE.values()), startAt, maxResults);
+    }
+
+    /*
+     * Unlike the other searches this one fails when Jira can't be reached, "not found" must really mean not found.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<String> findKeyByLabel(String label) {
+        Map<String, Object> result = execute(String.format("labels = \"%s\"", label), 0, 1);
+        return ((List<Action>) result.get("issues")).stream().findFirst().flatMap(Action::getJiraKey);
+    }
 
+    private Map<String, Object> search(String query, int startAt, int maxResults) {
+        try {
+            return execute(query, startAt, maxResults);
         } catch (HttpStatusCodeException e) {
             if (e.getStatusCode().equals(HttpStatus.BAD_REQUEST)) {
                 LOG.error("The Jira query \"{}\" was invalid:\n{}", query, e.getResponseBodyAsString());
@@ -163,6 +211,135 @@ public class JiraClientImpl implements JiraClient {
         return Collections.emptyMap();
     }
 
+    private Map<String, Object> execute(String query, int startAt, int maxResults) {
+        Map<String, Object> search = new HashMap<>();
+        search.put("jql", query);
+        search.put("startAt", startAt);
+        search.put("maxResults", maxResults);
+        search.put("fields", SEARCH_FIELDS);
+
+        RequestCallback requestCallback = request -> {
+            request.getHeaders().putAll(defaultHeaders);
+            objectMapper.writeValue(request.getBody(), search);
+        };
+
+        return restTemplate.execute(baseUrl + "/search", HttpMethod.POST, requestCallback,
+            response -> parseSearchResult(response.getBody()));
+    }
+
+    /**
+     * Cheap check for the health prober, serverInfo is answered without running a query.
+     */
+    public boolean isAvailable() {
+        try {
+            restTemplate.exchange(baseUrl + "/serverInfo", HttpMethod.GET, new HttpEntity<>(defaultHeaders), Map.class);
+            return true;
+        } catch (RestClientException e) {
+            LOG.warn("Jira was not available: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * Streams through the search result, the issues are turned into Actions as they are read instead of binding the
+     * whole response to maps first.
+     */
+    private Map<String, Object> parseSearchResult(InputStream inputStream) throws IOException {
+        Map<String, Object> answer = new HashMap<>();
+        List<Action> issues = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object from the Jira search");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "total":
+                    case "startAt":
+                    case "maxResults":
+                        answer.put(field, parser.getIntValue());
+                        break;
+                    case "issues":
+                        while (token == JsonToken.START_ARRAY && parser.nextToken() == JsonToken.START_OBJECT) {
+                            issues.add(parseIssue(parser));
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        answer.put("issues", issues);
+        return answer;
+    }
+
+    private Action parseIssue(JsonParser parser) throws IOException {
+        Action.Builder action = Action.builder().idpId("").spId("");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("key".equals(field)) {
+                action.jiraKey(parser.getValueAsString());
+            } else if ("fields".equals(field)) {
+                parseFields(parser, action);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return action.build();
+    }
+
+    private void parseFields(JsonParser parser, Action.Builder action) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "issuetype":
+                    action.type(findType(nestedValue(parser, "id")));
+                    break;
+                case "status":
+                    action.status(nestedValue(parser, "name"));
+                    break;
+                case "created":
+                    action.requestDate(ZonedDateTime.parse(parser.getValueAsString(), DATE_FORMATTER));
+                    break;
+                case "description":
+                    action.body(parser.getValueAsString());
+                    break;
+                case "customfield_" + IDP_CUSTOM_FIELD:
+                    action.idpId(parser.getValueAsString(""));
+                    break;
+                case "customfield_" + SP_CUSTOM_FIELD:
+                    action.spId(parser.getValueAsString(""));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    /*
+     * Returns the value of the named field of the object the parser is positioned on, skipping everything else in it.
+     */
+    private String nestedValue(JsonParser parser, String name) throws IOException {
+        String value = null;
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                value = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
     private Action.Type findType(String issueType) {
         Action.Type type = TASKTYPE_TO_ISSUETYPE_CODE.entrySet().stream()
             .filter(entry -> entry.getValue().equals(issueType))
@@ -171,6 +348,16 @@ public class JiraClientImpl implements JiraClient {
         return type;
     }
 
+    /*
+     * A relative date is evaluated by Jira itself, so the time zones of Jira and the dashboard don't have to match.
+     */
+    private String buildQueryForUpdated(Optional<Duration> updatedWithin, Collection<String> issueTypeIds) {
+        String updated = updatedWithin.map(duration -> String.format(" AND updated >= \"-%dm\"",
+            duration.toMinutes() + 1)).orElse("");
+        return String.format("project = %s AND issueType IN (%s)%s ORDER BY updated ASC", projectKey,
+            issueTypeIds.stream().collect(joining(", ")), updated);
+    }
+
     private String buildQueryForIdp(String idp, Collection<String> issueTypeIds) {
         return String.format("project = %s AND issueType IN (%s) AND cf[%s]~\"%s\" ORDER BY created DESC", projectKey,
             issueTypeIds.stream().collect(joining(", ")), IDP_CUSTOM_FIELD, idp);
@@ -19,14 +19,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import selfservice.domain.Action;
 import selfservice.domain.Change;
+import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
 import selfservice.shibboleth.mock.MockShibbolethFilter;
 
+import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.stream.Collectors.toList;
@@ -35,7 +40,9 @@ public class JiraClientMock implements JiraClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(JiraClientMock.class);
 
-    private Map<String, Action> repository = new LinkedHashMap<>();
+    private Map<String, Action> repository = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private Map<String, String> labels = new ConcurrentHashMap<>();
 
     private AtomicInteger counter = new AtomicInteger(0);
 
@@ -51,6 +58,20 @@ public class JiraClientMock implements JiraClient {
         return key;
     }
 
+    @Override
+    public String create(Action action, SummaryAndDescription summaryAndDescription, String label) {
+        String key = create(action.unbuild().body(summaryAndDescription.description).build(), Collections.emptyList());
+        if (label != null) {
+            labels.put(label, key);
+        }
+        return key;
+    }
+
+    @Override
+    public Optional<String> findKeyByLabel(String label) {
+        return Optional.ofNullable(labels.get(label));
+    }
+
     private String generateKey() {
         return "TASK-" + counter.incrementAndGet();
     }
@@ -68,4 +89,15 @@ public class JiraClientMock implements JiraClient {
 
     }
 
+    @Override
+    public Map<String, Object> getTasksUpdatedSince(Optional<Duration> updatedWithin, int startAt, int maxResults) {
+        List<Action> actions = repository.values().stream().skip(startAt).limit(maxResults).collect(toList());
+        Map<String, Object> result = new HashMap<>();
+        result.put("issues", actions);
+        result.put("total", repository.size());
+        result.put("startAt", startAt);
+        result.put("maxResults", maxResults);
+        return result;
+    }
+
 }
@@ -0,0 +1,333 @@
+package selfservice.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import selfservice.domain.Action;
+import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Creates the Jira issues of new actions in the background, so a slow or unavailable Jira does not block or fail the
+ * request that asked for it.
+ * <p>
+ * Submitted issues are appended to a JSON-lines file before {@link #submit} returns and are delivered again after a
+ * restart until Jira accepted them. Failed deliveries are retried with exponential backoff. Every issue carries a
+ * {@code dashboard-<id>} label: a retry first looks for an issue with that label, so an attempt that timed out after
+ * Jira created the issue does not create it twice. The same goes for the issues delivered again after a restart.
+ * <p>
+ * A 4xx answer means Jira rejects the issue itself, for example an invalid field, and retrying will not change that.
+ * After a limited number of those the issue is given up on and reported as failed.
+ */
+public class JiraOutbox {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JiraOutbox.class);
+
+  private static final String LABEL_PREFIX = "dashboard-";
+
+  private final Path file;
+  private final JiraClient jiraClient;
+  private final ScheduledExecutorService executor;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final int maxClientErrorAttempts;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+  private volatile Consumer<Delivery> listener;
+  private volatile Consumer<Failure> failureListener;
+  private BufferedWriter writer;
+
+  /**
+   * @param file                   the file to keep the undelivered issues in, or {@code null} to keep them in memory
+   *                               only
+   * @param maxClientErrorAttempts the number of attempts Jira may reject with a 4xx before the issue is given up on
+   */
+  public JiraOutbox(File file, JiraClient jiraClient, ScheduledExecutorService executor, long initialBackoffMillis,
+                    long maxBackoffMillis, int maxClientErrorAttempts) {
+    this.file = file == null ? null : file.toPath();
+    this.jiraClient = jiraClient;
+    this.executor = executor;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.maxClientErrorAttempts = maxClientErrorAttempts;
+    if (this.file != null) {
+      open();
+    }
+  }
+
+  /**
+   * Starts delivering, including the issues left over from before a restart.
+   *
+   * @param listener        called with every issue that Jira accepted
+   * @param failureListener called with every issue that Jira kept rejecting
+   */
+  public void start(Consumer<Delivery> listener, Consumer<Failure> failureListener) {
+    this.failureListener = failureListener;
+    this.listener = listener;
+    pending.values().forEach(p -> schedule(p, 0));
+  }
+
+  /**
+   * @param id unique id of the issue, passed to the listener once delivered or failed. Delivery can complete before this method
+   *           returns, so callers keeping track of the id must do so before submitting.
+   */
+  public void submit(String id, Action action, SummaryAndDescription summaryAndDescription) {
+    Pending submitted = new Pending(id, action, summaryAndDescription, false);
+    synchronized (this) {
+      append(submitted.toRecord());
+    }
+    pending.put(submitted.id, submitted);
+    if (listener != null) {
+      schedule(submitted, 0);
+    }
+  }
+
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * Stops delivering, the undelivered issues are picked up again by the next {@link #start}.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void schedule(Pending p, long delayMillis) {
+    executor.schedule(() -> deliver(p), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void deliver(Pending p) {
+    String label = LABEL_PREFIX + p.id;
+    String jiraKey;
+    try {
+      Optional<String> created = p.mayExist ? jiraClient.findKeyByLabel(label) : Optional.empty();
+      jiraKey = created.orElseGet(() -> jiraClient.create(p.action, p.summaryAndDescription, label));
+
+      synchronized (this) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("op", "delivered");
+        record.put("id", p.id);
+        record.put("jiraKey", jiraKey);
+        append(record);
+      }
+      pending.remove(p.id);
+    } catch (RuntimeException e) {
+      p.attempts++;
+      p.mayExist = true;
+      if (isRejected(e) && ++p.rejections >= maxClientErrorAttempts) {
+        fail(p, e);
+        return;
+      }
+      long delay = backoff(p.attempts);
+      LOG.warn("Attempt {} to create the Jira issue for {} failed, retrying in {} ms: {}", p.attempts, p.id, delay,
+          e.toString());
+      schedule(p, delay);
+      return;
+    }
+    LOG.info("Created Jira issue {} for {} after {} attempt(s)", jiraKey, p.id, p.attempts + 1);
+
+    //The issue exists now, a failing listener must not get it created again
+    try {
+      listener.accept(new Delivery(p.id, p.action.unbuild().jiraKey(jiraKey).build()));
+    } catch (RuntimeException e) {
+      LOG.error("Could not process the created Jira issue {} for {}", jiraKey, p.id, e);
+    }
+  }
+
+  /*
+   * Too many requests and request timeout are 4xx as well, but say nothing about the issue
+   */
+  private boolean isRejected(RuntimeException e) {
+    if (!(e instanceof HttpClientErrorException)) {
+      return false;
+    }
+    HttpStatus status = ((HttpClientErrorException) e).getStatusCode();
+    return status != HttpStatus.TOO_MANY_REQUESTS && status != HttpStatus.REQUEST_TIMEOUT;
+  }
+
+  private void fail(Pending p, RuntimeException e) {
+    String error = e instanceof HttpClientErrorException ?
+        e.getMessage() + ": " + ((HttpClientErrorException) e).getResponseBodyAsString() : e.getMessage();
+    synchronized (this) {
+      Map<String, Object> record = new LinkedHashMap<>();
+      record.put("op", "failed");
+      record.put("id", p.id);
+      record.put("error", error);
+      append(record);
+    }
+    pending.remove(p.id);
+    LOG.error("Jira rejected the issue for {} {} times, giving up: {}", p.id, p.rejections, error);
+
+    try {
+      failureListener.accept(new Failure(p.id, p.action, error));
+    } catch (RuntimeException listenerException) {
+      LOG.error("Could not process the failed Jira issue for {}", p.id, listenerException);
+    }
+  }
+
+  /*
+   * Exponential with full jitter, so issues that failed together during an outage are not all retried at once.
+   */
+  private long backoff(int attempts) {
+    long ceiling = initialBackoffMillis << Math.min(attempts - 1, 30);
+    long capped = Math.min(maxBackoffMillis, ceiling < 0 ? maxBackoffMillis : ceiling);
+    return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+  }
+
+  private void append(Map<String, Object> record) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.write(objectMapper.writeValueAsString(record));
+      writer.newLine();
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write to " + file, e);
+    }
+  }
+
+  /*
+   * Replays the file and rewrites it with only the undelivered issues, the delivered and failed ones are not needed
+   * anymore.
+   */
+  @SuppressWarnings("unchecked")
+  private void open() {
+    try {
+      if (Files.exists(file)) {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+          Map<String, Object> record;
+          try {
+            record = objectMapper.readValue(line, Map.class);
+          } catch (IOException e) {
+            LOG.warn("Ignoring unreadable line in {}: {}", file, e.getMessage());
+            continue;
+          }
+          if ("submitted".equals(record.get("op"))) {
+            Pending p = Pending.fromRecord(record);
+            pending.put(p.id, p);
+          } else if ("delivered".equals(record.get("op")) || "failed".equals(record.get("op"))) {
+            pending.remove(record.get("id"));
+          }
+        }
+      }
+      Path rewritten = file.resolveSibling(file.getFileName() + ".compact");
+      try (BufferedWriter out = Files.newBufferedWriter(rewritten, StandardCharsets.UTF_8)) {
+        for (Pending p : pending.values()) {
+          out.write(objectMapper.writeValueAsString(p.toRecord()));
+          out.newLine();
+        }
+      }
+      Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open the Jira outbox " + file, e);
+    }
+    if (!pending.isEmpty()) {
+      LOG.info("{} Jira issues in {} are still to be created", pending.size(), file);
+    }
+  }
+
+  public static class Delivery {
+    private final String id;
+    private final Action action;
+
+    private Delivery(String id, Action action) {
+      this.id = id;
+      this.action = action;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return the submitted action with the key of the created Jira issue
+     */
+    public Action getAction() {
+      return action;
+    }
+  }
+
+  public static class Failure {
+    private final String id;
+    private final Action action;
+    private final String error;
+
+    private Failure(String id, Action action, String error) {
+      this.id = id;
+      this.action = action;
+      this.error = error;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public Action getAction() {
+      return action;
+    }
+
+    /**
+     * @return the last answer of Jira
+     */
+    public String getError() {
+      return error;
+    }
+  }
+
+  private static class Pending {
+    private final String id;
+    private final Action action;
+    private final SummaryAndDescription summaryAndDescription;
+    private volatile int attempts;
+    private volatile int rejections;
+    //An earlier attempt, possibly before a restart, may have created the issue
+    private volatile boolean mayExist;
+
+    private Pending(String id, Action action, SummaryAndDescription summaryAndDescription, boolean mayExist) {
+      this.id = id;
+      this.action = action;
+      this.summaryAndDescription = summaryAndDescription;
+      this.mayExist = mayExist;
+    }
+
+    private Map<String, Object> toRecord() {
+      Map<String, Object> record = new LinkedHashMap<>();
+      record.put("op", "submitted");
+      record.put("id", id);
+      record.put("summary", summaryAndDescription.summary);
+      record.put("description", summaryAndDescription.description);
+      record.put("action", ActionRecords.toRecord(action));
+      return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Pending fromRecord(Map<String, Object> record) {
+      return new Pending((String) record.get("id"),
+          ActionRecords.fromRecord((Map<String, Object>) record.get("action")),
+          new SummaryAndDescription((String) record.get("summary"), (String) record.get("description")), true);
+    }
+  }
+}
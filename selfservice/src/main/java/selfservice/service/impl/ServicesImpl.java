@@ -12,6 +12,7 @@ import selfservice.domain.Service;
 import selfservice.domain.ServiceProvider;
 import selfservice.manage.EntityType;
 import selfservice.manage.Manage;
+import selfservice.metrics.RequestTimings;
 import selfservice.service.Services;
 
 import java.util.Collections;
@@ -32,21 +33,23 @@ public class ServicesImpl implements Services {
 
     @Override
     public List<Service> getServicesForIdp(String idpEntityId, Locale locale) {
-        IdentityProvider identityProvider = manage.getIdentityProvider(idpEntityId, false).orElseThrow(() -> new
-            IllegalArgumentException(String.format("IDP %s does not exists", idpEntityId)));
-
-        List<ServiceProvider> allServiceProviders = manage.getAllServiceProviders();
-        List<Service> services = allServiceProviders.stream().map(sp -> {
-            Service service = this.buildApiService(sp, locale.getLanguage());
-            boolean connectedToIdentityProvider = identityProvider.isAllowedAll() || identityProvider
-                .getAllowedEntityIds().contains(sp.getId());
-            boolean allowedBySp = sp.isAllowedAll() || sp.getAllowedEntityIds().contains(idpEntityId);
-            service.setConnected(connectedToIdentityProvider && allowedBySp);
-            return service;
-        }).filter(service -> !service.isIdpVisibleOnly() || service.isConnected() ||
-            (service.getInstitutionId() != null && service.getInstitutionId().equals(identityProvider.getInstitutionId())))
-            .collect(toList());
-        return services;
+        try (RequestTimings.Span span = RequestTimings.start("services")) {
+            IdentityProvider identityProvider = manage.getIdentityProvider(idpEntityId, false).orElseThrow(() -> new
+                IllegalArgumentException(String.format("IDP %s does not exists", idpEntityId)));
+
+            List<ServiceProvider> allServiceProviders = manage.getAllServiceProviders();
+            List<Service> services = allServiceProviders.stream().map(sp -> {
+                Service service = this.buildApiService(sp, locale.getLanguage());
+                boolean connectedToIdentityProvider = identityProvider.isAllowedAll() || identityProvider
+                    .getAllowedEntityIds().contains(sp.getId());
+                boolean allowedBySp = sp.isAllowedAll() || sp.getAllowedEntityIds().contains(idpEntityId);
+                service.setConnected(connectedToIdentityProvider && allowedBySp);
+                return service;
+            }).filter(service -> !service.isIdpVisibleOnly() || service.isConnected() ||
+                (service.getInstitutionId() != null && service.getInstitutionId().equals(identityProvider.getInstitutionId())))
+                .collect(toList());
+            return services;
+        }
     }
 
     @Override
@@ -83,7 +86,9 @@ public class ServicesImpl implements Services {
     }
 
     private List<Service> buildApiServices(List<ServiceProvider> services, String language) {
-        return services.stream().map(service -> buildApiService(service, language)).collect(Collectors.toList());
+        try (RequestTimings.Span span = RequestTimings.start("services")) {
+            return services.stream().map(service -> buildApiService(service, language)).collect(Collectors.toList());
+        }
     }
 
     private Service buildApiService(ServiceProvider serviceProvider, String language) {
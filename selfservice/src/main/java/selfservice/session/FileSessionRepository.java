@@ -0,0 +1,252 @@
+package selfservice.session;
+
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps every session in its own file in a directory that all nodes share. A session is written to a temporary file
+ * and moved into place, so readers never see a partially written session. The last access time is the modification
+ * time of the file, which lets a request that did not change the session update it without rewriting the file.
+ * <p>
+ * Concurrent requests that change the same session are serialized by a lock on a {@value #LOCK_SUFFIX} file next to
+ * the session, held while the changes of a request are merged into the stored session. That lock is shared by all
+ * nodes, as long as the file system of the directory supports locking.
+ */
+public class FileSessionRepository implements SessionRepository {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileSessionRepository.class);
+
+  private static final int FORMAT = 0x5E55_0001;
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final long TEMP_FILE_MAX_AGE_MILLIS = 60_000;
+
+  //Session ids end up in file names, never accept anything else
+  private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{16,64}");
+
+  private final Path directory;
+  //File locks are held by the JVM, threads of this node have to take turns themselves
+  private final Striped<Lock> locks = Striped.lock(64);
+
+  public FileSessionRepository(File directory) {
+    this.directory = directory.toPath();
+    try {
+      Files.createDirectories(this.directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create the session directory " + directory, e);
+    }
+  }
+
+  @Override
+  public Optional<StoredSession> findById(String id) {
+    if (!isValidId(id)) {
+      return Optional.empty();
+    }
+    Path file = directory.resolve(id);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      long lastAccessedTime = Files.getLastModifiedTime(file).toMillis();
+      Header header = Header.read(in);
+      if (StoredSession.isExpired(lastAccessedTime, header.maxInactiveIntervalSeconds, System.currentTimeMillis())) {
+        delete(id);
+        return Optional.empty();
+      }
+      int count = in.readInt();
+      Map<String, byte[]> attributes = new LinkedHashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        attributes.put(name, value);
+      }
+      return Optional.of(new StoredSession(id, header.creationTime, lastAccessedTime,
+          header.maxInactiveIntervalSeconds, attributes));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException | IllegalStateException e) {
+      LOG.warn("Discarding unreadable session {}: {}", id, e.toString());
+      delete(id);
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void save(StoredSession session) {
+    String id = requireValidId(session.getId());
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(directory, id, TEMP_SUFFIX);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        new Header(session.getCreationTime(), session.getMaxInactiveIntervalSeconds()).write(out);
+        out.writeInt(session.getAttributes().size());
+        for (Map.Entry<String, byte[]> attribute : session.getAttributes().entrySet()) {
+          out.writeUTF(attribute.getKey());
+          out.writeInt(attribute.getValue().length);
+          out.write(attribute.getValue());
+        }
+      }
+      Files.setLastModifiedTime(temp, FileTime.fromMillis(session.getLastAccessedTime()));
+      Files.move(temp, directory.resolve(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      deleteQuietly(temp);
+      throw new UncheckedIOException("Could not save session " + id, e);
+    }
+  }
+
+  @Override
+  public Optional<StoredSession> update(StoredSession changes, Set<String> removedAttributes) {
+    String id = requireValidId(changes.getId());
+    Lock lock = locks.get(id);
+    lock.lock();
+    try (FileChannel channel = FileChannel.open(directory.resolve(id + LOCK_SUFFIX), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE); FileLock fileLock = channel.lock()) {
+      Optional<StoredSession> current = findById(id);
+      if (!current.isPresent()) {
+        return Optional.empty();
+      }
+      Map<String, byte[]> attributes = new LinkedHashMap<>(current.get().getAttributes());
+      attributes.keySet().removeAll(removedAttributes);
+      attributes.putAll(changes.getAttributes());
+      StoredSession updated = new StoredSession(id, current.get().getCreationTime(), changes.getLastAccessedTime(),
+          changes.getMaxInactiveIntervalSeconds(), attributes);
+      save(updated);
+      return Optional.of(updated);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not lock session " + id, e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void touch(String id, long lastAccessedTime) {
+    try {
+      Files.setLastModifiedTime(directory.resolve(requireValidId(id)), FileTime.fromMillis(lastAccessedTime));
+    } catch (NoSuchFileException e) {
+      //deleted or expired in the meantime
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not touch session " + id, e);
+    }
+  }
+
+  @Override
+  public void delete(String id) {
+    if (isValidId(id)) {
+      deleteQuietly(directory.resolve(id));
+    }
+  }
+
+  /**
+   * Also removes the temporary files left behind by nodes that stopped while saving a session, and the lock files of
+   * sessions that no longer exist.
+   */
+  @Override
+  public int deleteExpired() {
+    long now = System.currentTimeMillis();
+    int deleted = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        if (isExpired(file, now)) {
+          deleteQuietly(file);
+          deleted++;
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not delete the expired sessions in {}", directory, e);
+    }
+    return deleted;
+  }
+
+  private boolean isExpired(Path file, long now) {
+    String name = file.getFileName().toString();
+    try {
+      long lastModified = Files.getLastModifiedTime(file).toMillis();
+      if (name.endsWith(TEMP_SUFFIX)) {
+        return now - lastModified > TEMP_FILE_MAX_AGE_MILLIS;
+      }
+      if (name.endsWith(LOCK_SUFFIX)) {
+        String id = name.substring(0, name.length() - LOCK_SUFFIX.length());
+        return now - lastModified > TEMP_FILE_MAX_AGE_MILLIS && Files.notExists(directory.resolve(id));
+      }
+      if (!isValidId(name)) {
+        return false;
+      }
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+        return StoredSession.isExpired(lastModified, Header.read(in).maxInactiveIntervalSeconds, now);
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException | IllegalStateException e) {
+      return true;
+    }
+  }
+
+  private static boolean isValidId(String id) {
+    return id != null && ID_PATTERN.matcher(id).matches();
+  }
+
+  private static String requireValidId(String id) {
+    if (!isValidId(id)) {
+      throw new IllegalArgumentException("Invalid session id " + id);
+    }
+    return id;
+  }
+
+  private static void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      LOG.warn("Could not delete {}", file, e);
+    }
+  }
+
+  private static class Header {
+    private final long creationTime;
+    private final int maxInactiveIntervalSeconds;
+
+    private Header(long creationTime, int maxInactiveIntervalSeconds) {
+      this.creationTime = creationTime;
+      this.maxInactiveIntervalSeconds = maxInactiveIntervalSeconds;
+    }
+
+    private static Header read(DataInputStream in) throws IOException {
+      int format = in.readInt();
+      if (format != FORMAT) {
+        throw new IllegalStateException("Unknown session format " + Integer.toHexString(format));
+      }
+      return new Header(in.readLong(), in.readInt());
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+      out.writeInt(FORMAT);
+      out.writeLong(creationTime);
+      out.writeInt(maxInactiveIntervalSeconds);
+    }
+  }
+}
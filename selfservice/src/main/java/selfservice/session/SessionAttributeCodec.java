@@ -0,0 +1,243 @@
+package selfservice.session;
+
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import selfservice.domain.CoinAuthority;
+import selfservice.domain.CoinAuthority.Authority;
+import selfservice.domain.CoinUser;
+import selfservice.shibboleth.ShibbolethHeader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes session attributes to bytes for a {@link SessionRepository}.
+ * <p>
+ * Strings, the {@link CoinUser} and the security context holding it are written field by field, which is a fraction
+ * of the size of their Java serialization and does not break when a class changes in an unrelated way. Everything
+ * else falls back to Java serialization. The security context does not keep the details of the login request (remote
+ * address and session id), nothing in the dashboard reads them.
+ */
+public class SessionAttributeCodec {
+
+  private static final byte STRING = 1;
+  private static final byte COIN_USER = 2;
+  private static final byte SECURITY_CONTEXT = 3;
+  private static final byte SERIALIZED = 127;
+
+  public boolean canEncode(Object value) {
+    return value instanceof Serializable;
+  }
+
+  public byte[] encode(Object value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      if (value instanceof String) {
+        out.writeByte(STRING);
+        writeString(out, (String) value);
+      } else if (isCoinUser(value)) {
+        out.writeByte(COIN_USER);
+        writeCoinUser(out, (CoinUser) value);
+      } else if (isCompactSecurityContext(value)) {
+        Authentication authentication = ((SecurityContext) value).getAuthentication();
+        out.writeByte(SECURITY_CONTEXT);
+        writeString(out, (String) authentication.getCredentials());
+        writeCoinUser(out, (CoinUser) authentication.getPrincipal());
+        writeAuthorities(out, authentication.getAuthorities());
+      } else {
+        out.writeByte(SERIALIZED);
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(out)) {
+          objectOut.writeObject(value);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not encode session attribute " + value.getClass().getName(), e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @throws IllegalArgumentException when the bytes can not be decoded, e.g. a serialized class changed
+   */
+  public Object decode(byte[] encoded) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+      byte type = in.readByte();
+      switch (type) {
+        case STRING:
+          return readString(in);
+        case COIN_USER:
+          return readCoinUser(in);
+        case SECURITY_CONTEXT:
+          String credentials = readString(in);
+          CoinUser user = readCoinUser(in);
+          Set<CoinAuthority> authorities = readAuthorities(in);
+          return securityContext(user, credentials, authorities);
+        case SERIALIZED:
+          try (ConfigurableObjectInputStream objectIn = new ConfigurableObjectInputStream(in,
+              getClass().getClassLoader())) {
+            return objectIn.readObject();
+          }
+        default:
+          throw new IllegalArgumentException("Unknown session attribute type " + type);
+      }
+    } catch (IOException | ClassNotFoundException | RuntimeException e) {
+      throw new IllegalArgumentException("Could not decode session attribute: " + e, e);
+    }
+  }
+
+  private static SecurityContext securityContext(CoinUser user, String credentials, Set<CoinAuthority> authorities) {
+    SecurityContext context = new SecurityContextImpl();
+    context.setAuthentication(new PreAuthenticatedAuthenticationToken(user, credentials, authorities));
+    return context;
+  }
+
+  private static boolean isCoinUser(Object value) {
+    return value != null && value.getClass() == CoinUser.class;
+  }
+
+  private static boolean isCompactSecurityContext(Object value) {
+    if (value == null || value.getClass() != SecurityContextImpl.class) {
+      return false;
+    }
+    Authentication authentication = ((SecurityContext) value).getAuthentication();
+    return authentication != null
+        && authentication.getClass() == PreAuthenticatedAuthenticationToken.class
+        && authentication.isAuthenticated()
+        && isCoinUser(authentication.getPrincipal())
+        && (authentication.getCredentials() == null || authentication.getCredentials() instanceof String)
+        && authentication.getAuthorities().stream().allMatch(authority -> authority instanceof CoinAuthority);
+  }
+
+  private static void writeCoinUser(DataOutputStream out, CoinUser user) throws IOException {
+    writeString(out, user.getUid());
+    writeString(out, user.getDisplayName());
+    writeString(out, user.getSchacHomeOrganization());
+    writeString(out, user.getEmail());
+    writeString(out, user.getInstitutionId());
+    writeString(out, user.getIdpId());
+    writeString(out, user.getSwitchedToIdpId().orElse(null));
+    writeStrings(out, user.getInstitutionIdpIds());
+    writeAuthorities(out, user.getAuthorities());
+    writeVarInt(out, user.getAttributeMap().size());
+    for (Map.Entry<ShibbolethHeader, List<String>> attribute : user.getAttributeMap().entrySet()) {
+      writeString(out, attribute.getKey().name());
+      writeStrings(out, attribute.getValue());
+    }
+  }
+
+  private static CoinUser readCoinUser(DataInputStream in) throws IOException {
+    CoinUser user = new CoinUser();
+    user.setUid(readString(in));
+    user.setDisplayName(readString(in));
+    user.setSchacHomeOrganization(readString(in));
+    user.setEmail(readString(in));
+    user.setInstitutionId(readString(in));
+    user.setIdpId(readString(in));
+    user.setSwitchedToIdpId(readString(in));
+    readStrings(in).forEach(user::addInstitutionIdpId);
+    user.setAuthorities(readAuthorities(in));
+    int attributes = readVarInt(in);
+    Map<ShibbolethHeader, List<String>> attributeMap = new EnumMap<>(ShibbolethHeader.class);
+    for (int i = 0; i < attributes; i++) {
+      attributeMap.put(ShibbolethHeader.valueOf(readString(in)), readStrings(in));
+    }
+    user.setAttributeMap(attributeMap);
+    return user;
+  }
+
+  private static void writeAuthorities(DataOutputStream out, Collection<? extends GrantedAuthority> authorities)
+      throws IOException {
+    writeVarInt(out, authorities.size());
+    for (GrantedAuthority authority : authorities) {
+      writeString(out, ((CoinAuthority) authority).getEnumAuthority().name());
+    }
+  }
+
+  private static Set<CoinAuthority> readAuthorities(DataInputStream in) throws IOException {
+    int size = readVarInt(in);
+    Set<CoinAuthority> authorities = new HashSet<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      authorities.add(new CoinAuthority(Authority.valueOf(readString(in))));
+    }
+    return authorities;
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+    if (values == null) {
+      writeVarInt(out, 0);
+      return;
+    }
+    writeVarInt(out, values.size());
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    int size = readVarInt(in);
+    List<String> values = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  //The length is written plus one, so zero can mean null
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      writeVarInt(out, 0);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(out, bytes.length + 1);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = readVarInt(in);
+    if (length == 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length - 1];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+}
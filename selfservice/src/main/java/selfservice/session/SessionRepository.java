@@ -0,0 +1,42 @@
+package selfservice.session;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Stores HTTP sessions outside of the servlet container, so any node can serve any request and sessions survive a
+ * redeploy. Implementations only store bytes, the attributes are encoded by the {@link SessionRepositoryFilter}.
+ */
+public interface SessionRepository {
+
+  /**
+   * @return the session, or empty when it does not exist or has expired
+   */
+  Optional<StoredSession> findById(String id);
+
+  /**
+   * Stores the session with all its attributes, replacing a stored session with the same id.
+   */
+  void save(StoredSession session);
+
+  /**
+   * Applies the attributes a request changed and removed to the stored session, while no other request can update
+   * it. Attributes other requests changed in the meantime are kept.
+   *
+   * @param changes the session with only the attributes that were changed
+   * @return the session with all its attributes after the update, or empty when it no longer exists
+   */
+  Optional<StoredSession> update(StoredSession changes, Set<String> removedAttributes);
+
+  /**
+   * Records that the session was used, without rewriting its attributes.
+   */
+  void touch(String id, long lastAccessedTime);
+
+  void delete(String id);
+
+  /**
+   * @return the number of expired sessions that were deleted
+   */
+  int deleteExpired();
+}
@@ -0,0 +1,468 @@
+package selfservice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+import selfservice.metrics.RequestTimings;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionContext;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Replaces the sessions of the servlet container with sessions kept in a {@link SessionRepository}, identified by a
+ * cookie.
+ * <p>
+ * A session is only loaded when the request asks for it, and only written back when it is new or one of its
+ * attributes encodes differently than when it was loaded. That also catches attributes that were changed in place,
+ * like the switched IdP of the user in the security context. Only the attributes a request changed or removed are
+ * merged into the stored session, so concurrent requests of the same browser don't undo each other's changes. Unchanged sessions only have their last access time
+ * updated, at most once per {@value #TOUCH_RESOLUTION_MILLIS} ms. Changes are saved just before the response is
+ * committed, so the next request of the browser finds them on every node.
+ */
+public class SessionRepositoryFilter extends OncePerRequestFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionRepositoryFilter.class);
+
+  private static final long TOUCH_RESOLUTION_MILLIS = 60_000;
+  private static final int ID_BYTES = 32;
+
+  private final SessionRepository repository;
+  private final SessionAttributeCodec codec;
+  private final int maxInactiveIntervalSeconds;
+  private final String cookieName;
+  private final SecureRandom random = new SecureRandom();
+
+  public SessionRepositoryFilter(SessionRepository repository, SessionAttributeCodec codec,
+                                 int maxInactiveIntervalSeconds, String cookieName) {
+    this.repository = repository;
+    this.codec = codec;
+    this.maxInactiveIntervalSeconds = maxInactiveIntervalSeconds;
+    this.cookieName = cookieName;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    SessionRequest sessionRequest = new SessionRequest(request, response);
+    try {
+      chain.doFilter(sessionRequest, new SessionResponse(response, sessionRequest));
+    } finally {
+      sessionRequest.commit();
+    }
+  }
+
+  private String newSessionId() {
+    byte[] bytes = new byte[ID_BYTES];
+    random.nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  private class SessionRequest extends HttpServletRequestWrapper {
+
+    private final HttpServletResponse response;
+    private final String requestedSessionId;
+
+    private RepositorySession session;
+    private boolean requestedSessionLoaded;
+    private boolean requestedSessionValid;
+    //The session id the browser has, null when it has none or after the cookie was removed
+    private String cookieSessionId;
+
+    private SessionRequest(HttpServletRequest request, HttpServletResponse response) {
+      super(request);
+      this.response = response;
+      this.requestedSessionId = Optional.ofNullable(request.getCookies())
+          .flatMap(cookies -> Stream.of(cookies).filter(cookie -> cookieName.equals(cookie.getName())).findFirst())
+          .map(Cookie::getValue)
+          .orElse(null);
+      this.cookieSessionId = requestedSessionId;
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+      if (session != null && !session.invalidated) {
+        return session;
+      }
+      if (!requestedSessionLoaded) {
+        requestedSessionLoaded = true;
+        if (requestedSessionId != null) {
+          Optional<StoredSession> stored;
+          try (RequestTimings.Span span = RequestTimings.start("session")) {
+            stored = repository.findById(requestedSessionId);
+          }
+          requestedSessionValid = stored.isPresent();
+          if (requestedSessionValid) {
+            session = new RepositorySession(stored.get(), false);
+            return session;
+          }
+        }
+      }
+      if (!create) {
+        return null;
+      }
+      long now = System.currentTimeMillis();
+      session = new RepositorySession(
+          new StoredSession(newSessionId(), now, now, maxInactiveIntervalSeconds, Collections.emptyMap()), true);
+      return session;
+    }
+
+    @Override
+    public HttpSession getSession() {
+      return getSession(true);
+    }
+
+    @Override
+    public String changeSessionId() {
+      HttpSession current = getSession(false);
+      if (current == null) {
+        throw new IllegalStateException("Cannot change the id of a session that does not exist");
+      }
+      return ((RepositorySession) current).changeId(newSessionId());
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+      return requestedSessionId;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+      getSession(false);
+      return requestedSessionValid;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+      return requestedSessionId != null;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+      return false;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean isRequestedSessionIdFromUrl() {
+      return false;
+    }
+
+    /*
+     * Called when the response is about to be committed and again at the end of the request, the second call only
+     * writes what changed in between.
+     */
+    private void commit() {
+      if (session != null && session.invalidated) {
+        session = null;
+      }
+      if (session != null) {
+        try (RequestTimings.Span span = RequestTimings.start("session")) {
+          persist();
+        }
+      }
+      if (!requestedSessionLoaded && session == null) {
+        return;
+      }
+      String sessionId = session != null && session.persisted ? session.id : null;
+      if (!Objects.equals(sessionId, cookieSessionId)) {
+        writeCookie(sessionId);
+        cookieSessionId = sessionId;
+      }
+    }
+
+    private void persist() {
+      long now = System.currentTimeMillis();
+      Map<String, byte[]> changed = session.changedAttributes();
+      Set<String> removed = session.removedAttributes();
+      if (!session.persisted || session.previousId != null) {
+        if (session.persisted || !changed.isEmpty()) {
+          Map<String, byte[]> attributes = new LinkedHashMap<>(session.stored);
+          attributes.keySet().removeAll(removed);
+          attributes.putAll(changed);
+          repository.save(new StoredSession(session.id, session.creationTime, now, session.maxInactiveInterval,
+              attributes));
+          session.saved(changed, attributes, now);
+        }
+      } else if (!changed.isEmpty() || !removed.isEmpty() || session.dirty) {
+        Optional<StoredSession> updated = repository.update(new StoredSession(session.id, session.creationTime, now,
+            session.maxInactiveInterval, changed), removed);
+        if (updated.isPresent()) {
+          session.saved(changed, updated.get().getAttributes(), now);
+        } else {
+          LOG.debug("Session {} was removed by another request", session.id);
+          session = null;
+          return;
+        }
+      } else if (now - session.lastAccessedTime >= TOUCH_RESOLUTION_MILLIS) {
+        repository.touch(session.id, now);
+        session.lastAccessedTime = now;
+      }
+      if (session.previousId != null) {
+        repository.delete(session.previousId);
+        session.previousId = null;
+      }
+    }
+
+    private void writeCookie(String sessionId) {
+      if (response.isCommitted()) {
+        LOG.warn("Response already committed, cannot set the session cookie for {}", getRequestURI());
+        return;
+      }
+      Cookie cookie = new Cookie(cookieName, sessionId == null ? "" : sessionId);
+      cookie.setPath(getContextPath().isEmpty() ? "/" : getContextPath());
+      cookie.setHttpOnly(true);
+      cookie.setSecure(isSecure());
+      cookie.setMaxAge(sessionId == null ? 0 : -1);
+      response.addCookie(cookie);
+    }
+
+    private class RepositorySession implements HttpSession {
+
+      private String id;
+      private String previousId;
+      private final long creationTime;
+      private long lastAccessedTime;
+      private int maxInactiveInterval;
+
+      private Map<String, byte[]> stored;
+      private final Map<String, Object> attributes = new HashMap<>();
+      private final Set<String> removed = new HashSet<>();
+
+      private final boolean isNew;
+      private boolean persisted;
+      //Changed without changing its attributes, e.g. a new id
+      private boolean dirty;
+      private boolean invalidated;
+
+      private RepositorySession(StoredSession session, boolean isNew) {
+        this.id = session.getId();
+        this.creationTime = session.getCreationTime();
+        this.lastAccessedTime = session.getLastAccessedTime();
+        this.maxInactiveInterval = session.getMaxInactiveIntervalSeconds();
+        this.stored = session.getAttributes();
+        this.isNew = isNew;
+        this.persisted = !isNew;
+      }
+
+      private String changeId(String newId) {
+        checkValid();
+        if (persisted && previousId == null) {
+          previousId = id;
+        }
+        id = newId;
+        dirty = persisted;
+        return newId;
+      }
+
+      /*
+       * The attributes that encode differently than they are stored. Only attributes that were read or set during
+       * this request are encoded again.
+       */
+      private Map<String, byte[]> changedAttributes() {
+        Map<String, byte[]> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+          byte[] encoded = codec.encode(attribute.getValue());
+          if (!Arrays.equals(stored.get(attribute.getKey()), encoded)) {
+            changed.put(attribute.getKey(), encoded);
+          }
+        }
+        return changed;
+      }
+
+      private Set<String> removedAttributes() {
+        return removed.stream().filter(stored::containsKey).collect(toSet());
+      }
+
+      /*
+       * Attributes this request only read, but another request changed in the meantime, are decoded again when used.
+       */
+      private void saved(Map<String, byte[]> written, Map<String, byte[]> attributes, long now) {
+        this.attributes.keySet().removeIf(name ->
+            !written.containsKey(name) && !Arrays.equals(stored.get(name), attributes.get(name)));
+        stored = attributes;
+        removed.clear();
+        lastAccessedTime = now;
+        persisted = true;
+        dirty = false;
+      }
+
+      @Override
+      public long getCreationTime() {
+        checkValid();
+        return creationTime;
+      }
+
+      @Override
+      public String getId() {
+        return id;
+      }
+
+      @Override
+      public long getLastAccessedTime() {
+        checkValid();
+        return lastAccessedTime;
+      }
+
+      @Override
+      public ServletContext getServletContext() {
+        return SessionRequest.this.getServletContext();
+      }
+
+      @Override
+      public void setMaxInactiveInterval(int interval) {
+        if (interval != maxInactiveInterval) {
+          maxInactiveInterval = interval;
+          dirty = persisted;
+        }
+      }
+
+      @Override
+      public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+      }
+
+      @Override
+      @Deprecated
+      public HttpSessionContext getSessionContext() {
+        return null;
+      }
+
+      @Override
+      public Object getAttribute(String name) {
+        checkValid();
+        if (attributes.containsKey(name) || removed.contains(name)) {
+          return attributes.get(name);
+        }
+        byte[] encoded = stored.get(name);
+        if (encoded == null) {
+          return null;
+        }
+        try {
+          Object value = codec.decode(encoded);
+          attributes.put(name, value);
+          return value;
+        } catch (IllegalArgumentException e) {
+          LOG.warn("Dropping session attribute {} of session {}: {}", name, id, e.getMessage());
+          removed.add(name);
+          return null;
+        }
+      }
+
+      @Override
+      @Deprecated
+      public Object getValue(String name) {
+        return getAttribute(name);
+      }
+
+      @Override
+      public Enumeration<String> getAttributeNames() {
+        checkValid();
+        Set<String> names = Stream.concat(stored.keySet().stream(), attributes.keySet().stream())
+            .filter(name -> !removed.contains(name))
+            .collect(toSet());
+        return Collections.enumeration(names);
+      }
+
+      @Override
+      @Deprecated
+      public String[] getValueNames() {
+        return Collections.list(getAttributeNames()).toArray(new String[0]);
+      }
+
+      @Override
+      public void setAttribute(String name, Object value) {
+        checkValid();
+        if (value == null) {
+          removeAttribute(name);
+          return;
+        }
+        if (!codec.canEncode(value)) {
+          throw new IllegalArgumentException(String.format("Session attribute %s of type %s is not serializable",
+              name, value.getClass().getName()));
+        }
+        attributes.put(name, value);
+        removed.remove(name);
+      }
+
+      @Override
+      @Deprecated
+      public void putValue(String name, Object value) {
+        setAttribute(name, value);
+      }
+
+      @Override
+      public void removeAttribute(String name) {
+        checkValid();
+        attributes.remove(name);
+        removed.add(name);
+      }
+
+      @Override
+      @Deprecated
+      public void removeValue(String name) {
+        removeAttribute(name);
+      }
+
+      @Override
+      public void invalidate() {
+        checkValid();
+        invalidated = true;
+        repository.delete(id);
+        if (previousId != null) {
+          repository.delete(previousId);
+        }
+      }
+
+      @Override
+      public boolean isNew() {
+        checkValid();
+        return isNew;
+      }
+
+      private void checkValid() {
+        if (invalidated) {
+          throw new IllegalStateException("Session " + id + " was invalidated");
+        }
+      }
+    }
+  }
+
+  private static class SessionResponse extends OnCommittedResponseWrapper {
+
+    private final SessionRequest request;
+
+    private SessionResponse(HttpServletResponse response, SessionRequest request) {
+      super(response);
+      this.request = request;
+    }
+
+    @Override
+    protected void onResponseCommitted() {
+      request.commit();
+    }
+  }
+}
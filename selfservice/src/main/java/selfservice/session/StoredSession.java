@@ -0,0 +1,56 @@
+package selfservice.session;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A session as kept by a {@link SessionRepository}, with its attributes in their encoded form.
+ */
+public class StoredSession {
+
+  private final String id;
+  private final long creationTime;
+  private final long lastAccessedTime;
+  private final int maxInactiveIntervalSeconds;
+  private final Map<String, byte[]> attributes;
+
+  public StoredSession(String id, long creationTime, long lastAccessedTime, int maxInactiveIntervalSeconds,
+                       Map<String, byte[]> attributes) {
+    this.id = id;
+    this.creationTime = creationTime;
+    this.lastAccessedTime = lastAccessedTime;
+    this.maxInactiveIntervalSeconds = maxInactiveIntervalSeconds;
+    this.attributes = Collections.unmodifiableMap(attributes);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public long getCreationTime() {
+    return creationTime;
+  }
+
+  public long getLastAccessedTime() {
+    return lastAccessedTime;
+  }
+
+  /**
+   * @return the number of seconds the session may be unused before it expires, a negative value means never
+   */
+  public int getMaxInactiveIntervalSeconds() {
+    return maxInactiveIntervalSeconds;
+  }
+
+  public Map<String, byte[]> getAttributes() {
+    return attributes;
+  }
+
+  public boolean isExpired(long now) {
+    return isExpired(lastAccessedTime, maxInactiveIntervalSeconds, now);
+  }
+
+  static boolean isExpired(long lastAccessedTime, int maxInactiveIntervalSeconds, long now) {
+    return maxInactiveIntervalSeconds >= 0 && now - lastAccessedTime >= maxInactiveIntervalSeconds * 1000L;
+  }
+}
@@ -2,28 +2,42 @@ package selfservice.shibboleth;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
 import org.springframework.util.StringUtils;
 import selfservice.domain.CoinAuthority;
 import selfservice.domain.CoinUser;
 import selfservice.domain.IdentityProvider;
+import selfservice.jfr.LoginEvent;
 import selfservice.manage.Manage;
+import selfservice.metrics.RequestTimings;
 import selfservice.sab.Sab;
 import selfservice.sab.SabRoleHolder;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
 import static org.springframework.util.CollectionUtils.isEmpty;
 import static org.springframework.util.StringUtils.hasText;
@@ -74,6 +88,8 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
     private String dashboardSuperUser;
     private String adminSurfConextIdpRole;
     private String viewerSurfConextIdpRole;
+    private Executor loginExecutor = MoreExecutors.directExecutor();
+    private long loginDeadlineMillis = TimeUnit.SECONDS.toMillis(3);
 
     public ShibbolethPreAuthenticatedProcessingFilter(AuthenticationManager authenticationManager,
                                                       Manage manage,
@@ -95,6 +111,22 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
 
     @Override
     protected Object getPreAuthenticatedPrincipal(final HttpServletRequest request) {
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        try (RequestTimings.Span span = RequestTimings.start("authentication")) {
+            CoinUser coinUser = resolvePrincipal(request);
+            if (event.shouldCommit()) {
+                event.idp = coinUser.getIdpId();
+                event.institutionIdps = coinUser.getInstitutionIdpIds().size();
+                event.authorities = coinUser.getAuthorities().stream().map(GrantedAuthority::getAuthority)
+                    .collect(joining(","));
+                event.commit();
+            }
+            return coinUser;
+        }
+    }
+
+    private CoinUser resolvePrincipal(final HttpServletRequest request) {
         String uid = getFirstShibHeaderValue(Name_Id, request)
             .orElseThrow(() -> new IllegalArgumentException(String.format("Missing name-id Shibboleth header (%s)",
                 request.getRequestURL())));
@@ -126,27 +158,33 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
             .collect(toMap(h -> h, h -> getShibHeaderValues(h, request)));
         coinUser.setAttributeMap(attributes);
 
+        long deadline = System.currentTimeMillis() + loginDeadlineMillis;
+
+        // SAB is slow, fetch the entitlements while resolving the institution in Manage on this thread
+        Future<Optional<SabRoleHolder>> sabRoles = fetchSabRoles(uid);
+
         List<String> groups = getShibHeaderValues(Shib_MemberOf, request);
         this.addDashboardRoleForMemberships(coinUser, groups);
 
-        Optional<SabRoleHolder> roles = sab.getRoles(uid);
+        List<IdentityProvider> institutionIdentityProviders = getInstitutionIdentityProviders(idpId);
+
+        Optional<SabRoleHolder> roles = awaitSabRoles(uid, sabRoles, deadline);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Received roles from SAB: {}", roles.isPresent() ? roles.get().getRoles() : "None");
         }
         this.addDashboardRoleForEntitlements(coinUser, roles);
 
-        List<IdentityProvider> institutionIdentityProviders = getInstitutionIdentityProviders(idpId);
-
         checkState(!isEmpty(institutionIdentityProviders), "no InstitutionIdentityProviders found for '" + idpId + "'");
 
         if (institutionIdentityProviders.size() == 1) {
             IdentityProvider idp = institutionIdentityProviders.get(0);
-            coinUser.setIdp(idp);
-            coinUser.addInstitutionIdp(idp);
+            coinUser.setIdpId(idp.getId());
+            coinUser.addInstitutionIdpId(idp.getId());
         } else {
-            coinUser.setIdp(getCurrentIdp(idpId, institutionIdentityProviders));
-            coinUser.getInstitutionIdps().addAll(institutionIdentityProviders);
-            Collections.sort(coinUser.getInstitutionIdps(), (lh, rh) -> lh.getName().compareTo(rh.getName()));
+            coinUser.setIdpId(getCurrentIdp(idpId, institutionIdentityProviders).getId());
+            institutionIdentityProviders.stream()
+                .sorted(Comparator.comparing(IdentityProvider::getName))
+                .forEach(idp -> coinUser.addInstitutionIdpId(idp.getId()));
         }
 
         institutionIdentityProviders.stream()
@@ -178,6 +216,37 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
         });
     }
 
+    /*
+     * A FutureTask, unlike a CompletableFuture, interrupts the SAB call when it is cancelled. When all login threads are
+     * busy the user logs in without the SAB entitlements rather than waiting for SAB on the request thread.
+     */
+    private Future<Optional<SabRoleHolder>> fetchSabRoles(String uid) {
+        FutureTask<Optional<SabRoleHolder>> sabRoles = new FutureTask<>(() -> sab.getRoles(uid));
+        try {
+            loginExecutor.execute(sabRoles);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Skipping SAB entitlements for {}, all login threads are busy", uid);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return sabRoles;
+    }
+
+    private Optional<SabRoleHolder> awaitSabRoles(String uid, Future<Optional<SabRoleHolder>> sabRoles, long deadline) {
+        try {
+            return sabRoles.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            sabRoles.cancel(true);
+            LOG.warn("Skipping SAB entitlements for {}, SAB did not respond within the login deadline of {} ms", uid, loginDeadlineMillis);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
     private List<IdentityProvider> getInstitutionIdentityProviders(String idpId) {
         return manage.getIdentityProvider(idpId, false).map(idp -> {
             String institutionId = idp.getInstitutionId();
@@ -227,4 +296,12 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
     public void setViewerSurfConextIdpRole(String viewerSurfConextIdpRole) {
         this.viewerSurfConextIdpRole = viewerSurfConextIdpRole;
     }
+
+    public void setLoginExecutor(Executor loginExecutor) {
+        this.loginExecutor = loginExecutor;
+    }
+
+    public void setLoginDeadlineMillis(long loginDeadlineMillis) {
+        this.loginDeadlineMillis = loginDeadlineMillis;
+    }
 }
@@ -0,0 +1,149 @@
+package selfservice.util;
+
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker. It opens when, over the last {@code windowSize} calls, the failure rate or the slow call
+ * rate reaches its threshold. After {@code openMillis} it lets a few probe calls through (half open) and closes again
+ * when all of them succeed.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final long slowCallThresholdMillis;
+  private final int slowCallRateThreshold;
+  private final long openMillis;
+  private final int halfOpenCalls;
+  private final LongSupplier clock;
+
+  private final boolean[] failures;
+  private final boolean[] slowCalls;
+  private int position;
+  private int recorded;
+  private int failureCount;
+  private int slowCallCount;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+
+  public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                        long slowCallThresholdMillis, int slowCallRateThreshold, long openMillis, int halfOpenCalls) {
+    this(name, windowSize, minimumCalls, failureRateThreshold, slowCallThresholdMillis, slowCallRateThreshold,
+      openMillis, halfOpenCalls, System::currentTimeMillis);
+  }
+
+  public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                        long slowCallThresholdMillis, int slowCallRateThreshold, long openMillis, int halfOpenCalls,
+                        LongSupplier clock) {
+    this.name = name;
+    this.windowSize = windowSize;
+    this.minimumCalls = Math.min(minimumCalls, windowSize);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallThresholdMillis = slowCallThresholdMillis;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.openMillis = openMillis;
+    this.halfOpenCalls = halfOpenCalls;
+    this.clock = clock;
+    this.failures = new boolean[windowSize];
+    this.slowCalls = new boolean[windowSize];
+  }
+
+  /**
+   * @return whether the call may proceed. Every permitted call must be followed by {@link #onResult(boolean, long)}.
+   */
+  public synchronized boolean tryAcquirePermission() {
+    if (state == State.OPEN) {
+      if (clock.getAsLong() - openedAt < openMillis) {
+        return false;
+      }
+      transitionTo(State.HALF_OPEN);
+    }
+    if (state == State.HALF_OPEN) {
+      if (halfOpenPermits >= halfOpenCalls) {
+        return false;
+      }
+      halfOpenPermits++;
+    }
+    return true;
+  }
+
+  public synchronized void onResult(boolean success, long durationMillis) {
+    boolean slow = durationMillis >= slowCallThresholdMillis;
+
+    if (state == State.HALF_OPEN) {
+      if (!success || slow) {
+        transitionTo(State.OPEN);
+      } else if (++halfOpenSuccesses >= halfOpenCalls) {
+        transitionTo(State.CLOSED);
+      }
+      return;
+    }
+    if (state == State.OPEN) {
+      return;
+    }
+
+    record(!success, slow);
+    if (recorded >= minimumCalls &&
+      (rate(failureCount) >= failureRateThreshold || rate(slowCallCount) >= slowCallRateThreshold)) {
+      transitionTo(State.OPEN);
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public synchronized Map<String, Object> details() {
+    return ImmutableMap.of(
+      "state", state.name(),
+      "calls", recorded,
+      "failureRate", rate(failureCount),
+      "slowCallRate", rate(slowCallCount));
+  }
+
+  private void record(boolean failure, boolean slow) {
+    if (recorded == windowSize) {
+      failureCount -= failures[position] ? 1 : 0;
+      slowCallCount -= slowCalls[position] ? 1 : 0;
+    } else {
+      recorded++;
+    }
+    failures[position] = failure;
+    slowCalls[position] = slow;
+    failureCount += failure ? 1 : 0;
+    slowCallCount += slow ? 1 : 0;
+    position = (position + 1) % windowSize;
+  }
+
+  private int rate(int count) {
+    return recorded == 0 ? 0 : count * 100 / recorded;
+  }
+
+  private void transitionTo(State newState) {
+    LOG.info("Circuit breaker {} changes from {} to {} ({})", name, state, newState, details());
+    state = newState;
+    halfOpenPermits = 0;
+    halfOpenSuccesses = 0;
+    if (newState == State.OPEN) {
+      openedAt = clock.getAsLong();
+    } else if (newState == State.CLOSED) {
+      position = recorded = failureCount = slowCallCount = 0;
+    }
+  }
+}
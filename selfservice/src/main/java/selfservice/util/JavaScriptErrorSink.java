@@ -0,0 +1,164 @@
+package selfservice.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the errors reported by browsers and logs them once per flush interval instead of once per report.
+ * <p>
+ * Errors with the same message and top of the stack share a fingerprint and are logged once with their count. Each
+ * session may report {@code maxReportsPerSession} errors per interval, and at most {@code maxFingerprints} different
+ * errors are kept per interval; anything beyond that is only counted. A broken release reported from many open tabs
+ * thus results in a handful of log lines per interval.
+ */
+public class JavaScriptErrorSink {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JavaScriptErrorSink.class);
+
+  private static final int STACK_LINES_IN_FINGERPRINT = 5;
+
+  private final int maxReportsPerSession;
+  private final int maxFingerprints;
+  private final String machine;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final Cache<String, AtomicInteger> reportsPerSession;
+  private final AtomicReference<Window> window = new AtomicReference<>(new Window());
+
+  public JavaScriptErrorSink(long flushIntervalMillis, int maxReportsPerSession, int maxFingerprints) {
+    this.maxReportsPerSession = maxReportsPerSession;
+    this.maxFingerprints = maxFingerprints;
+    this.reportsPerSession = CacheBuilder.newBuilder()
+        .expireAfterWrite(flushIntervalMillis, TimeUnit.MILLISECONDS)
+        .maximumSize(10_000)
+        .build();
+    this.machine = hostName();
+  }
+
+  /**
+   * @return {@code false} if the session reported too many errors and the error was ignored
+   */
+  public boolean report(String session, Map<String, Object> payload) {
+    if (!withinLimit(session)) {
+      window.get().rateLimited.increment();
+      return false;
+    }
+
+    Window current = window.get();
+    String fingerprint = fingerprint(payload);
+    Aggregate aggregate = current.errors.get(fingerprint);
+    if (aggregate == null) {
+      if (current.errors.size() >= maxFingerprints) {
+        current.overflow.increment();
+        return true;
+      }
+      aggregate = current.errors.computeIfAbsent(fingerprint, key -> new Aggregate(payload));
+    }
+    aggregate.count.increment();
+    aggregate.lastSeen = ZonedDateTime.now();
+    return true;
+  }
+
+  /**
+   * Logs the errors collected since the previous flush.
+   */
+  @PreDestroy
+  @Scheduled(fixedDelayString = "${jsErrors.flushIntervalMillis}")
+  public void flush() {
+    Window flushed = window.getAndSet(new Window());
+
+    flushed.errors.forEach((fingerprint, aggregate) -> {
+      Map<String, Object> entry = new LinkedHashMap<>(aggregate.payload);
+      entry.put("dateTime", aggregate.firstSeen.format(DateTimeFormatter.ISO_DATE_TIME));
+      entry.put("lastDateTime", aggregate.lastSeen.format(DateTimeFormatter.ISO_DATE_TIME));
+      entry.put("count", aggregate.count.sum());
+      entry.put("fingerprint", fingerprint);
+      entry.put("machine", machine);
+      try {
+        LOG.error(objectMapper.writeValueAsString(entry));
+      } catch (JsonProcessingException e) {
+        LOG.error("JavaScript error {} ({} times) could not be serialized: {}", fingerprint, aggregate.count.sum(),
+            e.getMessage());
+      }
+    });
+
+    long rateLimited = flushed.rateLimited.sum();
+    long overflow = flushed.overflow.sum();
+    if (rateLimited > 0 || overflow > 0) {
+      LOG.warn("Ignored {} JavaScript errors from sessions over their limit and {} beyond the {} distinct errors",
+          rateLimited, overflow, maxFingerprints);
+    }
+  }
+
+  private boolean withinLimit(String session) {
+    try {
+      return reportsPerSession.get(session, AtomicInteger::new).incrementAndGet() <= maxReportsPerSession;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /*
+   * The message and the first lines of the stack, the rest of the stack and the other details like the URL or user
+   * agent vary between occurrences of the same error.
+   */
+  private String fingerprint(Map<String, Object> payload) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putString(String.valueOf(payload.getOrDefault("message", payload.get("error"))), StandardCharsets.UTF_8);
+    Object stack = payload.get("stack");
+    if (stack != null) {
+      Iterables.limit(Splitter.on('\n').trimResults().omitEmptyStrings().split(stack.toString()),
+          STACK_LINES_IN_FINGERPRINT).forEach(line -> hasher.putString(line, StandardCharsets.UTF_8));
+    }
+    return hasher.hash().toString();
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "UNKNOWN";
+    }
+  }
+
+  private static class Window {
+    private final Map<String, Aggregate> errors = new ConcurrentHashMap<>();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+  }
+
+  private static class Aggregate {
+    private final Map<String, Object> payload;
+    private final ZonedDateTime firstSeen = ZonedDateTime.now();
+    private final LongAdder count = new LongAdder();
+    private volatile ZonedDateTime lastSeen = firstSeen;
+
+    private Aggregate(Map<String, Object> payload) {
+      this.payload = payload;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package selfservice.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedupes identical lookups within a single HTTP request. Outside of a request (e.g. in background threads) every
+ * lookup goes straight to the loader. When the request completes a summary of the avoided calls is logged.
+ */
+public class RequestScopedMemoizer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RequestScopedMemoizer.class);
+
+  private final String name;
+  private final String attributeName;
+
+  public RequestScopedMemoizer(String name) {
+    this.name = name;
+    this.attributeName = RequestScopedMemoizer.class.getName() + "." + name;
+  }
+
+  /**
+   * @param loader called at most once per request for each distinct key, a null result is not memoized
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T memoize(Supplier<T> loader, Object... key) {
+    Memo memo = currentMemo();
+    if (memo == null) {
+      return loader.get();
+    }
+    List<Object> cacheKey = Arrays.asList(key);
+    memo.lookups.incrementAndGet();
+
+    Object value = memo.values.get(cacheKey);
+    if (value != null) {
+      return (T) value;
+    }
+
+    memo.calls.incrementAndGet();
+    T loaded = loader.get();
+    if (loaded != null) {
+      memo.values.putIfAbsent(cacheKey, loaded);
+    }
+    return loaded;
+  }
+
+  private Memo currentMemo() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes == null) {
+      return null;
+    }
+    Memo memo = (Memo) attributes.getAttribute(attributeName, RequestAttributes.SCOPE_REQUEST);
+    if (memo == null) {
+      memo = new Memo();
+      attributes.setAttribute(attributeName, memo, RequestAttributes.SCOPE_REQUEST);
+      Memo completed = memo;
+      attributes.registerDestructionCallback(attributeName, () -> completed.logSummary(name), RequestAttributes.SCOPE_REQUEST);
+    }
+    return memo;
+  }
+
+  private static class Memo {
+    private final Map<List<Object>, Object> values = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private void logSummary(String name) {
+      int avoided = lookups.get() - calls.get();
+      LOG.debug("{}: {} lookups in request, {} remote calls made, {} avoided", name, lookups.get(), calls.get(), avoided);
+    }
+  }
+}
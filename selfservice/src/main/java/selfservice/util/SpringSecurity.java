@@ -63,7 +63,7 @@ public class SpringSecurity {
     }
     currentUser.removeAuthority(new CoinAuthority(Authority.ROLE_DASHBOARD_ADMIN));
     currentUser.removeAuthority(new CoinAuthority(Authority.ROLE_DASHBOARD_VIEWER));
-    SpringSecurity.getCurrentUser().setSwitchedToIdp(null);
+    SpringSecurity.getCurrentUser().setSwitchedToIdpId(null);
   }
 
   public static void setSwitchedToIdp(IdentityProvider idp, String role) {
@@ -74,18 +74,15 @@ public class SpringSecurity {
       currentUser.addAuthority(new CoinAuthority(Authority.valueOf(role)));
     }
 
-    SpringSecurity.getCurrentUser().setSwitchedToIdp(idp);
+    SpringSecurity.getCurrentUser().setSwitchedToIdpId(idp.getId());
   }
 
   public static IdentityProvider validateIdp(IdentityProvider idp) {
-    if (SpringSecurity.getCurrentUser().isSuperUser()) {
+    CoinUser currentUser = SpringSecurity.getCurrentUser();
+    if (currentUser.isSuperUser() || currentUser.isInstitutionIdp(idp.getId())) {
       return idp;
-    } else {
-      return SpringSecurity.getCurrentUser().getInstitutionIdps().stream()
-          .filter(provider -> provider.getId().equals(idp.getId()))
-          .findFirst()
-          .orElseThrow(() -> new SecurityException(idp.getId() + " is unknown for " + SpringSecurity.getCurrentUser().getUsername()));
     }
+    throw new SecurityException(idp.getId() + " is unknown for " + currentUser.getUsername());
   }
 
 }
@@ -0,0 +1,269 @@
+package selfservice.util.mail;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMailMessage;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends mail on a dedicated thread, so the request that triggered it does not wait for the SMTP server.
+ * <p>
+ * Messages wait in a bounded queue and are sent in batches over one SMTP connection. A failed batch is retried with
+ * exponential backoff, messages that still fail after {@code maxAttempts} are logged and dropped. What happens when
+ * the queue is full is decided by the {@link OverflowPolicy}.
+ */
+public class QueueingEmailer implements Emailer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(QueueingEmailer.class);
+
+  private static final long DRAIN_TIMEOUT_MILLIS = 10_000;
+
+  public enum OverflowPolicy {
+    /** Send the message on the calling thread, slowing down the callers instead of losing mail. */
+    CALLER_RUNS,
+    /** Drop the message that did not fit. */
+    DROP_NEWEST,
+    /** Drop the message that waited longest to make room. */
+    DROP_OLDEST
+  }
+
+  private final JavaMailSender mailSender;
+  private final BlockingQueue<Queued> queue;
+  private final int batchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final int maxAttempts;
+  private final CounterService counterService;
+  private final GaugeService gaugeService;
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("mail-%d").setDaemon(true).build());
+  private final Deque<Queued> retries = new ArrayDeque<>();
+  private volatile boolean running;
+
+  public QueueingEmailer(JavaMailSender mailSender, int capacity, int batchSize, OverflowPolicy overflowPolicy,
+                         long initialBackoffMillis, long maxBackoffMillis, int maxAttempts,
+                         CounterService counterService, GaugeService gaugeService) {
+    this.mailSender = mailSender;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.overflowPolicy = overflowPolicy;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.maxAttempts = maxAttempts;
+    this.counterService = counterService;
+    this.gaugeService = gaugeService;
+  }
+
+  public synchronized void start() {
+    if (!running) {
+      running = true;
+      executor.execute(this::deliver);
+    }
+  }
+
+  /**
+   * Stops the delivery after waiting at most {@value #DRAIN_TIMEOUT_MILLIS} ms for the queued messages to be sent.
+   */
+  public void shutdown() throws InterruptedException {
+    running = false;
+    executor.shutdown();
+    if (!executor.awaitTermination(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      executor.shutdownNow();
+      LOG.warn("Stopped with {} mail messages still queued", queue.size() + retries.size());
+    }
+  }
+
+  @Override
+  public void sendAsync(SimpleMailMessage msg) throws MailException {
+    Queued queued = new Queued(msg);
+    while (!queue.offer(queued)) {
+      counterService.increment("counter.mail.overflow");
+      switch (overflowPolicy) {
+        case CALLER_RUNS:
+          mailSender.send(msg);
+          counterService.increment("counter.mail.sent");
+          return;
+        case DROP_NEWEST:
+          drop(queued, "the mail queue is full");
+          return;
+        case DROP_OLDEST:
+          Queued oldest = queue.poll();
+          if (oldest != null) {
+            drop(oldest, "the mail queue is full");
+          }
+          break;
+        default:
+          throw new IllegalStateException("Unknown overflow policy " + overflowPolicy);
+      }
+    }
+    gaugeService.submit("gauge.mail.queue", queue.size());
+  }
+
+  /**
+   * Connects to the SMTP server when the sender supports it, other senders are assumed to be available.
+   */
+  public boolean isAvailable() {
+    if (!(mailSender instanceof JavaMailSenderImpl)) {
+      return true;
+    }
+    try {
+      ((JavaMailSenderImpl) mailSender).testConnection();
+      return true;
+    } catch (MessagingException e) {
+      LOG.warn("Mail server was not available: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  private void deliver() {
+    int failedBatches = 0;
+    try {
+      while (running || !queue.isEmpty() || !retries.isEmpty()) {
+        List<Queued> batch = nextBatch();
+        if (batch.isEmpty()) {
+          continue;
+        }
+        List<Queued> failed = send(batch);
+        if (failed.isEmpty()) {
+          failedBatches = 0;
+          continue;
+        }
+        failed.forEach(this::retryOrDrop);
+        if (!retries.isEmpty()) {
+          failedBatches++;
+          Thread.sleep(backoff(failedBatches));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private List<Queued> nextBatch() throws InterruptedException {
+    List<Queued> batch = new ArrayList<>(batchSize);
+    while (batch.size() < batchSize && !retries.isEmpty()) {
+      batch.add(retries.poll());
+    }
+    if (batch.isEmpty()) {
+      Queued first = queue.poll(100, TimeUnit.MILLISECONDS);
+      if (first == null) {
+        return batch;
+      }
+      batch.add(first);
+    }
+    queue.drainTo(batch, batchSize - batch.size());
+    gaugeService.submit("gauge.mail.queue", queue.size());
+    return batch;
+  }
+
+  /*
+   * Sends the batch over one connection and returns the messages that failed. The messages are converted here so the
+   * failures reported by the sender can be traced back to them.
+   */
+  private List<Queued> send(List<Queued> batch) {
+    Map<MimeMessage, Queued> byMimeMessage = new LinkedHashMap<>();
+    List<Queued> failed = new ArrayList<>();
+    for (Queued queued : batch) {
+      try {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        queued.message.copyTo(new MimeMailMessage(mimeMessage));
+        byMimeMessage.put(mimeMessage, queued);
+      } catch (MailException e) {
+        queued.lastError = e;
+        queued.attempts = maxAttempts;
+        failed.add(queued);
+      }
+    }
+    if (byMimeMessage.isEmpty()) {
+      return failed;
+    }
+
+    long start = System.currentTimeMillis();
+    try {
+      mailSender.send(byMimeMessage.keySet().toArray(new MimeMessage[byMimeMessage.size()]));
+    } catch (MailSendException e) {
+      Map<Object, Exception> failedMessages = e.getFailedMessages();
+      if (failedMessages.isEmpty()) {
+        failAll(byMimeMessage, e, failed);
+      } else {
+        failedMessages.forEach((mimeMessage, error) -> {
+          Queued queued = byMimeMessage.remove(mimeMessage);
+          if (queued != null) {
+            queued.lastError = error;
+            failed.add(queued);
+          }
+        });
+      }
+    } catch (MailException e) {
+      failAll(byMimeMessage, e, failed);
+    }
+    gaugeService.submit("timer.mail.send", System.currentTimeMillis() - start);
+
+    long now = System.currentTimeMillis();
+    byMimeMessage.values().forEach(sent -> {
+      counterService.increment("counter.mail.sent");
+      gaugeService.submit("timer.mail.latency", now - sent.queuedAt);
+    });
+    return failed;
+  }
+
+  private void failAll(Map<MimeMessage, Queued> byMimeMessage, Exception error, List<Queued> failed) {
+    byMimeMessage.values().forEach(queued -> queued.lastError = error);
+    failed.addAll(byMimeMessage.values());
+    byMimeMessage.clear();
+  }
+
+  private void retryOrDrop(Queued queued) {
+    queued.attempts++;
+    if (queued.attempts < maxAttempts) {
+      counterService.increment("counter.mail.retried");
+      retries.add(queued);
+    } else {
+      drop(queued, "sending failed " + queued.attempts + " times: " + queued.lastError);
+    }
+  }
+
+  private void drop(Queued queued, String reason) {
+    counterService.increment("counter.mail.dropped");
+    LOG.error("Dropped mail to {} with subject '{}', {}", queued.message.getTo(), queued.message.getSubject(), reason);
+  }
+
+  private long backoff(int failedBatches) {
+    long backoff = initialBackoffMillis << Math.min(failedBatches - 1, 30);
+    return backoff < 0 ? maxBackoffMillis : Math.min(maxBackoffMillis, backoff);
+  }
+
+  private static class Queued {
+    private final SimpleMailMessage message;
+    private final long queuedAt = System.currentTimeMillis();
+    private int attempts;
+    private Exception lastError;
+
+    private Queued(SimpleMailMessage message) {
+      this.message = message;
+    }
+  }
+}
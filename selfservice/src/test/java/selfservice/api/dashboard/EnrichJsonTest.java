@@ -6,6 +6,7 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
 import static selfservice.api.dashboard.EnrichJson.FILTERED_USER_ATTRIBUTES;
 import static selfservice.shibboleth.ShibbolethHeader.Shib_DisplayName;
 import static selfservice.shibboleth.ShibbolethHeader.Shib_Email;
@@ -21,6 +22,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import org.junit.Before;
 import org.junit.Test;
 
 import selfservice.domain.ARP;
@@ -28,6 +30,8 @@ import selfservice.domain.CoinAuthority;
 import selfservice.domain.CoinAuthority.Authority;
 import selfservice.domain.CoinUser;
 import selfservice.domain.Service;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.manage.Manage;
 
 public class EnrichJsonTest {
 
@@ -37,12 +41,20 @@ public class EnrichJsonTest {
 
   private boolean statsEnabled = true;
 
+  private Manage manage = mock(Manage.class);
+  private IdentityProviderCache identityProviders = new IdentityProviderCache(manage);
+
+  @Before
+  public void before() {
+    RestDataFixture.identityProviders(manage, entityId -> !entityId.equals("unknown"));
+  }
+
   @Test
   public void testAddsStatsUrlToCoinUser() throws Exception {
     CoinUser coinUser = RestDataFixture.coinUser("ben");
     JsonElement jsonElement = createJsonResponse(coinUser);
 
-    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL).json(jsonElement).forPayload(coinUser);
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(coinUser);
 
     assertEquals(STATS_URL, getPayloadAsJsonObjectFromRoot(jsonElement).getAsJsonPrimitive("statsUrl").getAsString());
   }
@@ -52,17 +64,41 @@ public class EnrichJsonTest {
     CoinUser coinUser = RestDataFixture.coinUser("ben");
     JsonElement jsonElement = createJsonResponse(coinUser);
 
-    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL).json(jsonElement).forPayload(coinUser);
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(coinUser);
 
     assertFalse(getPayloadAsJsonObjectFromRoot(jsonElement).getAsJsonPrimitive("superUser").getAsBoolean());
   }
 
+  @Test
+  public void testAddsIdentityProvidersToCoinUser() throws Exception {
+    CoinUser coinUser = RestDataFixture.coinUser("ben", "idp-1", "idp-2");
+    coinUser.setIdpId("idp-1");
+    JsonElement jsonElement = createJsonResponse(coinUser);
+
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(coinUser);
+
+    JsonObject user = getPayloadAsJsonObjectFromRoot(jsonElement);
+    assertEquals("idp-1", user.getAsJsonObject("currentIdp").get("id").getAsString());
+    assertEquals("institution id", user.getAsJsonObject("currentIdp").get("institutionId").getAsString());
+    assertFalse(user.has("switchedToIdp"));
+    assertEquals(2, user.getAsJsonArray("institutionIdps").size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownCurrentIdpIsAnError() throws Exception {
+    CoinUser coinUser = RestDataFixture.coinUser("ben", "idp-1");
+    coinUser.setIdpId("unknown");
+    JsonElement jsonElement = createJsonResponse(coinUser);
+
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(coinUser);
+  }
+
   @Test
   public void testAddDashboardAdminToCoinUser() throws Exception {
     CoinUser coinUser = RestDataFixture.coinUser("ben");
     JsonElement jsonElement = createJsonResponse(coinUser);
 
-    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL).json(jsonElement).forPayload(coinUser);
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(coinUser);
 
     assertFalse(getPayloadAsJsonObjectFromRoot(jsonElement).getAsJsonPrimitive("dashboardAdmin").getAsBoolean());
   }
@@ -83,7 +119,7 @@ public class EnrichJsonTest {
 
     List<Service> payload = asList(service1, service2);
     JsonElement jsonElement = createJsonResponse(payload);
-    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL).json(jsonElement).forPayload(payload);
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(payload);
 
     assertEquals(0, getServiceFromRoot(jsonElement, 0).getAsJsonArray(FILTERED_USER_ATTRIBUTES).size());
     assertEquals(1, getServiceFromRoot(jsonElement, 1).getAsJsonArray(FILTERED_USER_ATTRIBUTES).size());
@@ -103,7 +139,7 @@ public class EnrichJsonTest {
     });
 
     JsonElement jsonElement = createJsonResponse(service1);
-    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL).json(jsonElement).forPayload(service1);
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(service1);
 
     assertEquals(1, getPayloadAsJsonObjectFromRoot(jsonElement).getAsJsonArray(FILTERED_USER_ATTRIBUTES).size());
   }
@@ -115,7 +151,7 @@ public class EnrichJsonTest {
     coinUser.addAuthority(new CoinAuthority(Authority.ROLE_DASHBOARD_ADMIN));
 
     JsonElement jsonElement = createJsonResponse(coinUser);
-    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL).json(jsonElement).forPayload(coinUser);
+    EnrichJson.forUser(this.statsEnabled, coinUser, STATS_URL, identityProviders).json(jsonElement).forPayload(coinUser);
 
     List<JsonElement> authorities = Lists.newArrayList(getPayloadAsJsonObjectFromRoot(jsonElement).getAsJsonArray
       ("grantedAuthorities"));
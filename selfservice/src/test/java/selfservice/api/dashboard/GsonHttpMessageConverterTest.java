@@ -3,18 +3,31 @@ package selfservice.api.dashboard;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import selfservice.domain.Category;
 import selfservice.domain.CategoryValue;
+import selfservice.domain.CoinUser;
+import selfservice.jfr.SerializationEvent;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.manage.Manage;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.MediaType;
 import org.springframework.mock.http.MockHttpOutputMessage;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
 
 public class GsonHttpMessageConverterTest {
   private GsonHttpMessageConverter converter;
@@ -23,8 +36,9 @@ public class GsonHttpMessageConverterTest {
   @Before
   public void setUp() throws Exception {
     outputMessage = new MockHttpOutputMessage();
+    Manage manage = mock(Manage.class);
     converter = new GsonHttpMessageConverter("https://foo", "oauth/authorize.php",
-        "bar", "scope", "/foobar", true);
+        "bar", "scope", "/foobar", true, new IdentityProviderCache(manage));
   }
 
   @Test
@@ -45,4 +59,27 @@ public class GsonHttpMessageConverterTest {
     converter.write(RestResponse.of(Locale.ENGLISH, categoryValue), MediaType.APPLICATION_JSON, outputMessage);
     assertNotNull(outputMessage.getBodyAsString());
   }
+
+  @Test
+  public void recordsSerializationEvent() throws Exception {
+    Path file = Files.createTempFile("serialization", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(SerializationEvent.class).withoutThreshold();
+      recording.start();
+      converter.write(RestResponse.of(Locale.ENGLISH, RestDataFixture.coinUser("foo", "2", "3")),
+          MediaType.APPLICATION_JSON, outputMessage);
+      recording.stop();
+      recording.dump(file);
+
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+          .filter(event -> event.getEventType().getName().equals("selfservice.Serialization"))
+          .collect(toList());
+      assertEquals(1, events.size());
+      assertEquals(CoinUser.class.getName(), events.get(0).getString("payloadClass"));
+      assertEquals(outputMessage.getBodyAsString().getBytes(StandardCharsets.UTF_8).length,
+          events.get(0).getLong("bytes"));
+    } finally {
+      Files.delete(file);
+    }
+  }
 }
@@ -14,17 +14,22 @@ import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.read.ListAppender;
+import selfservice.util.JavaScriptErrorSink;
 
 public class JavaScriptErrorControllerTest {
 
   private JavaScriptErrorController controller = new JavaScriptErrorController();
 
+  private JavaScriptErrorSink sink = new JavaScriptErrorSink(60_000, 2, 10);
+
   private ListAppender<ILoggingEvent> listAppender;
   private MockMvc mockMvc;
 
@@ -36,9 +41,11 @@ public class JavaScriptErrorControllerTest {
     listAppender.setContext(loggerContext);
     listAppender.start();
 
-    Logger logger = (Logger) LoggerFactory.getLogger(JavaScriptErrorController.class);
+    Logger logger = (Logger) LoggerFactory.getLogger(JavaScriptErrorSink.class);
     logger.addAppender(listAppender);
 
+    ReflectionTestUtils.setField(controller, "javaScriptErrorSink", sink);
+
     this.mockMvc = standaloneSetup(controller)
       .dispatchOptions(true).build();
   }
@@ -47,6 +54,7 @@ public class JavaScriptErrorControllerTest {
   public void testReportError() throws Exception {
     mockMvc.perform(post("/dashboard/api/jsError").contentType(APPLICATION_JSON).content("{\"error\": \"whoops\"}"))
       .andExpect(status().isOk());
+    sink.flush();
 
     List<ILoggingEvent> logs = listAppender.list;
 
@@ -57,4 +65,18 @@ public class JavaScriptErrorControllerTest {
     assertThat(error.getFormattedMessage(), containsString("dateTime"));
     assertThat(error.getFormattedMessage(), containsString("" + Year.now().getValue()));
   }
+
+  @Test
+  public void testRateLimitsSession() throws Exception {
+    MockHttpSession session = new MockHttpSession();
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(post("/dashboard/api/jsError").session(session).contentType(APPLICATION_JSON)
+        .content("{\"error\": \"whoops\"}"))
+        .andExpect(status().isOk());
+    }
+
+    mockMvc.perform(post("/dashboard/api/jsError").session(session).contentType(APPLICATION_JSON)
+      .content("{\"error\": \"whoops\"}"))
+      .andExpect(status().isTooManyRequests());
+  }
 }
@@ -1,11 +1,18 @@
 package selfservice.api.dashboard;
 
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toMap;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.when;
 import static selfservice.shibboleth.ShibbolethHeader.Name_Id;
 
 import selfservice.domain.CoinUser;
 import selfservice.domain.IdentityProvider;
 import selfservice.domain.Service;
+import selfservice.manage.Manage;
+
+import java.util.Collection;
+import java.util.function.Predicate;
 
 public class RestDataFixture {
 
@@ -29,8 +36,7 @@ public class RestDataFixture {
     coinUser.setUid(uid);
     coinUser.addAttribute(Name_Id, singletonList(uid));
     for (String idp : idpIds) {
-      coinUser.addInstitutionIdp(new IdentityProvider(idp, "institution id", "name", 1L));
-      coinUser.addInstitutionIdp(new IdentityProvider(idp, "institution id", "name", 2L));
+      coinUser.addInstitutionIdpId(idp);
     }
     return coinUser;
   }
@@ -38,4 +44,14 @@ public class RestDataFixture {
   public static IdentityProvider idp(String idp) {
     return new IdentityProvider(idp, "institution id", "name", 1L);
   }
+
+  /**
+   * Lets the bulk IdP lookup of the mock find the {@link #idp(String)} of every entity id that exists.
+   */
+  @SuppressWarnings("unchecked")
+  public static void identityProviders(Manage manage, Predicate<String> exists) {
+    when(manage.getIdentityProvidersByEntityIds(anyCollectionOf(String.class))).thenAnswer(invocation ->
+      ((Collection<String>) invocation.getArguments()[0]).stream().filter(exists)
+        .collect(toMap(entityId -> entityId, RestDataFixture::idp)));
+  }
 }
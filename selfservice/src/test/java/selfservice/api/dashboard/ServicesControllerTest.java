@@ -9,6 +9,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import selfservice.domain.Action;
 import selfservice.domain.CoinAuthority;
@@ -18,6 +19,7 @@ import selfservice.domain.Service;
 import selfservice.filter.EnsureAccessToIdpFilter;
 import selfservice.filter.SpringSecurityUtil;
 import selfservice.manage.EntityType;
+import selfservice.manage.IdentityProviderCache;
 import selfservice.manage.Manage;
 import selfservice.service.ActionsService;
 import selfservice.service.Services;
@@ -68,24 +70,27 @@ public class ServicesControllerTest {
         controller.localeResolver = new CookieThenAcceptHeaderLocaleResolver();
 
         EnsureAccessToIdpFilter ensureAccessToIdp = new EnsureAccessToIdpFilter(manageMock);
+        IdentityProviderCache identityProviderCache = new IdentityProviderCache(manageMock);
+        ReflectionTestUtils.setField(controller, "identityProviderCache", identityProviderCache);
 
         mockMvc = standaloneSetup(controller)
             .setMessageConverters(new GsonHttpMessageConverter("http:://example.com",
                 "oauth/authorize.php", "stats-client-id", "stats-scope",
-                "stats-redirect", true))
+                "stats-redirect", true, identityProviderCache))
             .addFilter(ensureAccessToIdp, "/*")
             .build();
 
         IdentityProvider institutionIdentityProvider = new IdentityProvider(IDP_ENTITY_ID, "institution id", "name",
             1L);
 
-        coinUser.addInstitutionIdp(institutionIdentityProvider);
-        coinUser.setIdp(institutionIdentityProvider);
+        coinUser.addInstitutionIdpId(IDP_ENTITY_ID);
+        coinUser.setIdpId(IDP_ENTITY_ID);
 
         SpringSecurityUtil.setAuthentication(coinUser);
 
         when(manageMock.getIdentityProvider(anyString(), anyBoolean())).thenReturn(Optional.empty());
         when(manageMock.getIdentityProvider(IDP_ENTITY_ID, false)).thenReturn(Optional.of(institutionIdentityProvider));
+        RestDataFixture.identityProviders(manageMock, IDP_ENTITY_ID::equals);
         when(servicesMock.getServicesForIdp(IDP_ENTITY_ID, Locale.ENGLISH)).thenReturn(services);
     }
 
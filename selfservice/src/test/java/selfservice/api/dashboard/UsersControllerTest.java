@@ -14,6 +14,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -23,6 +24,8 @@ import selfservice.domain.*;
 import selfservice.domain.CoinAuthority.Authority;
 import selfservice.filter.EnsureAccessToIdpFilter;
 import selfservice.filter.SpringSecurityUtil;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.manage.IdentityProviderSummaries;
 import selfservice.manage.Manage;
 import selfservice.service.ActionsService;
 import selfservice.service.Services;
@@ -47,6 +50,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import static selfservice.api.dashboard.Constants.HTTP_X_IDP_ENTITY_ID;
 import static selfservice.api.dashboard.RestDataFixture.coinUser;
+import static selfservice.api.dashboard.RestDataFixture.identityProviders;
 import static selfservice.api.dashboard.RestDataFixture.idp;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -63,6 +67,8 @@ public class UsersControllerTest {
     private Services services;
     @Mock
     private ActionsService actionsService;
+    @Mock
+    private IdentityProviderSummaries identityProviderSummaries;
 
     private MockMvc mockMvc;
 
@@ -71,19 +77,24 @@ public class UsersControllerTest {
         controller.localeResolver = new CookieThenAcceptHeaderLocaleResolver();
 
         EnsureAccessToIdpFilter ensureAccessToIdp = new EnsureAccessToIdpFilter(manage);
+        IdentityProviderCache identityProviderCache = new IdentityProviderCache(manage);
+        ReflectionTestUtils.setField(controller, "identityProviderCache", identityProviderCache);
 
         mockMvc = standaloneSetup(controller)
             .setMessageConverters(new GsonHttpMessageConverter("", "", "",
-                "", "", true))
+                "", "", true, identityProviderCache))
             .addFilter(ensureAccessToIdp, "/*")
             .build();
 
         SpringSecurityUtil.setAuthentication(coinUser);
 
+        identityProviders(manage, entityId -> true);
         when(manage.getIdentityProvider(anyString(), anyBoolean())).thenAnswer(answer -> Optional.of(idp((String) answer
             .getArguments()[0])));
         when(manage.getAllIdentityProviders()).thenReturn(ImmutableList.of(idp(BAR_IDP_ENTITY_ID), idp
             (FOO_IDP_ENTITY_ID)));
+        when(identityProviderSummaries.getSortedJson()).thenReturn(
+            "[{\"id\":\"bar\",\"name\":\"name\"},{\"id\":\"foo\",\"name\":\"name\"}]".getBytes());
        when(services.getInstitutionalServicesForIdp("my-institution-id", Locale.ENGLISH)).thenReturn(singletonList(service()));
 
         RequestAttributes requestAttributes = new ServletRequestAttributes(new MockHttpServletRequest());
@@ -117,8 +128,9 @@ public class UsersControllerTest {
         mockMvc.perform(get("/dashboard/api/users/super/idps")
             .contentType(MediaType.APPLICATION_JSON).header(HTTP_X_IDP_ENTITY_ID, FOO_IDP_ENTITY_ID))
             .andExpect(status().isOk())
-            .andExpect(jsonPath("$.payload.idps").exists())
-            .andExpect(jsonPath("$.payload.roles").exists());
+            .andExpect(jsonPath("$.payload.idps[1].id").value(FOO_IDP_ENTITY_ID))
+            .andExpect(jsonPath("$.payload.roles[0]").value(Authority.ROLE_DASHBOARD_VIEWER.name()))
+            .andExpect(jsonPath("$.language").exists());
     }
 
     @Test
@@ -134,27 +146,27 @@ public class UsersControllerTest {
     public void thatIdpCanBeSwitchedToEmpty() throws Exception {
         coinUser.setAuthorities(Sets.newHashSet(new CoinAuthority(Authority.ROLE_DASHBOARD_SUPER_USER), new
             CoinAuthority(Authority.ROLE_DASHBOARD_ADMIN)));
-        coinUser.setSwitchedToIdp(new IdentityProvider("idp-id", "idp-institution-id", "idp-name", 1L));
+        coinUser.setSwitchedToIdpId("idp-id");
 
         mockMvc.perform(get("/dashboard/api/users/me/switch-to-idp")
             .contentType(MediaType.APPLICATION_JSON).header(HTTP_X_IDP_ENTITY_ID, FOO_IDP_ENTITY_ID))
             .andExpect(status().isNoContent());
 
         assertThat(coinUser.getAuthorities(), contains(new CoinAuthority(Authority.ROLE_DASHBOARD_SUPER_USER)));
-        assertThat(coinUser.getSwitchedToIdp(), is(Optional.empty()));
+        assertThat(coinUser.getSwitchedToIdpId(), is(Optional.empty()));
     }
 
     @Test
     public void nonSuperUserCanSwitchIdpWithoutSpecifyingTheRole() throws Exception {
         coinUser.setAuthorities(Sets.newHashSet(new CoinAuthority(Authority.ROLE_DASHBOARD_ADMIN)));
-        coinUser.setSwitchedToIdp(new IdentityProvider("idp-id", "idp-institution-id", "idp-name", 1L));
+        coinUser.setSwitchedToIdpId("idp-id");
 
         mockMvc.perform(get("/dashboard/api/users/me/switch-to-idp?idpId=" + BAR_IDP_ENTITY_ID)
             .contentType(MediaType.APPLICATION_JSON).header(HTTP_X_IDP_ENTITY_ID, FOO_IDP_ENTITY_ID))
             .andExpect(status().isNoContent());
 
         assertThat(coinUser.getAuthorities(), contains(new CoinAuthority(Authority.ROLE_DASHBOARD_ADMIN)));
-        assertThat(coinUser.getSwitchedToIdp().get().getId(), is(BAR_IDP_ENTITY_ID));
+        assertThat(coinUser.getSwitchedToIdpId().get(), is(BAR_IDP_ENTITY_ID));
     }
 
     @Test
@@ -216,7 +228,7 @@ public class UsersControllerTest {
     public void updateSettings() throws IOException {
         CoinUser user = new CoinUser();
         IdentityProvider idp = new IdentityProvider("id", "institutionId", "name", 1L);
-        user.setIdp(idp);
+        user.setIdpId(idp.getId());
         user.setInstitutionId(idp.getInstitutionId());
         SpringSecurityUtil.setAuthentication(user);
 
@@ -237,7 +249,9 @@ public class UsersControllerTest {
         service.setSpEntityId("spEntityId");
         servicesOfIdp.add(service);
 
-        when(services.getInstitutionalServicesForIdp(idp.getInstitutionId(),Locale.ENGLISH)).thenReturn(servicesOfIdp);
+         when(identityProviderSummaries.getSortedJson()).thenReturn(
+            "[{\"id\":\"bar\",\"name\":\"name\"},{\"id\":\"foo\",\"name\":\"name\"}]".getBytes());
+       when(services.getInstitutionalServicesForIdp(idp.getInstitutionId(),Locale.ENGLISH)).thenReturn(servicesOfIdp);
 
         List<Change> changes = controller.getChanges(Locale.ENGLISH, settings, idp);
         assertEquals(2, changes.size());
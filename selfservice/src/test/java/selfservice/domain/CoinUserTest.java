@@ -3,11 +3,16 @@ package selfservice.domain;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static selfservice.shibboleth.ShibbolethHeader.Shib_DisplayName;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Collections;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
@@ -18,6 +23,8 @@ import org.junit.Test;
 import org.springframework.mock.env.MockEnvironment;
 import selfservice.api.dashboard.EnrichJson;
 import selfservice.api.dashboard.RestResponse;
+import selfservice.manage.IdentityProviderCache;
+import selfservice.manage.Manage;
 
 public class CoinUserTest {
 
@@ -32,7 +39,7 @@ public class CoinUserTest {
     coinUser = new CoinUser();
     coinUser.addAttribute(Shib_DisplayName, Arrays.asList("bar"));
     coinUser.addAuthority(new CoinAuthority(CoinAuthority.Authority.ROLE_DASHBOARD_ADMIN));
-    coinUser.addInstitutionIdp(new IdentityProvider("id", "institutionId", "name", 1L));
+    coinUser.addInstitutionIdpId("id");
     coinUser.setDisplayName("foobar");
   }
 
@@ -47,8 +54,29 @@ public class CoinUserTest {
   @Test
   public void testSerializeToJson() {
     JsonElement json = gson.toJsonTree(RestResponse.of(Locale.ENGLISH, coinUser));
-    EnrichJson.forUser(true, coinUser, "/foo").json(json).forPayload(coinUser);
+    Manage manage = mock(Manage.class);
+    when(manage.getIdentityProvidersByEntityIds(Collections.singletonList("id"))).thenReturn(
+        Collections.singletonMap("id", new IdentityProvider("id", "institutionId", "name", 1L)));
+
+    EnrichJson.forUser(true, coinUser, "/foo", new IdentityProviderCache(manage)).json(json).forPayload(coinUser);
     assertNotNull(json);
   }
 
+  @Test
+  public void testSessionSizeIsIndependentOfIdpMetadata() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      coinUser.addInstitutionIdpId("https://idp.example.org/" + i);
+    }
+    coinUser.setIdpId("https://idp.example.org/0");
+    coinUser.setSwitchedToIdpId("https://idp.example.org/1");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(coinUser);
+    }
+
+    // with the IdentityProviders themselves a user in the session took 13 to 33 KB
+    assertTrue(bytes.size() + " bytes", bytes.size() < 2048);
+  }
+
 }
@@ -0,0 +1,80 @@
+package selfservice.filter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import selfservice.domain.CoinUser;
+import selfservice.domain.IdentityProvider;
+import selfservice.manage.Manage;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static selfservice.api.dashboard.Constants.HTTP_X_IDP_ENTITY_ID;
+
+public class EnsureAccessToIdpFilterTest {
+
+  private static final String IDP_ENTITY_ID = "idp";
+
+  private Manage manage = mock(Manage.class);
+  private CounterService counterService = mock(CounterService.class);
+  private EnsureAccessToIdpFilter filter = new EnsureAccessToIdpFilter(manage, counterService);
+  private MockHttpSession session = new MockHttpSession();
+
+  @Before
+  public void before() {
+    IdentityProvider idp = new IdentityProvider(IDP_ENTITY_ID, "institution id", "name", 1L);
+    CoinUser user = new CoinUser();
+    user.addInstitutionIdpId(IDP_ENTITY_ID);
+    SpringSecurityUtil.setAuthentication(user);
+
+    when(manage.getIdentityProvider(IDP_ENTITY_ID, false)).thenReturn(Optional.of(idp));
+    when(manage.getIdentityProvider("other", false)).thenReturn(Optional.of(new IdentityProvider("other", "other institution", "other", 2L)));
+  }
+
+  @Test
+  public void remembersGrantedIdpForTheMetadataVersion() throws Exception {
+    doFilter(IDP_ENTITY_ID);
+    doFilter(IDP_ENTITY_ID);
+
+    verify(manage, times(1)).getIdentityProvider(IDP_ENTITY_ID, false);
+    verify(counterService).increment("counter.idp.access.cache.miss");
+    verify(counterService).increment("counter.idp.access.cache.hit");
+  }
+
+  @Test
+  public void reevaluatesWhenTheMetadataVersionChanges() throws Exception {
+    doFilter(IDP_ENTITY_ID);
+    when(manage.getMetadataVersion()).thenReturn(1L);
+    doFilter(IDP_ENTITY_ID);
+
+    verify(manage, times(2)).getIdentityProvider(IDP_ENTITY_ID, false);
+  }
+
+  @Test
+  public void doesNotRememberDenials() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      try {
+        doFilter("other");
+      } catch (SecurityException expected) {
+      }
+    }
+
+    verify(manage, times(2)).getIdentityProvider("other", false);
+  }
+
+  private void doFilter(String idpEntityId) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/dashboard/api/services");
+    request.addHeader(HTTP_X_IDP_ENTITY_ID, idpEntityId);
+    request.setSession(session);
+
+    filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+  }
+}
@@ -0,0 +1,120 @@
+package selfservice.health;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DownstreamProberTest {
+
+  private ExecutorService executor = Executors.newCachedThreadPool();
+  private DownstreamProber subject = new DownstreamProber(executor, 500);
+
+  @After
+  public void after() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void availabilityIsServedFromTheLastProbeWithoutWaitingForTheFirst() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    subject.register("pdp", () -> calls.incrementAndGet() == 0);
+
+    assertTrue(subject.isAvailable("pdp"));
+    assertEquals(0, calls.get());
+
+    probeAndWait(subject, "pdp");
+
+    assertFalse(subject.isAvailable("pdp"));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void exceptionsAndTimeoutsAreDown() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    subject.register("jira", () -> {
+      throw new IllegalStateException("boom");
+    });
+    subject.register("sab", () -> release.await(5, TimeUnit.SECONDS));
+
+    probeAndWait(subject, "jira");
+    probeAndWait(subject, "sab");
+
+    assertFalse(subject.isAvailable("jira"));
+    assertTrue(subject.getResult("jira").getError().contains("boom"));
+
+    assertFalse(subject.isAvailable("sab"));
+    assertTrue(subject.getResult("sab").getError().startsWith("timed out"));
+    release.countDown();
+  }
+
+  @Test
+  public void hangingProbeIsNotStartedTwice() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    DownstreamProber prober = new DownstreamProber(executor, 100);
+    prober.register("mail", () -> {
+      calls.incrementAndGet();
+      return Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+    });
+
+    probeAndWait(prober, "mail");
+    assertTrue(prober.getResult("mail").getError().startsWith("timed out"));
+    prober.probeAll();
+    release.countDown();
+
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void healthReportsEveryService() throws Exception {
+    subject.register("pdp", () -> true);
+    subject.register("manage", () -> false, true);
+
+    assertEquals(Status.UNKNOWN, ((Map<String, Health>) (Map<?, ?>) subject.healthIndicator().health().getDetails())
+      .get("pdp").getStatus());
+
+    probeAndWait(subject, "pdp");
+    probeAndWait(subject, "manage");
+
+    Health health = subject.healthIndicator().health();
+    assertEquals(Status.DOWN, health.getStatus());
+    assertEquals(Status.UP, ((Health) health.getDetails().get("pdp")).getStatus());
+    assertEquals(Status.DOWN, ((Health) health.getDetails().get("manage")).getStatus());
+  }
+
+  @Test
+  public void unavailableNonCriticalServiceStaysUp() throws Exception {
+    subject.register("jira", () -> false);
+
+    probeAndWait(subject, "jira");
+
+    Health health = subject.healthIndicator().health();
+    assertEquals(Status.UP, health.getStatus());
+    Health jira = (Health) health.getDetails().get("jira");
+    assertEquals(Status.UP, jira.getStatus());
+    assertEquals(false, jira.getDetails().get("available"));
+  }
+
+  private void probeAndWait(DownstreamProber prober, String name) throws InterruptedException {
+    DownstreamProber.ProbeResult previous = prober.getResult(name);
+    prober.probeAll();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (prober.getResult(name) == previous && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package selfservice.manage;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import selfservice.domain.IdentityProvider;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdentityProviderCacheTest {
+
+    private static final IdentityProvider FIRST = new IdentityProvider("first", "inst", "first", 1L);
+    private static final IdentityProvider SECOND = new IdentityProvider("second", "inst", "second", 2L);
+
+    private Manage manage = mock(Manage.class);
+
+    private IdentityProviderCache subject = new IdentityProviderCache(manage);
+
+    @Test
+    public void fetchesOnlyTheMissingIdpsInBulk() {
+        when(manage.getIdentityProvidersByEntityIds(Collections.singletonList("first")))
+            .thenReturn(ImmutableMap.of("first", FIRST));
+        when(manage.getIdentityProvidersByEntityIds(Arrays.asList("second", "unknown")))
+            .thenReturn(ImmutableMap.of("second", SECOND));
+
+        assertEquals(FIRST, subject.get("first").get());
+        assertThat(subject.getAll(Arrays.asList("second", "first", "unknown")).keySet(), contains("second", "first"));
+        assertEquals(FIRST, subject.get("first").get());
+
+        verify(manage, times(1)).getIdentityProvidersByEntityIds(Collections.singletonList("first"));
+        verify(manage, times(1)).getIdentityProvidersByEntityIds(Arrays.asList("second", "unknown"));
+    }
+
+    @Test
+    public void fetchesAgainWhenTheMetadataVersionChanges() {
+        when(manage.getIdentityProvidersByEntityIds(Collections.singletonList("first")))
+            .thenReturn(ImmutableMap.of("first", FIRST));
+
+        subject.get("first");
+        subject.get("first");
+        when(manage.getMetadataVersion()).thenReturn(1L);
+        subject.get("first");
+
+        verify(manage, times(2)).getIdentityProvidersByEntityIds(Collections.singletonList("first"));
+        assertFalse(subject.get(null).isPresent());
+    }
+}
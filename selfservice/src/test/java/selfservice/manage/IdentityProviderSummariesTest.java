@@ -0,0 +1,65 @@
+package selfservice.manage;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import selfservice.domain.IdentityProvider;
+import selfservice.domain.InstitutionIdentityProvider;
+
+import java.util.List;
+import java.util.Locale;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdentityProviderSummariesTest {
+
+    private Manage manage = mock(Manage.class);
+
+    private IdentityProviderSummaries subject = new IdentityProviderSummaries(manage, new Locale("nl"));
+
+    @Before
+    public void before() {
+        when(manage.getAllIdentityProviders()).thenReturn(ImmutableList.of(
+            new IdentityProvider("zeta", "inst-z", "zeta", 1L),
+            new IdentityProvider("universiteit", "inst-u", "Universiteit", 2L),
+            new IdentityProvider("eindhoven", "inst-e", "Éindhoven", 3L),
+            new IdentityProvider("amsterdam", "inst-a", "amsterdam", 4L)));
+    }
+
+    @Test
+    public void sortsCollatedByName() {
+        List<String> names = subject.getSorted().stream().map(InstitutionIdentityProvider::getName).collect(toList());
+
+        assertThat(names, contains("amsterdam", "Éindhoven", "Universiteit", "zeta"));
+    }
+
+    @Test
+    public void projectsSummary() {
+        InstitutionIdentityProvider summary = subject.getSorted().get(0);
+
+        assertEquals("amsterdam", summary.getId());
+        assertEquals("amsterdam", summary.getNameNl());
+        assertEquals("inst-a", summary.getInstitutionId());
+        assertEquals("[{\"id\":\"amsterdam\"", new String(subject.getSortedJson()).substring(0, 18));
+    }
+
+    @Test
+    public void rebuildsOnlyWhenTheMetadataVersionChanges() {
+        when(manage.getMetadataVersion()).thenReturn(1L);
+        byte[] json = subject.getSortedJson();
+        assertThat(subject.getSortedJson(), sameInstance(json));
+
+        when(manage.getMetadataVersion()).thenReturn(2L);
+        subject.getSortedJson();
+
+        verify(manage, times(2)).getAllIdentityProviders();
+    }
+}
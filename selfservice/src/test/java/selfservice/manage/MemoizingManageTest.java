@@ -0,0 +1,60 @@
+package selfservice.manage;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import selfservice.domain.IdentityProvider;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MemoizingManageTest {
+
+    private Manage delegate = mock(Manage.class);
+    private MemoizingManage subject = new MemoizingManage(delegate);
+
+    @After
+    public void after() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void dedupesLookupsWithinRequest() {
+        when(delegate.getIdentityProvider("idp", false)).thenReturn(Optional.of(new IdentityProvider("idp", "inst", "name", 1L)));
+        ServletRequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(attributes);
+
+        subject.getIdentityProvider("idp", false);
+        subject.getIdentityProvider("idp", false);
+        subject.getIdentityProvider("idp", true);
+        attributes.requestCompleted();
+
+        verify(delegate, times(1)).getIdentityProvider("idp", false);
+        verify(delegate, times(1)).getIdentityProvider("idp", true);
+    }
+
+    @Test
+    public void doesNotMemoizeAcrossRequests() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        subject.getInstituteIdentityProviders("inst");
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        subject.getInstituteIdentityProviders("inst");
+
+        verify(delegate, times(2)).getInstituteIdentityProviders("inst");
+    }
+
+    @Test
+    public void passesThroughOutsideRequest() {
+        subject.getAllIdentityProviders();
+        subject.getAllIdentityProviders();
+
+        verify(delegate, times(2)).getAllIdentityProviders();
+    }
+}
@@ -0,0 +1,70 @@
+package selfservice.manage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import selfservice.domain.IdentityProvider;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static org.junit.Assert.assertEquals;
+
+public class UrlResourceManageBulkLookupTest {
+
+    private static final String EUR = "https://sso.eur.nl/opensso";
+    private static final String RUG = "https://signon.rug.nl/nidp/saml2/metadata";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8889);
+
+    private UrlResourceManage subject = new UrlResourceManage("user", "password", "http://localhost:8889");
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<Object> idps = objectMapper.readValue(new ClassPathResource("manage/identity-providers.json")
+            .getInputStream(), List.class);
+
+        stubFor(get(urlMatching("/manage/api/internal/rawSearch/saml20_idp\\?query=.*")).willReturn(aResponse()
+            .withStatus(200).withHeader("Content-Type", "application/json")
+            .withBody(objectMapper.writeValueAsString(Collections.singletonList(idps.get(0))))));
+        stubFor(get(urlMatching("/manage/api/internal/rawSearch/saml20_idp_revision\\?query=.*")).willReturn(aResponse()
+            .withStatus(200).withHeader("Content-Type", "application/json")
+            .withBody(objectMapper.writeValueAsString(Collections.singletonList(idps.get(1))))));
+    }
+
+    @Test
+    public void resolvesLiveAndRevisionsInOneQueryEach() {
+        Map<String, IdentityProvider> identityProviders = subject.getIdentityProvidersByEntityIds(
+            Arrays.asList(EUR, RUG, ""));
+
+        assertEquals(2, identityProviders.size());
+        assertEquals("Erasmus University Rotterdam", identityProviders.get(EUR).getName());
+        assertEquals(RUG, identityProviders.get(RUG).getId());
+
+        WireMock.verify(1, getRequestedFor(urlMatching("/manage/api/internal/rawSearch/saml20_idp\\?query=.*")));
+        // only the id that was not found live is searched in the revisions
+        WireMock.verify(1, getRequestedFor(urlMatching(
+            "/manage/api/internal/rawSearch/saml20_idp_revision\\?query=(?!.*sso\\.eur\\.nl).*signon\\.rug\\.nl.*")));
+    }
+
+    @Test
+    public void skipsRevisionsWhenEverythingIsFound() {
+        assertEquals(1, subject.getIdentityProvidersByEntityIds(Collections.singleton(EUR)).size());
+
+        WireMock.verify(0, getRequestedFor(urlMatching("/manage/api/internal/rawSearch/saml20_idp_revision.*")));
+    }
+}
@@ -0,0 +1,61 @@
+package selfservice.metrics;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import selfservice.pdp.PdpService;
+import selfservice.pdp.PdpServiceMock;
+
+import java.util.Map;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DownstreamMetricsTest {
+
+  private final DownstreamMetrics downstreamMetrics = new DownstreamMetrics(60_000);
+
+  @Test
+  public void recordsCallsLatencyAndPayloadPerOperation() {
+    PdpService pdpService = downstreamMetrics.instrument(PdpService.class, new PdpServiceMock(), "pdp");
+
+    int policies = pdpService.policies().size();
+    pdpService.policies();
+    pdpService.allowedAttributes();
+
+    Map<String, Number> metrics = metrics();
+    assertEquals(2L, metrics.get("downstream.pdp.policies.calls"));
+    assertEquals(0L, metrics.get("downstream.pdp.policies.errors"));
+    assertEquals(0, metrics.get("downstream.pdp.policies.inFlight"));
+    assertEquals((long) policies, metrics.get("downstream.pdp.policies.payload.max"));
+    assertTrue(metrics.containsKey("downstream.pdp.policies.latency.p99"));
+    assertEquals(1L, metrics.get("downstream.pdp.allowedAttributes.calls"));
+    assertFalse(metrics.containsKey("downstream.pdp.policy.calls"));
+  }
+
+  @Test
+  public void countsErrorsAndRethrowsThem() {
+    PdpService failing = mock(PdpService.class);
+    when(failing.policy(1L)).thenThrow(new IllegalStateException("PDP is down"));
+    PdpService pdpService = downstreamMetrics.instrument(PdpService.class, failing, "pdp");
+
+    try {
+      pdpService.policy(1L);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("PDP is down", e.getMessage());
+    }
+
+    Map<String, Number> metrics = metrics();
+    assertEquals(1L, metrics.get("downstream.pdp.policy.calls"));
+    assertEquals(1L, metrics.get("downstream.pdp.policy.errors"));
+  }
+
+  private Map<String, Number> metrics() {
+    return downstreamMetrics.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+  }
+}
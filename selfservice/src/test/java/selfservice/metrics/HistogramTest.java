@@ -0,0 +1,58 @@
+package selfservice.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final Histogram histogram = new Histogram(60_000, clock::get);
+
+  @Test
+  public void bucketsCoverAllValues() {
+    for (long value = 0; value < 100_000; value++) {
+      int bucket = Histogram.bucket(value);
+      assertTrue(value <= Histogram.upperBound(bucket));
+      assertTrue(bucket == 0 || value > Histogram.upperBound(bucket - 1));
+    }
+  }
+
+  @Test
+  public void percentiles() {
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1_000);
+    }
+    Histogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(100, snapshot.getCount());
+    assertEquals(100_000, snapshot.getMax());
+    assertEquals(50_500, snapshot.getMean(), 0.1);
+    assertWithin(50_000, snapshot.getPercentile(0.5));
+    assertWithin(95_000, snapshot.getPercentile(0.95));
+    assertEquals(100_000, snapshot.getPercentile(1));
+  }
+
+  @Test
+  public void forgetsOldWindows() {
+    histogram.record(5_000);
+    clock.addAndGet(60_000);
+    histogram.record(10);
+    assertEquals(2, histogram.snapshot().getCount());
+
+    clock.addAndGet(60_000);
+    assertEquals(1, histogram.snapshot().getCount());
+    assertEquals(10, histogram.snapshot().getMax());
+
+    clock.addAndGet(180_000);
+    assertEquals(0, histogram.snapshot().getCount());
+    assertEquals(0, histogram.snapshot().getPercentile(0.99));
+  }
+
+  private void assertWithin(long expected, long actual) {
+    assertTrue(actual + " is not close to " + expected, actual >= expected && actual <= expected * 1.25);
+  }
+}
@@ -0,0 +1,78 @@
+package selfservice.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimingsTest {
+
+  @After
+  public void after() {
+    RequestTimings.end();
+  }
+
+  @Test
+  public void nestedSpansOnlyCountTheirOwnTime() throws InterruptedException {
+    RequestTimings timings = RequestTimings.begin();
+
+    try (RequestTimings.Span controller = RequestTimings.start("controller")) {
+      Thread.sleep(20);
+      for (int i = 0; i < 2; i++) {
+        try (RequestTimings.Span manage = RequestTimings.start("manage")) {
+          Thread.sleep(15);
+        }
+      }
+    }
+
+    Map<String, RequestTimings.Timing> result = timings.getTimings();
+    assertEquals(1, result.get("controller").getCount());
+    assertEquals(2, result.get("manage").getCount());
+    assertTrue(result.get("manage").getMillis() >= 30);
+    assertTrue(result.get("controller").getMillis() >= 20);
+    assertTrue(result.get("controller").getMillis() < result.get("manage").getMillis() + 20);
+    assertTrue(result.get("controller").getMillis() + result.get("manage").getMillis()
+        <= timings.getElapsedNanos() / 1_000_000D);
+  }
+
+  @Test
+  public void closingASpanClosesTheSpansLeftOpenInside() {
+    RequestTimings timings = RequestTimings.begin();
+
+    RequestTimings.Span outer = RequestTimings.start("outer");
+    RequestTimings.start("inner");
+    outer.close();
+    outer.close();
+
+    try (RequestTimings.Span next = RequestTimings.start("next")) {
+      assertEquals(1, timings.getTimings().get("inner").getCount());
+      assertEquals(1, timings.getTimings().get("outer").getCount());
+    }
+    assertEquals(1, timings.getTimings().get("next").getCount());
+  }
+
+  @Test
+  public void serverTiming() {
+    RequestTimings timings = RequestTimings.begin();
+
+    RequestTimings.start("authentication").close();
+    RequestTimings.start("manage").close();
+    RequestTimings.start("manage").close();
+
+    assertTrue(timings.toServerTiming().matches(
+        "authentication;dur=\\d+\\.\\d, manage;desc=\"2 calls\";dur=\\d+\\.\\d, total;dur=\\d+\\.\\d"));
+  }
+
+  @Test
+  public void doesNothingOutsideOfARequest() {
+    RequestTimings.Span span = RequestTimings.start("controller");
+    span.close();
+
+    RequestTimings timings = RequestTimings.begin();
+    assertFalse(timings.getTimings().containsKey("controller"));
+  }
+}
@@ -0,0 +1,86 @@
+package selfservice.metrics;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class ServerTimingFilterTest {
+
+  private final Logger logger = (Logger) LoggerFactory.getLogger(ServerTimingFilter.class);
+  private ListAppender<ILoggingEvent> listAppender;
+
+  @Before
+  public void before() {
+    listAppender = new ListAppender<>();
+    listAppender.setContext((LoggerContext) LoggerFactory.getILoggerFactory());
+    listAppender.start();
+    logger.addAppender(listAppender);
+  }
+
+  @After
+  public void after() {
+    logger.detachAppender(listAppender);
+  }
+
+  @Test
+  public void addsTheTimingsWhenTheResponseIsCommitted() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    new ServerTimingFilter(60_000, true).doFilter(request(), response, new MockFilterChain(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        RequestTimings.start("manage").close();
+        resp.getWriter().write("{}");
+        resp.flushBuffer();
+        RequestTimings.start("late").close();
+      }
+    }));
+
+    String serverTiming = response.getHeader(ServerTimingFilter.SERVER_TIMING);
+    assertThat(serverTiming, startsWith("manage;dur="));
+    assertFalse(serverTiming.contains("late"));
+    assertThat(listAppender.list, hasSize(0));
+  }
+
+  @Test
+  public void logsSlowRequests() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    new ServerTimingFilter(0, false).doFilter(request(), response, new MockFilterChain(new HttpServlet() {
+      @Override
+      protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+        RequestTimings.start("pdp").close();
+      }
+    }));
+
+    assertNull(response.getHeader(ServerTimingFilter.SERVER_TIMING));
+    assertThat(listAppender.list, hasSize(1));
+    String message = listAppender.list.get(0).getFormattedMessage();
+    assertThat(message, containsString("\"uri\":\"/dashboard/api/services\""));
+    assertThat(message, containsString("\"pdp\":{\"count\":1,\"millis\":"));
+  }
+
+  private MockHttpServletRequest request() {
+    return new MockHttpServletRequest("GET", "/dashboard/api/services");
+  }
+}
@@ -0,0 +1,70 @@
+package selfservice.pdp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.context.SecurityContextHolder;
+import selfservice.domain.CoinUser;
+import selfservice.domain.Policy;
+import selfservice.filter.SpringSecurityUtil;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingPdpServiceTest {
+
+  private PdpService delegate = mock(PdpService.class);
+  private CachingPdpService subject = new CachingPdpService(delegate, 60, 3600);
+  private CoinUser coinUser = new CoinUser();
+
+  @Before
+  public void before() {
+    coinUser.setIdpId("idp-id");
+    SpringSecurityUtil.setAuthentication(coinUser);
+
+    when(delegate.policies()).thenReturn(Collections.emptyList());
+    when(delegate.policy(1L)).thenReturn(new Policy());
+    when(delegate.allowedAttributes()).thenReturn(Collections.emptyList());
+  }
+
+  @After
+  public void after() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void cachesPoliciesPerIdp() {
+    subject.policies();
+    subject.policies();
+    coinUser.setSwitchedToIdpId("other-idp");
+    subject.policies();
+
+    verify(delegate, times(2)).policies();
+  }
+
+  @Test
+  public void writesInvalidatePolicies() {
+    subject.policies();
+    subject.policy(1L);
+
+    subject.delete(1L);
+    subject.policies();
+    subject.policy(1L);
+
+    verify(delegate, times(2)).policies();
+    verify(delegate, times(2)).policy(1L);
+  }
+
+  @Test
+  public void cachesAllowedAttributes() {
+    subject.allowedAttributes();
+    subject.update(new Policy());
+    subject.allowedAttributes();
+
+    verify(delegate, times(1)).allowedAttributes();
+  }
+}
@@ -30,7 +30,6 @@ import org.junit.Test;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import selfservice.domain.CoinUser;
-import selfservice.domain.IdentityProvider;
 import selfservice.domain.Policy;
 import selfservice.filter.SpringSecurityUtil;
 
@@ -45,7 +44,7 @@ public class PdpServiceImplTest {
   public void setup() {
     CoinUser coinUser = new CoinUser();
     coinUser.setUid("user-id");
-    coinUser.setIdp(new IdentityProvider("idp-id", "institution-id", "idp-name", 1L));
+    coinUser.setIdpId("idp-id");
     SpringSecurityUtil.setAuthentication(coinUser);
   }
 
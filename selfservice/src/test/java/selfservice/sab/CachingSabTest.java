@@ -0,0 +1,98 @@
+package selfservice.sab;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingSabTest {
+
+  private Sab delegate = mock(Sab.class);
+  private CachingSab subject = new CachingSab(delegate, 60, 3600, 100, MoreExecutors.directExecutor(), 60);
+
+  @Test
+  public void cachesRoles() {
+    when(delegate.getRoles("uid")).thenReturn(Optional.of(new SabRoleHolder("org", asList("role"))));
+
+    assertEquals(asList("role"), subject.getRoles("uid").get().getRoles());
+    assertEquals(asList("role"), subject.getRoles("uid").get().getRoles());
+
+    verify(delegate, times(1)).getRoles("uid");
+  }
+
+  @Test
+  public void cachesNotFound() {
+    when(delegate.getRoles("unknown")).thenReturn(Optional.of(new SabRoleHolder(null, Collections.emptyList())));
+
+    subject.getRoles("unknown");
+    assertTrue(subject.getRoles("unknown").get().getRoles().isEmpty());
+
+    verify(delegate, times(1)).getRoles("unknown");
+  }
+
+  @Test
+  public void doesNotCacheFailures() {
+    when(delegate.getRoles("uid")).thenReturn(Optional.empty());
+
+    assertFalse(subject.getRoles("uid").isPresent());
+    assertFalse(subject.getRoles("uid").isPresent());
+
+    verify(delegate, times(2)).getRoles("uid");
+  }
+
+  @Test
+  public void cachesPersonsInRolesPerOrganisation() {
+    List<String> roles = asList("SURFconextbeheerder", "SURFconextverantwoordelijke");
+    when(delegate.getPersonsInRolesForOrganization("org", roles)).thenReturn(new HashMap<>());
+
+    subject.getPersonsInRolesForOrganization("org", roles);
+    subject.getPersonsInRolesForOrganization("org", roles);
+    subject.getPersonsInRolesForOrganization("other", roles);
+
+    verify(delegate, times(1)).getPersonsInRolesForOrganization("org", roles);
+    verify(delegate, times(1)).getPersonsInRolesForOrganization("other", roles);
+  }
+
+  @Test
+  public void doesNotCachePersonsInRolesFailures() {
+    List<String> roles = asList("SURFconextbeheerder", "SURFconextverantwoordelijke");
+    when(delegate.getPersonsInRolesForOrganization("org", roles))
+      .thenThrow(new SabUnavailableException("SAB is down"))
+      .thenReturn(new HashMap<>());
+
+    try {
+      subject.getPersonsInRolesForOrganization("org", roles);
+      fail();
+    } catch (SabUnavailableException expected) {
+    }
+    assertTrue(subject.getPersonsInRolesForOrganization("org", roles).isEmpty());
+
+    verify(delegate, times(2)).getPersonsInRolesForOrganization("org", roles);
+  }
+
+  @Test
+  public void keepsStaleRolesWhenRefreshFails() {
+    when(delegate.getRoles("uid"))
+      .thenReturn(Optional.of(new SabRoleHolder("org", asList("role"))))
+      .thenReturn(Optional.empty());
+
+    subject.getRoles("uid");
+    subject.getRolesCache().refresh("uid");
+
+    assertEquals(asList("role"), subject.getRoles("uid").get().getRoles());
+    verify(delegate, times(2)).getRoles("uid");
+  }
+}
@@ -0,0 +1,80 @@
+package selfservice.sab;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class HttpClientTransportTest {
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(8889);
+
+  private GaugeService gaugeService = mock(GaugeService.class);
+
+  @Test
+  public void releasesConnectionOnFailedResponses() throws IOException {
+    stubFor(post(urlEqualTo("/sab")).willReturn(aResponse().withStatus(500).withBody("error")));
+    HttpClientTransport transport = transport(1, 1);
+
+    // with a single pooled connection a leaked one would block the second call on the connection-request timeout
+    for (int i = 0; i < 2; i++) {
+      try {
+        transport.getResponse("request".getBytes());
+        fail();
+      } catch (IOException expected) {
+        assertEquals("Failed response: HTTP/1.1 500 Internal Server Error", expected.getMessage());
+      }
+    }
+
+    Map<String, Number> metrics = metrics(transport);
+    assertEquals(0, metrics.get("sab.pool.leased").intValue());
+    assertEquals(0, metrics.get("sab.requests.inFlight").intValue());
+    verify(gaugeService, atLeastOnce()).submit(eq("timer.sab.saml"), anyDouble());
+  }
+
+  @Test
+  public void readsBodyAndReleasesConnection() throws IOException {
+    stubFor(post(urlEqualTo("/sab")).willReturn(aResponse().withStatus(200).withBody("response")));
+    HttpClientTransport transport = transport(1, 1);
+
+    try (InputStream response = transport.getResponse("request".getBytes())) {
+      assertEquals(0, metrics(transport).get("sab.pool.leased").intValue());
+      assertEquals("response", IOUtils.toString(response));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void failsFastWhenBulkheadIsFull() throws IOException {
+    transport(1, 0).getResponse("request".getBytes());
+  }
+
+  private HttpClientTransport transport(int maxConnections, int maxConcurrentRequests) {
+    return new HttpClientTransport("user", "secret", "user", "secret", URI.create("http://localhost:8889/sab"),
+      URI.create("http://localhost:8889/rest"), maxConnections, maxConnections, maxConcurrentRequests, gaugeService);
+  }
+
+  private Map<String, Number> metrics(HttpClientTransport transport) {
+    return transport.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+  }
+}
@@ -15,17 +15,22 @@
  */
 package selfservice.sab;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -49,6 +54,21 @@ public class SabClientTest {
   }
 
   @Test
+  public void createRequestMatchesMessageFormat() throws IOException {
+    String template = IOUtils.toString(getClass().getResourceAsStream("/sab-request.xml"), "UTF-8");
+
+    String request = new String(SabRequestTemplate.fromClasspath("/sab-request.xml").render("id", "instant", "userid"), "UTF-8");
+
+    assertEquals(MessageFormat.format(template, "id", "instant", "userid"), request);
+  }
+
+  @Test
+  public void createRequestEscapesUserId() {
+    String request = sabClient.createRequest("<user&id>", "234567890");
+    assertTrue(request.contains(">&lt;user&amp;id&gt;</saml:NameID>"));
+  }
+
+  @Test(expected = SabUnavailableException.class)
   public void exceptionWhileQueryingRole() throws IOException {
     String organisation = "SURFNET";
     String role = "Infraverantwoordelijke";
@@ -58,9 +78,17 @@ public class SabClientTest {
 
     when(transport.getRestResponse(anyString(), anyString())).thenThrow(new IOException("Intentionally"));
 
-    Collection<SabPerson> personsInRoleForOrganization = sabClient.getPersonsInRoleForOrganization(organisation, role);
+    sabClient.getPersonsInRoleForOrganization(organisation, role);
+  }
 
-    assertNotNull(personsInRoleForOrganization);
+  @Test(expected = SabUnavailableException.class)
+  public void exceptionWhileQueryingRolesConcurrently() throws IOException {
+    SabTransport transport = mock(SabTransport.class);
+    sabClient = new SabClient(transport, Executors.newFixedThreadPool(2));
+
+    when(transport.getRestResponse(anyString(), anyString())).thenThrow(new IOException("Intentionally"));
+
+    sabClient.getPersonsInRolesForOrganization("SURFNET", Arrays.asList("SURFconextbeheerder", "Infraverantwoordelijke"));
   }
 
   @Test
@@ -85,6 +113,21 @@ public class SabClientTest {
     assertEquals(4, actual.size());
   }
 
+  @Test
+  public void testGetPersonsInRolesForOrganization() throws Exception {
+    sabClient = new SabClient(new LocalFileTransport("/response.xml", "/sab-json/profile.json"), Executors.newFixedThreadPool(2));
+
+    Map<String, Collection<SabPerson>> actual = sabClient.getPersonsInRolesForOrganization("organisationAbbreviation",
+      Arrays.asList("SURFconextverantwoordelijke", "OperationeelBeheerder"));
+
+    assertEquals(Arrays.asList("SURFconextverantwoordelijke", "OperationeelBeheerder"), new ArrayList<>(actual.keySet()));
+    assertEquals(6, actual.get("SURFconextverantwoordelijke").size());
+    assertEquals(4, actual.get("OperationeelBeheerder").size());
+    SabPerson first = actual.get("SURFconextverantwoordelijke").iterator().next();
+    assertEquals("joostd", first.getUid());
+    assertEquals("Joost van Dijk", first.fullname());
+  }
+
   @Test
   public void testNoResultsFromRestInterface() throws Exception {
     sabClient = new SabClient(new LocalFileTransport("/response.xml", "/sab-json/minimal-roles.json"));
@@ -0,0 +1,56 @@
+package selfservice.sab;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaxSabResponseParserTest {
+
+  @Test
+  public void testParse() throws IOException {
+    InputStream stream = this.getClass().getResourceAsStream("/response.xml");
+
+    SabRoleHolder srh = new StaxSabResponseParser().parse(stream);
+
+    assertEquals("SURFNET", srh.getOrganisation());
+    assertTrue("roles should contain Infraverantwoordelijke", srh.getRoles().contains("Infraverantwoordelijke"));
+    assertEquals("roles should count 9", 9, srh.getRoles().size());
+  }
+
+  @Test
+  public void sameResultAsDomParser() throws IOException {
+    for (String fixture : new String[]{"/response.xml", "/response-nameidnotfound.xml"}) {
+      SabRoleHolder dom = new SabResponseParser().parse(this.getClass().getResourceAsStream(fixture));
+      SabRoleHolder stax = new StaxSabResponseParser().parse(this.getClass().getResourceAsStream(fixture));
+
+      assertEquals(fixture, dom.getOrganisation(), stax.getOrganisation());
+      assertEquals(fixture, dom.getRoles(), stax.getRoles());
+    }
+  }
+
+  @Test
+  public void nameIdNotFoundShouldNotThrowException() throws IOException {
+    InputStream stream = this.getClass().getResourceAsStream("/response-nameidnotfound.xml");
+
+    SabRoleHolder srh = new StaxSabResponseParser().parse(stream);
+    assertNotNull(srh);
+    assertEquals(0, srh.getRoles().size());
+  }
+
+  @Test(expected = IOException.class)
+  public void blockedByAclShouldThrowException() throws IOException {
+    InputStream stream = this.getClass().getResourceAsStream("/response-aclblocked.xml");
+    new StaxSabResponseParser().parse(stream);
+  }
+
+  @Test(expected = IOException.class)
+  public void invalidUserShouldThrowException() throws IOException {
+    InputStream stream = this.getClass().getResourceAsStream("/response-invaliduser.xml");
+    new StaxSabResponseParser().parse(stream);
+  }
+}
@@ -0,0 +1,138 @@
+package selfservice.service.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import selfservice.domain.Action;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActionStoreTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ZonedDateTime now = ZonedDateTime.now();
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void pagesActionsOfIdpNewestFirst() {
+    ActionStore store = new ActionStore(null);
+    store.save(action("CXT-1", "idp", "sp1", now.minusDays(2)));
+    store.save(action("CXT-2", "idp", "sp2", now));
+    store.save(action("CXT-3", "idp", "sp1", now.minusDays(1)));
+    store.save(action("CXT-4", "other-idp", "sp1", now));
+
+    Map<String, Object> page = store.findByIdp("idp", 1, 1);
+
+    assertEquals(3, page.get("total"));
+    assertEquals(1, page.get("startAt"));
+    List<Action> issues = (List<Action>) page.get("issues");
+    assertEquals("CXT-3", issues.get(0).getJiraKey().get());
+    assertEquals(3, store.findBySp("sp1").size());
+  }
+
+  @Test
+  public void replaysTheFile() throws IOException {
+    File file = temporaryFolder.newFile();
+    Instant synced = Instant.ofEpochMilli(1_500_000_000_000L);
+
+    ActionStore store = new ActionStore(file);
+    store.save(action("CXT-1", "idp", "sp", now));
+    store.updateStatus("CXT-1", "Resolved");
+    store.markSynced(synced);
+
+    ActionStore reopened = new ActionStore(file);
+
+    Action action = reopened.find("CXT-1").get();
+    assertEquals("Resolved", action.getStatus());
+    assertEquals("John Doe", action.getUserName());
+    assertEquals(now.toInstant(), action.getRequestDate().toInstant());
+    assertEquals(synced, reopened.getSyncedUntil().get());
+    assertEquals(1, ((List<?>) reopened.findByIdp("idp", 0, 10).get("issues")).size());
+  }
+
+  @Test
+  public void ignoresPartiallyWrittenLastLine() throws IOException {
+    File file = temporaryFolder.newFile();
+    new ActionStore(file).save(action("CXT-1", "idp", "sp", now));
+    Files.write(file.toPath(), "{\"op\":\"put\",\"jiraKey\":\"CX".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    ActionStore reopened = new ActionStore(file);
+
+    assertEquals(1, reopened.size());
+    assertFalse(reopened.getSyncedUntil().isPresent());
+  }
+
+  @Test
+  public void compactsSupersededRecords() throws IOException {
+    File file = temporaryFolder.newFile();
+    ActionStore store = new ActionStore(file);
+    store.save(action("CXT-1", "idp", "sp", now));
+    for (int i = 0; i < 200; i++) {
+      store.updateStatus("CXT-1", "Status " + i);
+    }
+    store.markSynced(Instant.now());
+
+    ActionStore reopened = new ActionStore(file);
+
+    List<String> lines = Files.readAllLines(file.toPath()).stream().filter(line -> !line.isEmpty()).collect(toList());
+    assertEquals(2, lines.size());
+    assertEquals("Status 199", reopened.find("CXT-1").get().getStatus());
+    assertTrue(new ActionStore(file).getSyncedUntil().isPresent());
+  }
+
+  @Test
+  public void resolvesPendingActionToItsJiraKey() throws IOException {
+    File file = temporaryFolder.newFile();
+    ActionStore store = new ActionStore(file);
+    store.savePending("1", action(null, "idp", "sp", now));
+    store.savePending("2", action(null, "idp", "sp", now));
+    store.resolvePending("1", "CXT-1");
+
+    ActionStore reopened = new ActionStore(file);
+
+    assertEquals(2, reopened.size());
+    assertEquals("idp", reopened.find("CXT-1").get().getIdpId());
+    assertEquals(2, reopened.findByIdp("idp", 0, 10).get("total"));
+  }
+
+  @Test
+  public void keepsTheStatusOfAFailedPendingAction() throws IOException {
+    File file = temporaryFolder.newFile();
+    ActionStore store = new ActionStore(file);
+    store.savePending("1", action(null, "idp", "sp", now));
+    store.updatePendingStatus("1", "Failed");
+
+    ActionStore reopened = new ActionStore(file);
+
+    assertEquals("Failed", reopened.findBySp("sp").get(0).getStatus());
+  }
+
+  private Action action(String jiraKey, String idp, String sp, ZonedDateTime requestDate) {
+    return Action.builder()
+        .jiraKey(jiraKey)
+        .idpId(idp)
+        .spId(sp)
+        .requestDate(requestDate)
+        .type(Action.Type.LINKREQUEST)
+        .status("Open")
+        .userName("John Doe")
+        .userEmail("john@example.org")
+        .build();
+  }
+}
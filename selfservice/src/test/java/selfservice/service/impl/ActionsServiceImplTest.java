@@ -2,17 +2,24 @@ package selfservice.service.impl;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import selfservice.domain.Action;
 import selfservice.domain.IdentityProvider;
 import selfservice.domain.ServiceProvider;
 import selfservice.manage.EntityType;
 import selfservice.manage.Manage;
+import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
 
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,7 +28,13 @@ import java.util.Optional;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -36,10 +49,16 @@ public class ActionsServiceImplTest {
     @Mock
     private Manage manageMock;
 
+    @Mock
+    private ActionStore actionStoreMock;
+
+    @Mock
+    private JiraOutbox jiraOutboxMock;
+
     @Test
     public void forBackwardCompatibilityShouldFillUserFromBody() {
-        when(manageMock.getIdentityProvider("idp", true)).thenReturn(Optional.of(new IdentityProvider("idp",
-            "idp-institution", "idp-name", 1L)));
+        when(manageMock.getIdentityProvidersByEntityIds(ImmutableSet.of("idp"))).thenReturn(ImmutableMap.of("idp",
+            new IdentityProvider("idp", "idp-institution", "idp-name", 1L)));
         Map<String, Object> result = new HashMap<>();
         result.put("issues", ImmutableList.of
             (Action
@@ -56,9 +75,10 @@ public class ActionsServiceImplTest {
                     "Remark from user: Teun.Fransen@surfnet.nl\n" +
                     "\n" +
                     "test").build()));
-        when(manageMock.getServiceProvider("sp", EntityType.saml20_sp, true)).thenReturn(Optional.of(new ServiceProvider
-            (ImmutableMap.of("entityid", "sp", "eid", 1L))));
+        when(manageMock.getServiceProvidersByEntityIds(ImmutableSet.of("sp"))).thenReturn(ImmutableMap.of("sp",
+            new ServiceProvider(ImmutableMap.of("entityid", "sp", "eid", 1L, "name:en", "sp-name"))));
         when(jiraClientMock.getTasks("idp", 0, 20)).thenReturn(result);
+        when(actionStoreMock.getSyncedUntil()).thenReturn(Optional.empty());
 
         Map<String, Object> actionResult = service.getActions("idp", 0, 20);
         List<Action> actions = (List<Action>) actionResult.get("issues");
@@ -66,6 +86,64 @@ public class ActionsServiceImplTest {
         assertEquals(1, actions.size());
         assertEquals("Teun Fransen", actions.get(0).getUserName());
         assertEquals("Teun.Fransen@surfnet.nl", actions.get(0).getUserEmail());
+        assertEquals("idp-name", actions.get(0).getIdpName());
+        assertEquals("sp-name", actions.get(0).getSpName());
+    }
+
+    @Test
+    public void servesActionsFromStoreOnceSynchronized() {
+        Map<String, Object> page = new HashMap<>();
+        when(actionStoreMock.getSyncedUntil()).thenReturn(Optional.of(Instant.now()));
+        when(actionStoreMock.findByIdp("idp", 0, 20)).thenReturn(page);
+
+        assertThat(service.getActions("idp", 0, 20), is(page));
+        verifyZeroInteractions(jiraClientMock);
+    }
+
+    @Test
+    public void synchronizeImportsNewAndUpdatesKnownActions() {
+        ActionStore actionStore = new ActionStore(null);
+        ReflectionTestUtils.setField(service, "actionStore", actionStore);
+        actionStore.save(Action.builder().jiraKey("CXT-1").idpId("idp").status("Open")
+            .requestDate(ZonedDateTime.now()).build());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("issues", ImmutableList.of(
+            Action.builder().jiraKey("CXT-1").idpId("idp").status("Resolved").build(),
+            Action.builder().jiraKey("CXT-2").idpId("idp").spId("sp").status("Open").requestDate(ZonedDateTime.now())
+                .body("Applicant name: John Doe\nApplicant email: john@example.org\n").build()));
+        result.put("total", 2);
+        when(jiraClientMock.getTasksUpdatedSince(Optional.empty(), 0, 100)).thenReturn(result);
+        when(manageMock.getServiceProvidersByEntityIds(ImmutableSet.of("sp"))).thenReturn(ImmutableMap.of("sp",
+            new ServiceProvider(ImmutableMap.of("entityid", "sp", "eid", 1L, "name:en", "sp-name"))));
+
+        service.synchronizeActions();
+
+        assertTrue(actionStore.getSyncedUntil().isPresent());
+        assertEquals("Resolved", actionStore.find("CXT-1").get().getStatus());
+        Action imported = actionStore.find("CXT-2").get();
+        assertEquals("John Doe", imported.getUserName());
+        assertEquals("john@example.org", imported.getUserEmail());
+        assertEquals("sp-name", imported.getSpName());
+    }
+
+    @Test
+    public void createLeavesTheJiraIssueToTheOutbox() {
+        when(manageMock.getServiceProvider("sp", EntityType.saml20_sp, true)).thenReturn(Optional.empty());
+        when(manageMock.getIdentityProvider("idp", true)).thenReturn(Optional.of(
+            new IdentityProvider("idp", "idp-institution", "idp-name", 1L)));
+        Action action = Action.builder().idpId("idp").spId("sp").type(Action.Type.LINKREQUEST).userName("John Doe")
+            .build();
+
+        Action created = service.create(action, Collections.emptyList());
+
+        assertFalse(created.getJiraKey().isPresent());
+        assertEquals("Pending", created.getStatus());
+        assertEquals("idp-name", created.getIdpName());
+        ArgumentCaptor<String> id = ArgumentCaptor.forClass(String.class);
+        verify(actionStoreMock).savePending(id.capture(), eq(created));
+        verify(jiraOutboxMock).submit(eq(id.getValue()), eq(created), any(SummaryAndDescription.class));
+        verifyZeroInteractions(jiraClientMock);
     }
 
 }
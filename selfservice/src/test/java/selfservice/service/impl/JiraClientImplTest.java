@@ -1,12 +1,71 @@
 package selfservice.service.impl;
 
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import selfservice.domain.Action;
 
-import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class JiraClientImplTest {
 
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8889);
+
+    private JiraClientImpl jiraClient = new JiraClientImpl("http://localhost:8889/rest/api/2", "user", "secret",
+        "TESTTASK", 1000, 500, 2, 30000);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getTasks() throws IOException {
+        String json = IOUtils.toString(new ClassPathResource("jira-json/actions.json").getInputStream());
+        stubFor(post(urlEqualTo("/rest/api/2/search")).willReturn(aResponse().withStatus(200)
+            .withHeader("Content-Type", "application/json").withBody(json)));
+
+        Map<String, Object> tasks = jiraClient.getTasks("idp", 2, 1);
+
+        assertEquals(3137, tasks.get("total"));
+        assertEquals(2, tasks.get("startAt"));
+        assertEquals(1, tasks.get("maxResults"));
+
+        List<Action> issues = (List<Action>) tasks.get("issues");
+        assertEquals(1, issues.size());
+        Action action = issues.get(0);
+        assertEquals("CXT-29432", action.getJiraKey().get());
+        assertEquals(Action.Type.LINKREQUEST, action.getType());
+        assertEquals("Resolved", action.getStatus());
+        assertEquals("http://federatie.radboudumc.nl/adfs/services/trust", action.getIdpId());
+        assertEquals("https://brightspace.ru.nl/shibboleth-sp", action.getSpId());
+        assertTrue(action.getBody().startsWith("Request: Create a new connection"));
+
+        WireMock.verify(postRequestedFor(urlEqualTo("/rest/api/2/search"))
+            .withRequestBody(containing("\"startAt\":2"))
+            .withRequestBody(containing("\"customfield_13012\"")));
+    }
+
     @Test
-    public void getTasks() {
+    public void getTasksGivesUpAfterReadTimeout() {
+        stubFor(post(urlEqualTo("/rest/api/2/search")).willReturn(aResponse().withStatus(200)
+            .withFixedDelay(2000).withHeader("Content-Type", "application/json").withBody("{}")));
+
+        long start = System.currentTimeMillis();
+        Map<String, Object> tasks = jiraClient.getTasks("idp", 0, 10);
+
+        assertTrue(tasks.isEmpty());
+        assertTrue(System.currentTimeMillis() - start < 1500);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,159 @@
+package selfservice.service.impl;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import selfservice.domain.Action;
+import selfservice.service.impl.JiraTicketSummaryAndDescriptionBuilder.SummaryAndDescription;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JiraOutboxTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final JiraClient jiraClient = mock(JiraClient.class);
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+  private final BlockingQueue<JiraOutbox.Delivery> deliveries = new LinkedBlockingQueue<>();
+  private final BlockingQueue<JiraOutbox.Failure> failures = new LinkedBlockingQueue<>();
+
+  @After
+  public void after() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void deliversSubmittedIssue() throws InterruptedException {
+    when(jiraClient.create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1"))).thenReturn("CXT-1");
+    JiraOutbox outbox = new JiraOutbox(null, jiraClient, executor, 1, 10, 2);
+    outbox.start(deliveries::add, failures::add);
+
+    outbox.submit("1", action(), summaryAndDescription());
+
+    JiraOutbox.Delivery delivery = deliveries.poll(5, TimeUnit.SECONDS);
+    assertEquals("1", delivery.getId());
+    assertEquals("CXT-1", delivery.getAction().getJiraKey().get());
+    assertEquals(0, outbox.size());
+    verify(jiraClient, never()).findKeyByLabel(any());
+  }
+
+  @Test
+  public void retriesAndLooksForAnIssueCreatedByAFailedAttempt() throws InterruptedException {
+    when(jiraClient.create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1")))
+        .thenThrow(new IllegalStateException("read timed out"));
+    when(jiraClient.findKeyByLabel("dashboard-1"))
+        .thenThrow(new IllegalStateException("connection refused"))
+        .thenReturn(Optional.of("CXT-1"));
+    JiraOutbox outbox = new JiraOutbox(null, jiraClient, executor, 1, 10, 2);
+    outbox.start(deliveries::add, failures::add);
+
+    outbox.submit("1", action(), summaryAndDescription());
+
+    assertEquals("CXT-1", deliveries.poll(5, TimeUnit.SECONDS).getAction().getJiraKey().get());
+    verify(jiraClient).create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1"));
+  }
+
+  @Test
+  public void deliversUndeliveredIssuesAfterRestart() throws IOException, InterruptedException {
+    File file = temporaryFolder.newFile();
+    when(jiraClient.create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1"))).thenReturn("CXT-1");
+    when(jiraClient.findKeyByLabel("dashboard-2")).thenReturn(Optional.empty());
+    when(jiraClient.create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-2"))).thenReturn("CXT-2");
+
+    JiraOutbox outbox = new JiraOutbox(file, jiraClient, executor, 1, 10, 2);
+    outbox.start(deliveries::add, failures::add);
+    outbox.submit("1", action(), summaryAndDescription());
+    deliveries.poll(5, TimeUnit.SECONDS);
+
+    // not started, as if stopped before delivering
+    new JiraOutbox(file, jiraClient, executor, 1, 10, 2).submit("2", action(), summaryAndDescription());
+
+    JiraOutbox reopened = new JiraOutbox(file, jiraClient, executor, 1, 10, 2);
+    assertEquals(1, reopened.size());
+    reopened.start(deliveries::add, failures::add);
+
+    JiraOutbox.Delivery delivery = deliveries.poll(5, TimeUnit.SECONDS);
+    assertEquals("2", delivery.getId());
+    assertEquals("CXT-2", delivery.getAction().getJiraKey().get());
+    assertEquals("Please connect", delivery.getAction().getBody());
+    assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS));
+    verify(jiraClient).findKeyByLabel("dashboard-2");
+  }
+
+  @Test
+  public void failingListenerDoesNotCreateTheIssueAgain() throws InterruptedException {
+    when(jiraClient.create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1"))).thenReturn("CXT-1");
+    JiraOutbox outbox = new JiraOutbox(null, jiraClient, executor, 1, 10, 2);
+    outbox.start(delivery -> {
+      deliveries.add(delivery);
+      throw new IllegalStateException("store unavailable");
+    }, failures::add);
+
+    outbox.submit("1", action(), summaryAndDescription());
+
+    assertEquals("1", deliveries.poll(5, TimeUnit.SECONDS).getId());
+    assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS));
+    assertEquals(0, outbox.size());
+    verify(jiraClient).create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1"));
+  }
+
+  @Test
+  public void givesUpOnAnIssueJiraKeepsRejecting() throws IOException, InterruptedException {
+    File file = temporaryFolder.newFile();
+    when(jiraClient.findKeyByLabel("dashboard-1")).thenReturn(Optional.empty());
+    when(jiraClient.create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1")))
+        .thenThrow(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS))
+        .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST))
+        .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+    JiraOutbox outbox = new JiraOutbox(file, jiraClient, executor, 1, 10, 2);
+    outbox.start(deliveries::add, failures::add);
+
+    outbox.submit("1", action(), summaryAndDescription());
+
+    JiraOutbox.Failure failure = failures.poll(5, TimeUnit.SECONDS);
+    assertEquals("1", failure.getId());
+    assertEquals("400 BAD_REQUEST: ", failure.getError());
+    assertEquals(0, outbox.size());
+    assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS));
+    verify(jiraClient, times(3)).create(any(Action.class), any(SummaryAndDescription.class), eq("dashboard-1"));
+
+    assertEquals(0, new JiraOutbox(file, jiraClient, executor, 1, 10, 2).size());
+  }
+
+  private Action action() {
+    return Action.builder()
+        .idpId("idp")
+        .spId("sp")
+        .type(Action.Type.LINKREQUEST)
+        .status("Pending")
+        .userName("John Doe")
+        .userEmail("john@example.org")
+        .body("Please connect")
+        .build();
+  }
+
+  private SummaryAndDescription summaryAndDescription() {
+    return new SummaryAndDescription("New connection", "Please connect idp to sp");
+  }
+}
@@ -0,0 +1,83 @@
+package selfservice.session;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileSessionRepositoryTest {
+
+  private static final String ID = "zLDnVp0TV0BWwNdD4bGyJ8bG1Yf2xXJmVsH6Lk0mYQU";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void savesAndFindsSessions() throws Exception {
+    FileSessionRepository repository = new FileSessionRepository(folder.getRoot());
+    long now = System.currentTimeMillis();
+    repository.save(new StoredSession(ID, now - 5_000, now, 3600, ImmutableMap.of("name", bytes("value"))));
+
+    StoredSession found = new FileSessionRepository(folder.getRoot()).findById(ID).get();
+
+    assertEquals(now - 5_000, found.getCreationTime());
+    assertEquals(3600, found.getMaxInactiveIntervalSeconds());
+    assertEquals("value", new String(found.getAttributes().get("name"), StandardCharsets.UTF_8));
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void touchOnlyUpdatesTheLastAccessTime() throws Exception {
+    FileSessionRepository repository = new FileSessionRepository(folder.getRoot());
+    long now = System.currentTimeMillis();
+    repository.save(new StoredSession(ID, now, now - 1_800_000, 3600, ImmutableMap.of("name", bytes("value"))));
+    byte[] before = Files.readAllBytes(new File(folder.getRoot(), ID).toPath());
+
+    repository.touch(ID, now);
+
+    assertEquals(now / 1000, repository.findById(ID).get().getLastAccessedTime() / 1000);
+    assertTrue(Arrays.equals(before, Files.readAllBytes(new File(folder.getRoot(), ID).toPath())));
+  }
+
+  @Test
+  public void deletesExpiredSessions() throws Exception {
+    FileSessionRepository repository = new FileSessionRepository(folder.getRoot());
+    long now = System.currentTimeMillis();
+    repository.save(new StoredSession(ID, now, now, 60, ImmutableMap.of()));
+    String otherId = ID.replace('z', 'y');
+    repository.save(new StoredSession(otherId, now, now - 61_000, 60, ImmutableMap.of()));
+    File stale = folder.newFile(ID + "123.tmp");
+    Files.setLastModifiedTime(stale.toPath(), FileTime.fromMillis(now - 120_000));
+
+    assertEquals(2, repository.deleteExpired());
+
+    assertTrue(repository.findById(ID).isPresent());
+    assertFalse(repository.findById(otherId).isPresent());
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void ignoresInvalidAndUnreadableSessions() throws Exception {
+    FileSessionRepository repository = new FileSessionRepository(folder.getRoot());
+    Files.write(new File(folder.getRoot(), ID).toPath(), bytes("garbage"));
+
+    assertFalse(repository.findById(ID).isPresent());
+    assertFalse(repository.findById("../../etc/passwd").isPresent());
+    assertFalse(repository.findById(null).isPresent());
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,104 @@
+package selfservice.session;
+
+import org.junit.Test;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import selfservice.domain.CoinAuthority;
+import selfservice.domain.CoinUser;
+import selfservice.shibboleth.ShibbolethHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static selfservice.domain.CoinAuthority.Authority.ROLE_DASHBOARD_ADMIN;
+
+public class SessionAttributeCodecTest {
+
+  private final SessionAttributeCodec codec = new SessionAttributeCodec();
+
+  @Test
+  public void roundTripsTheSecurityContext() {
+    SecurityContext context = securityContext(coinUser());
+
+    SecurityContext decoded = (SecurityContext) codec.decode(codec.encode(context));
+
+    PreAuthenticatedAuthenticationToken authentication = (PreAuthenticatedAuthenticationToken) decoded.getAuthentication();
+    assertTrue(authentication.isAuthenticated());
+    assertEquals("N/A", authentication.getCredentials());
+    assertEquals(context.getAuthentication().getAuthorities(), authentication.getAuthorities());
+
+    CoinUser user = (CoinUser) authentication.getPrincipal();
+    assertEquals(coinUser().toString(), user.toString());
+    assertEquals("https://idp-2", user.getSwitchedToIdpId().get());
+    assertTrue(user.isDashboardAdmin());
+  }
+
+  @Test
+  public void isMuchSmallerThanJavaSerialization() throws IOException {
+    SecurityContext context = securityContext(coinUser());
+
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+      out.writeObject(context);
+    }
+
+    assertThat(codec.encode(context).length * 3, lessThan(serialized.size()));
+  }
+
+  @Test
+  public void encodesChangesMadeInPlace() {
+    CoinUser user = coinUser();
+    SecurityContext context = securityContext(user);
+    byte[] before = codec.encode(context);
+
+    assertTrue(Arrays.equals(before, codec.encode(context)));
+
+    user.setSwitchedToIdpId("https://idp-3");
+    assertFalse(Arrays.equals(before, codec.encode(context)));
+  }
+
+  @Test
+  public void fallsBackToJavaSerialization() {
+    assertEquals("mock-user", codec.decode(codec.encode("mock-user")));
+    assertEquals(LocalDate.of(2018, 6, 1), codec.decode(codec.encode(LocalDate.of(2018, 6, 1))));
+    assertFalse(codec.canEncode(new Object()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownBytes() {
+    codec.decode(new byte[]{42, 1, 2});
+  }
+
+  private SecurityContext securityContext(CoinUser user) {
+    SecurityContext context = new SecurityContextImpl();
+    context.setAuthentication(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities()));
+    return context;
+  }
+
+  private CoinUser coinUser() {
+    CoinUser user = new CoinUser();
+    user.setUid("urn:collab:person:example.com:john.doe");
+    user.setDisplayName("John Doe");
+    user.setEmail("john.doe@example.com");
+    user.setSchacHomeOrganization("example.com");
+    user.setInstitutionId("EXAMPLE");
+    user.setIdpId("https://idp-1");
+    user.setSwitchedToIdpId("https://idp-2");
+    user.addInstitutionIdpId("https://idp-1");
+    user.addInstitutionIdpId("https://idp-2");
+    user.addAuthority(new CoinAuthority(ROLE_DASHBOARD_ADMIN));
+    user.addAttribute(ShibbolethHeader.Shib_Email, Collections.singletonList("john.doe@example.com"));
+    user.addAttribute(ShibbolethHeader.Shib_MemberOf, Arrays.asList("dashboard.admin", "some.team"));
+    return user;
+  }
+}
@@ -0,0 +1,175 @@
+package selfservice.session;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import selfservice.domain.CoinUser;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionRepositoryFilterTest {
+
+  private static final String CONTEXT = "SPRING_SECURITY_CONTEXT";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicInteger saves = new AtomicInteger();
+  private SessionRepositoryFilter filter;
+
+  @Before
+  public void before() {
+    FileSessionRepository repository = new FileSessionRepository(folder.getRoot()) {
+      @Override
+      public void save(StoredSession session) {
+        saves.incrementAndGet();
+        super.save(session);
+      }
+    };
+    filter = new SessionRepositoryFilter(repository, new SessionAttributeCodec(), 3600, "SESSION");
+  }
+
+  @Test
+  public void sessionIsSharedThroughTheCookie() throws Exception {
+    MockHttpServletResponse login = perform(null, request -> request.getSession().setAttribute(CONTEXT,
+        securityContext("john.doe")));
+    Cookie cookie = login.getCookie("SESSION");
+    assertNotNull(cookie);
+    assertTrue(cookie.isHttpOnly());
+
+    perform(cookie, request -> {
+      SecurityContext context = (SecurityContext) request.getSession(false).getAttribute(CONTEXT);
+      assertEquals("john.doe", ((CoinUser) context.getAuthentication().getPrincipal()).getUid());
+      assertFalse(request.getSession().isNew());
+    });
+    assertEquals(1, saves.get());
+  }
+
+  @Test
+  public void unchangedSessionsAreNotSavedAgain() throws Exception {
+    Cookie cookie = perform(null, request -> {
+      request.getSession().setAttribute(CONTEXT, securityContext("john.doe"));
+      request.getSession().setAttribute("mockShibbolethUser", "john.doe");
+    }).getCookie("SESSION");
+
+    MockHttpServletResponse response = perform(cookie, request -> {
+      request.getSession().getAttribute(CONTEXT);
+      request.getSession().setAttribute("mockShibbolethUser", "john.doe");
+    });
+
+    assertEquals(1, saves.get());
+    assertNull(response.getCookie("SESSION"));
+  }
+
+  @Test
+  public void changesMadeInPlaceAreSaved() throws Exception {
+    Cookie cookie = perform(null, request -> request.getSession().setAttribute(CONTEXT, securityContext("john.doe")))
+        .getCookie("SESSION");
+
+    perform(cookie, request -> principal(request).setSwitchedToIdpId("https://other-idp"));
+    perform(cookie, request -> assertEquals("https://other-idp", principal(request).getSwitchedToIdpId().get()));
+
+    assertEquals(2, saves.get());
+  }
+
+  @Test
+  public void concurrentRequestsKeepEachOthersChanges() throws Exception {
+    Cookie cookie = perform(null, request -> {
+      request.getSession().setAttribute(CONTEXT, securityContext("john.doe"));
+      request.getSession().setAttribute("selectedIdp", "https://idp");
+      request.getSession().setAttribute("savedRequest", "/dashboard/api/services");
+    }).getCookie("SESSION");
+
+    perform(cookie, first -> {
+      assertEquals("https://idp", first.getSession().getAttribute("selectedIdp"));
+      try {
+        perform(cookie, second -> {
+          second.getSession().setAttribute("selectedIdp", "https://other-idp");
+          second.getSession().removeAttribute("savedRequest");
+        });
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+      principal(first).setSwitchedToIdpId("https://switched-idp");
+    });
+
+    perform(cookie, request -> {
+      assertEquals("https://switched-idp", principal(request).getSwitchedToIdpId().get());
+      assertEquals("https://other-idp", request.getSession().getAttribute("selectedIdp"));
+      assertNull(request.getSession().getAttribute("savedRequest"));
+    });
+  }
+
+  @Test
+  public void emptySessionsAreNotSaved() throws Exception {
+    MockHttpServletResponse response = perform(null, HttpServletRequest::getSession);
+
+    assertNull(response.getCookie("SESSION"));
+    assertEquals(0, saves.get());
+  }
+
+  @Test
+  public void invalidatedSessionsAreDeleted() throws Exception {
+    Cookie cookie = perform(null, request -> request.getSession().setAttribute(CONTEXT, securityContext("john.doe")))
+        .getCookie("SESSION");
+
+    MockHttpServletResponse logout = perform(cookie, request -> request.getSession().invalidate());
+    assertEquals(0, logout.getCookie("SESSION").getMaxAge());
+    assertEquals(0, folder.getRoot().list().length);
+
+    perform(cookie, request -> assertNull(request.getSession(false)));
+  }
+
+  @Test
+  public void changingTheIdMovesTheSession() throws Exception {
+    Cookie cookie = perform(null, request -> request.getSession().setAttribute(CONTEXT, securityContext("john.doe")))
+        .getCookie("SESSION");
+
+    Cookie changed = perform(cookie, HttpServletRequest::changeSessionId).getCookie("SESSION");
+
+    assertNotEquals(cookie.getValue(), changed.getValue());
+    perform(cookie, request -> assertNull(request.getSession(false)));
+    perform(changed, request -> assertNotNull(principal(request)));
+  }
+
+  private MockHttpServletResponse perform(Cookie cookie, Consumer<HttpServletRequest> action) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/dashboard/api/users/me");
+    if (cookie != null) {
+      request.setCookies(cookie);
+    }
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, (req, res) -> action.accept((HttpServletRequest) req));
+    return response;
+  }
+
+  private CoinUser principal(HttpServletRequest request) {
+    HttpSession session = request.getSession(false);
+    return (CoinUser) ((SecurityContext) session.getAttribute(CONTEXT)).getAuthentication().getPrincipal();
+  }
+
+  private SecurityContext securityContext(String uid) {
+    CoinUser user = new CoinUser();
+    user.setUid(uid);
+    user.setIdpId("https://idp");
+    SecurityContext context = new SecurityContextImpl();
+    context.setAuthentication(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities()));
+    return context;
+  }
+}
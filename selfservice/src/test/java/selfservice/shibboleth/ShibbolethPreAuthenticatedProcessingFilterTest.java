@@ -18,6 +18,11 @@ import selfservice.sab.SabRoleHolder;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
@@ -26,6 +31,8 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static selfservice.domain.CoinAuthority.Authority.ROLE_DASHBOARD_ADMIN;
 import static selfservice.domain.CoinAuthority.Authority.ROLE_DASHBOARD_SUPER_USER;
@@ -142,6 +149,54 @@ public class ShibbolethPreAuthenticatedProcessingFilterTest {
         assertEquals(0, user.getAuthorityEnums().size());
     }
 
+    @Test
+    public void shouldDegradeToMembershipRolesWhenSabMissesTheLoginDeadline() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        subject.setLoginExecutor(executor);
+        subject.setLoginDeadlineMillis(50);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(sab.getRoles(anyString())).then(invocation -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return Optional.of(new SabRoleHolder("Org", Arrays.asList("SURFconextverantwoordelijke")));
+        });
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(Name_Id.getValue(), "uid");
+        request.addHeader(Shib_MemberOf.getValue(), "dashboard.viewer");
+        request.addHeader(Shib_Authenticating_Authority.getValue(), "mock-idp");
+        when(manageMock.getIdentityProvider("mock-idp", false)).thenReturn(Optional.of(new IdentityProvider()));
+
+        try {
+            CoinUser user = (CoinUser) subject.getPreAuthenticatedPrincipal(request);
+            assertThat(user.getAuthorityEnums(), contains(ROLE_DASHBOARD_VIEWER));
+            assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldDegradeToMembershipRolesWhenAllLoginThreadsAreBusy() {
+        subject.setLoginExecutor(command -> {
+            throw new RejectedExecutionException();
+        });
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(Name_Id.getValue(), "uid");
+        request.addHeader(Shib_MemberOf.getValue(), "dashboard.viewer");
+        request.addHeader(Shib_Authenticating_Authority.getValue(), "mock-idp");
+        when(manageMock.getIdentityProvider("mock-idp", false)).thenReturn(Optional.of(new IdentityProvider()));
+
+        CoinUser user = (CoinUser) subject.getPreAuthenticatedPrincipal(request);
+
+        assertThat(user.getAuthorityEnums(), contains(ROLE_DASHBOARD_VIEWER));
+        verify(sab, never()).getRoles(anyString());
+    }
+
     private void doAssertSabEntitlement(String entitlement, CoinAuthority.Authority role, ShibbolethHeader headerName) {
         MockHttpServletRequest request = new MockHttpServletRequest();
         if (headerName != null) {
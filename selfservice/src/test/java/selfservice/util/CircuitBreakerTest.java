@@ -0,0 +1,91 @@
+package selfservice.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static selfservice.util.CircuitBreaker.State.CLOSED;
+import static selfservice.util.CircuitBreaker.State.HALF_OPEN;
+import static selfservice.util.CircuitBreaker.State.OPEN;
+
+public class CircuitBreakerTest {
+
+  private AtomicLong now = new AtomicLong();
+
+  private CircuitBreaker subject = new CircuitBreaker("test", 4, 4, 50, 1000, 75, 10000, 2, now::get);
+
+  @Test
+  public void opensOnFailureRate() {
+    call(true, 10);
+    call(true, 10);
+    call(false, 10);
+    assertEquals(CLOSED, subject.getState());
+
+    call(false, 10);
+    assertEquals(OPEN, subject.getState());
+    assertFalse(subject.tryAcquirePermission());
+  }
+
+  @Test
+  public void opensOnSlowCallRate() {
+    call(true, 10);
+    call(true, 1000);
+    call(true, 1000);
+    call(true, 1000);
+
+    assertEquals(OPEN, subject.getState());
+  }
+
+  @Test
+  public void slidingWindowForgetsOldCalls() {
+    call(false, 10);
+    for (int i = 0; i < 10; i++) {
+      call(true, 10);
+    }
+    call(false, 10);
+
+    assertEquals(CLOSED, subject.getState());
+  }
+
+  @Test
+  public void halfOpenProbesClose() {
+    open();
+    now.addAndGet(10000);
+
+    assertTrue(subject.tryAcquirePermission());
+    assertEquals(HALF_OPEN, subject.getState());
+    assertTrue(subject.tryAcquirePermission());
+    assertFalse("only two probes are permitted", subject.tryAcquirePermission());
+
+    subject.onResult(true, 10);
+    subject.onResult(true, 10);
+    assertEquals(CLOSED, subject.getState());
+  }
+
+  @Test
+  public void failedProbeReopens() {
+    open();
+    now.addAndGet(10000);
+
+    assertTrue(subject.tryAcquirePermission());
+    subject.onResult(false, 10);
+
+    assertEquals(OPEN, subject.getState());
+    assertFalse(subject.tryAcquirePermission());
+  }
+
+  private void open() {
+    for (int i = 0; i < 4; i++) {
+      call(false, 10);
+    }
+    assertEquals(OPEN, subject.getState());
+  }
+
+  private void call(boolean success, long duration) {
+    assertTrue(subject.tryAcquirePermission());
+    subject.onResult(success, duration);
+  }
+}
@@ -0,0 +1,91 @@
+package selfservice.util;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class JavaScriptErrorSinkTest {
+
+  private final JavaScriptErrorSink sink = new JavaScriptErrorSink(60_000, 3, 2);
+
+  private final Logger logger = (Logger) LoggerFactory.getLogger(JavaScriptErrorSink.class);
+  private ListAppender<ILoggingEvent> listAppender;
+
+  @Before
+  public void before() {
+    listAppender = new ListAppender<>();
+    listAppender.setContext((LoggerContext) LoggerFactory.getILoggerFactory());
+    listAppender.start();
+    logger.addAppender(listAppender);
+  }
+
+  @After
+  public void after() {
+    logger.detachAppender(listAppender);
+  }
+
+  @Test
+  public void logsTheSameErrorOnceWithItsCount() {
+    sink.report("session-1", error("x is undefined", "at render (app.js:10)\nat update (app.js:20)", "/page/1"));
+    sink.report("session-2", error("x is undefined", "at render (app.js:10)\nat update (app.js:20)", "/page/2"));
+    sink.report("session-2", error("y is undefined", "at render (app.js:12)", "/page/2"));
+
+    sink.flush();
+
+    assertThat(listAppender.list, hasSize(2));
+    assertTrue(listAppender.list.stream().anyMatch(event -> event.getFormattedMessage().contains("\"count\":2")));
+
+    sink.flush();
+    assertThat(listAppender.list, hasSize(2));
+  }
+
+  @Test
+  public void limitsReportsPerSession() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(sink.report("session", error("whoops", null, "/")));
+    }
+    assertFalse(sink.report("session", error("whoops", null, "/")));
+    assertTrue(sink.report("other-session", error("whoops", null, "/")));
+
+    sink.flush();
+
+    assertThat(listAppender.list, hasSize(2));
+    assertThat(listAppender.list.get(0).getFormattedMessage(), containsString("\"count\":4"));
+    assertThat(listAppender.list.get(1).getFormattedMessage(), containsString("Ignored 1 JavaScript errors"));
+  }
+
+  @Test
+  public void capsTheNumberOfDistinctErrors() {
+    sink.report("session-1", error("first", null, "/"));
+    sink.report("session-1", error("second", null, "/"));
+    sink.report("session-2", error("third", null, "/"));
+
+    sink.flush();
+
+    assertThat(listAppender.list, hasSize(3));
+    assertThat(listAppender.list.get(2).getFormattedMessage(), containsString("and 1 beyond the 2 distinct errors"));
+  }
+
+  private Map<String, Object> error(String message, String stack, String url) {
+    Map<String, Object> payload = new HashMap<>(ImmutableMap.of("message", message, "url", url));
+    if (stack != null) {
+      payload.put("stack", stack);
+    }
+    return payload;
+  }
+}
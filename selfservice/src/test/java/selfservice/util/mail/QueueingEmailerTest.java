@@ -0,0 +1,137 @@
+package selfservice.util.mail;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import selfservice.util.mail.QueueingEmailer.OverflowPolicy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class QueueingEmailerTest {
+
+  private final CounterService counterService = mock(CounterService.class);
+  private final GaugeService gaugeService = mock(GaugeService.class);
+
+  private SmtpStandIn smtp;
+  private QueueingEmailer emailer;
+
+  @After
+  public void after() throws Exception {
+    if (emailer != null) {
+      emailer.shutdown();
+    }
+    if (smtp != null) {
+      smtp.close();
+    }
+  }
+
+  @Test
+  public void sendsQueuedMessagesInOneBatch() throws Exception {
+    smtp = new SmtpStandIn(0);
+    emailer = emailer(smtp.getPort(), 10, OverflowPolicy.CALLER_RUNS);
+
+    emailer.sendAsync(message("first"));
+    emailer.sendAsync(message("second"));
+    emailer.sendAsync(message("third"));
+    emailer.start();
+
+    await(() -> smtp.getMessages().size() == 3);
+    assertEquals(1, smtp.getConnections());
+    assertTrue(smtp.getMessages().get(0).contains("Subject: first"));
+    verify(counterService, times(3)).increment("counter.mail.sent");
+    verify(gaugeService, times(3)).submit(eq("timer.mail.latency"), anyLong());
+  }
+
+  @Test
+  public void retriesUntilTheServerIsUp() throws Exception {
+    int port = SmtpStandIn.freePort();
+    emailer = emailer(port, 10, OverflowPolicy.CALLER_RUNS);
+    emailer.start();
+
+    emailer.sendAsync(message("while down"));
+    verifyWithin(() -> verify(counterService, atLeastOnce()).increment("counter.mail.retried"));
+    smtp = new SmtpStandIn(port);
+
+    await(() -> smtp.getMessages().size() == 1);
+    assertTrue(smtp.getMessages().get(0).contains("Subject: while down"));
+  }
+
+  @Test
+  public void dropsTheOldestMessageWhenTheQueueIsFull() throws Exception {
+    smtp = new SmtpStandIn(0);
+    emailer = emailer(smtp.getPort(), 2, OverflowPolicy.DROP_OLDEST);
+
+    emailer.sendAsync(message("first"));
+    emailer.sendAsync(message("second"));
+    emailer.sendAsync(message("third"));
+    emailer.start();
+
+    await(() -> smtp.getMessages().size() == 2);
+    assertTrue(smtp.getMessages().get(0).contains("Subject: second"));
+    verify(counterService).increment("counter.mail.dropped");
+  }
+
+  @Test
+  public void sendsOnTheCallingThreadWhenTheQueueIsFull() throws Exception {
+    smtp = new SmtpStandIn(0);
+    emailer = emailer(smtp.getPort(), 1, OverflowPolicy.CALLER_RUNS);
+
+    emailer.sendAsync(message("queued"));
+    emailer.sendAsync(message("overflow"));
+
+    assertEquals(1, smtp.getMessages().size());
+    assertTrue(smtp.getMessages().get(0).contains("Subject: overflow"));
+  }
+
+  private QueueingEmailer emailer(int port, int capacity, OverflowPolicy overflowPolicy) {
+    JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+    mailSender.setHost("localhost");
+    mailSender.setPort(port);
+    return new QueueingEmailer(mailSender, capacity, 10, overflowPolicy, 10, 50, 100, counterService, gaugeService);
+  }
+
+  private SimpleMailMessage message(String subject) {
+    SimpleMailMessage message = new SimpleMailMessage();
+    message.setFrom("john@example.org");
+    message.setTo("admin@example.org");
+    message.setSubject(subject);
+    message.setText("body");
+    return message;
+  }
+
+  private void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private void verifyWithin(Runnable verification) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (true) {
+      try {
+        verification.run();
+        return;
+      } catch (AssertionError e) {
+        if (System.nanoTime() > deadline) {
+          throw e;
+        }
+        Thread.sleep(10);
+      }
+    }
+  }
+}
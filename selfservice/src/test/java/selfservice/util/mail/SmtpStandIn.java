@@ -0,0 +1,96 @@
+package selfservice.util.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of an SMTP server to receive the messages sent by JavaMail in tests.
+ */
+class SmtpStandIn implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+  private final List<String> messages = new CopyOnWriteArrayList<>();
+  private final AtomicInteger connections = new AtomicInteger();
+
+  SmtpStandIn(int port) throws IOException {
+    serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(this::accept, "smtp-stand-in");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      return socket.getLocalPort();
+    }
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  List<String> getMessages() {
+    return messages;
+  }
+
+  int getConnections() {
+    return connections.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try (Socket socket = serverSocket.accept()) {
+        connections.incrementAndGet();
+        converse(socket);
+      } catch (IOException e) {
+        // closed
+      }
+    }
+  }
+
+  private void converse(Socket socket) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+    Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+    reply(out, "220 localhost");
+    String line;
+    while ((line = in.readLine()) != null) {
+      String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+      switch (command) {
+        case "DATA":
+          reply(out, "354 End data with <CR><LF>.<CR><LF>");
+          StringBuilder message = new StringBuilder();
+          while ((line = in.readLine()) != null && !line.equals(".")) {
+            message.append(line).append('\n');
+          }
+          messages.add(message.toString());
+          reply(out, "250 OK");
+          break;
+        case "QUIT":
+          reply(out, "221 Bye");
+          return;
+        default:
+          reply(out, "250 OK");
+      }
+    }
+  }
+
+  private void reply(Writer out, String reply) throws IOException {
+    out.write(reply + "\r\n");
+    out.flush();
+  }
+}